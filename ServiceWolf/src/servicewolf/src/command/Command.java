@@ -2,6 +2,8 @@
    
 package servicewolf.src.command;
 
+import servicewolf.src.incident.StatusDetails;
+
 /** 
  * Class that represents a Command object in ServiceWolf. It drives the fsm inside of ServiceWolf program by giving certain orders for each 
  * incident to follow, driving it through a state pattern. This class constructs Command objects and returns the parameters. 
@@ -39,6 +41,12 @@ public class Command {
 			
 		}
 		
+		// Holds and cancellations must give one of their reasons. A resolution may describe how the Incident was resolved in its own words.
+		if ((commandValue == Command.CommandValue.HOLD && !StatusDetails.HOLD_REASONS.contains(StatusDetails.fromText(commandInformation)))
+				|| (commandValue == Command.CommandValue.CANCEL && !StatusDetails.CANCELLATION_CODES.contains(StatusDetails.fromText(commandInformation)))) {
+			throw new IllegalArgumentException("Invalid command information");
+		}
+		
 		if ((commandValue == Command.CommandValue.INVESTIGATE || commandValue == Command.CommandValue.REOPEN) && commandInformation != null) {
 			throw new IllegalArgumentException("Invalid command information");
 		}
@@ -3,7 +3,13 @@
  */
 package servicewolf.src.incident;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import servicewolf.src.command.Command;
 import servicewolf.src.command.Command.CommandValue;
@@ -12,15 +18,19 @@ import servicewolf.src.command.Command.CommandValue;
 
 /**
  * Class that represents an Incident in the ServiceWolf program. Incidents are created and ran through an FSM. This class is responsible for constructing Incidents 
- * using one of two constructors. It has standard setters and getters and methods responsible for adding messages to an Incident's message log. It also has an update method that uses the 
- * inner state pattern to update Incidents using the FSM. 
+ * using one of two constructors. It has standard setters and getters and methods responsible for adding messages to an Incident's message log. It also has an update method that runs 
+ * the FSM: the State enum names each state and the status details it allows, and update looks up the Transition for the current State and the Command in a 
+ * table indexed by their ordinals, moves the Incident to the Transition's next State and applies its effect. The public methods of an Incident synchronize on the Incident, so a command is never seen half applied 
+ * by another thread. 
  * @author Tyler Strickland
  *
  */
 public class Incident {
 
 	/** Id of the Incident */
-	private int incidentId;
+	private volatile int incidentId;
+	/** Whether the Incident has changed since it was last saved */
+	private volatile boolean dirty;
 	/** Incident's title */
 	private String title;
 	/** Incident's caller */
@@ -31,8 +41,18 @@ public class Incident {
 	private String owner;
 	/** Incident's status details. Helps keep track of what state the Incident is in  */
 	private String statusDetails;
-	/** Log of incident messages */
+	/** Status details as one of the status detail constants, or null if they are not one of the constants */
+	private StatusDetails statusDetailsCode;
+	/** Log of incident messages, or null until it is loaded from incidentLogSource or if the messages are in logArena */
 	private ArrayList<String> incidentLog;
+	/** Arena the log messages are packed into, or null if they are kept in incidentLog */
+	private IncidentLogArena logArena;
+	/** Entries of the log messages in logArena */
+	private long[] logEntries;
+	/** Number of log messages in logEntries */
+	private int logEntryCount;
+	/** Source the log of incident messages is loaded from when it is first needed, or null once the log has been loaded */
+	private IncidentLogSource incidentLogSource;
 	/** Constant used for the name of the New State */
 	public static final String NEW_NAME = "New";
 	/** Constant used for the name of the In Progress State */
@@ -67,34 +87,41 @@ public class Incident {
 	public static final String UNOWNED = "Unowned";
 	/** Constant used for the no status status details */
 	public static final String NO_STATUS = "No Status";
+	/** States of the fsm indexed by their ordinals */
+	private static final State[] STATES = State.values();
+	/** Transitions of the fsm indexed by the ordinal of the current state and the ordinal of the CommandValue. A null entry is a Command the state does not support. */
+	private static final Transition[][] TRANSITIONS = createTransitions();
 	/** Counter of how many incidents have been made. Helps ensure that newly created incidents increment the id from the last made incident. */
-	private static int counter = 0;
-	/** Instance of the new state in the fsm */
-	private final IncidentState newState = new NewState();
-	/** Instance of the resolved state in the fsm */
-	private final IncidentState resolvedState = new ResolvedState();
-	/** Instance of the in progress state in the fsm */
-	private final IncidentState inProgressState = new InProgressState();
-	/** Instance of the canceled state in the fsm */
-	private final IncidentState canceledState = new CanceledState();
-	/** Instance of the current state in the fsm */
-	private IncidentState currentState;
-	/** Instance of the on hold state in the fsm */
-	private final IncidentState onHoldState = new OnHoldState();
+	private static final AtomicInteger counter = new AtomicInteger();
+	/** Ordinal of the current state in the fsm */
+	private byte currentState;
 	
 	
 	/** 
-	 * Constructs a new Incident with only a title, message, and caller parameter. Sets the other fields of the Incident to that of a new Incident
+	 * Constructs a new Incident with only a title, message, and caller parameter. Sets the other fields of the Incident to that of a new Incident and uses the 
+	 * shared counter for its id
 	 * @param title title of the Incident
 	 * @param message message to add to the Incident's incidentLog
 	 * @param caller person who called and made the Incident.
 	 */
 	public Incident(String title, String caller, String message) {
+		this(Incident.counter.get(), title, caller, message);
+	}
+	
+	/** 
+	 * Constructs a new Incident with the given id, title, message, and caller. Sets the other fields of the Incident to that of a new Incident
+	 * @param incidentId Incident's id
+	 * @param title title of the Incident
+	 * @param message message to add to the Incident's incidentLog
+	 * @param caller person who called and made the Incident.
+	 * @throws IllegalArgumentException if any of the parameters are invalid
+	 */
+	public Incident(int incidentId, String title, String caller, String message) {
 		if (message == null || "".equals(message)) {
 			throw new IllegalArgumentException();
 		}
 		incidentLog = new ArrayList<String>();
-		setId(Incident.counter);
+		setId(incidentId);
 		setTitle(title);
 		setCaller(caller);
 		setOwner(UNOWNED);
@@ -140,6 +167,73 @@ public class Incident {
 		}
 	}
 	
+	/**
+	 * Constructs a new Incident using all the possible fields of an Incident, with a log that is loaded from the given source only when it is first read or
+	 * added to.
+	 * @param incidentId Incident's id
+	 * @param state current state of the Incident.
+	 * @param title title of the Incident.
+	 * @param caller person who called and made the Incident
+	 * @param reopenCount how many times the Incident has been reopened
+	 * @param owner person in charge of the Incident
+	 * @param statusDetails current details in regards to the Incident state
+	 * @param incidentLogSource source of the log holding all messages related to the Incident
+	 * @throws IllegalArgumentException if the incidentLogSource is null
+	 */
+	public Incident(int incidentId, String state, String title, String caller, int reopenCount, String owner, String statusDetails, IncidentLogSource incidentLogSource) {
+		
+		setId(incidentId);
+		setTitle(title);
+		setCaller(caller);
+		setReopenCount(reopenCount);
+		setOwner(owner);
+		setStatusDetails(statusDetails);
+		setState(state);
+		
+		if (incidentLogSource == null) {
+			throw new IllegalArgumentException("Incident cannot be created.");
+		}
+		this.incidentLogSource = incidentLogSource;
+	}
+	
+	/**
+	 * Constructs an Incident whose fields are set by restore
+	 */
+	private Incident() {
+	}
+	
+	/**
+	 * Restores an Incident that a storage backend kept outside of an Incident object, with a log that is loaded from the given source when it is first read or 
+	 * added to. Unlike the constructors, the owner and status details are not checked against the state, so an Incident that commands brought into any state, 
+	 * such as a Resolved Incident with free text status details, is restored exactly as it was stored.
+	 * @param incidentId Incident's id
+	 * @param state current state of the Incident.
+	 * @param title title of the Incident.
+	 * @param caller person who called and made the Incident
+	 * @param reopenCount how many times the Incident has been reopened
+	 * @param owner person in charge of the Incident
+	 * @param statusDetails current details in regards to the Incident state
+	 * @param incidentLogSource source of the log holding all messages related to the Incident
+	 * @return the restored Incident
+	 * @throws IllegalArgumentException if a field is empty, null or out of range, or the state does not exist
+	 */
+	public static Incident restore(int incidentId, String state, String title, String caller, int reopenCount, String owner, String statusDetails, 
+			IncidentLogSource incidentLogSource) {
+		if (incidentLogSource == null) {
+			throw new IllegalArgumentException("Incident cannot be created.");
+		}
+		Incident incident = new Incident();
+		incident.setId(incidentId);
+		incident.setTitle(title);
+		incident.setCaller(caller);
+		incident.setReopenCount(reopenCount);
+		incident.setOwner(owner);
+		incident.setStatusDetails(statusDetails);
+		incident.currentState = (byte) findState(state).ordinal();
+		incident.incidentLogSource = incidentLogSource;
+		return incident;
+	}
+	
 	/**
 	 * Returns the id of the Incident
 	 * @return Incident's id
@@ -153,13 +247,12 @@ public class Incident {
 	 * @param incidentId id of the Incident to set
 	 * @throws IllegalArgumentException if the id is less than or equal to 0. 
 	 */
-	public void setId(int incidentId) {
+	public synchronized void setId(int incidentId) {
+		dirty = true;
 		if (incidentId <= 0) {
 			throw new IllegalArgumentException("Incident cannot be created.");
 		}
-		if (incidentId > Incident.counter) {
-			setCounter(incidentId);
-		}
+		counter.accumulateAndGet(incidentId, Math::max);
 		this.incidentId = incidentId;
 	}
 	
@@ -167,28 +260,8 @@ public class Incident {
 	 * Gets the name of the state in which the incident is currently in
 	 * @return name of the state that the Incident is currently in
 	 */
-	public String getState() {
-		if (currentState == onHoldState) {
-			return currentState.getStateName();
-		}
-		
-		else if (currentState == resolvedState) {
-			return currentState.getStateName();
-		}
-		
-		else if (currentState == inProgressState) {
-			return currentState.getStateName();
-		}
-		
-		else if (currentState == canceledState) {
-			return currentState.getStateName();
-		}
-		
-		else {
-			return currentState.getStateName();
-		}
-		
-		
+	public synchronized String getState() {
+		return STATES[currentState].getStateName();
 	}
 	
 	/**
@@ -196,73 +269,40 @@ public class Incident {
 	 * @param state name of the state to set
 	 * @throws IllegalArgumentException if an Incident field is not appropriate for the given state parameter.
 	 */
-	public void setState(String state) {
-		if (state == null || "".equals(state)) {
-			throw new IllegalArgumentException("Incident cannot be creatd.");
-		}
-		if (!state.equals(NEW_NAME) && !state.equals(IN_PROGRESS_NAME) && !state.equals(RESOLVED_NAME) && !state.equals(ON_HOLD_NAME) && !state.equals(CANCELED_NAME)) {
-			throw new IllegalArgumentException("Incident cannot be created.");
-		}
-
-		
-		if (CANCELED_NAME.equals(state)) {
-			currentState = canceledState;
-			if (!statusDetails.equals(CANCELLATION_CALLER_CANCELLED) && !statusDetails.equals(CANCELLATION_DUPLICATE) && !statusDetails.equals(CANCELLATION_NOT_AN_INCIDENT) && !statusDetails.equals(CANCELLATION_UNNECESSARY)) {
-				throw new IllegalArgumentException("Incident cannot be created");
-			}
-			
-			if (!owner.equals(UNOWNED)) { 
-				throw new IllegalArgumentException("Incident cannot be created");
-			} 
-		}
+	public synchronized void setState(String state) {
+		dirty = true;
+		State target = findState(state);
+		currentState = (byte) target.ordinal();
 		
-		else if (IN_PROGRESS_NAME.equals(state)) {
-			currentState = inProgressState;
-			if (!statusDetails.equals(NO_STATUS)) {
-				throw new IllegalArgumentException("Incident cannot be created");
-			}
-			
-			if (owner.equals(UNOWNED)) {
-				throw new IllegalArgumentException("Incident cannot be created");
-			}
-			
-		}
-		else if (RESOLVED_NAME.equals(state)) {
-			currentState = resolvedState;
-			if (!statusDetails.equals(RESOLUTION_CALLER_CLOSED) && !statusDetails.equals(RESOLUTION_PERMANENTLY_SOLVED) && !statusDetails.equals(RESOLUTION_WORKAROUND)) {
-				throw new IllegalArgumentException("Incident cannot be created");
-			}
-			if (owner.equals(UNOWNED)) {
-				throw new IllegalArgumentException("Incident cannot be created");
-			}
+		// Owners are interned, so they are compared with the constant by identity
+		if (!target.statusDetails.contains(statusDetailsCode) || (owner != UNOWNED) != target.owned) {
+			throw new IllegalArgumentException("Incident cannot be created");
 		}
-		else if (ON_HOLD_NAME.equals(state)) {
-			currentState = onHoldState;
-			if (!statusDetails.equals(HOLD_AWAITING_CALLER) && !statusDetails.equals(HOLD_AWAITING_CHANGE) && !statusDetails.equals(HOLD_AWAITING_VENDOR)) {
-				throw new IllegalArgumentException("Incident cannot be created");
-			}
-			if (owner.equals(UNOWNED)) {
-				throw new IllegalArgumentException("Incident cannot be created");
-			}
+	}
+	
+	/**
+	 * Finds the state with the given name
+	 * @param state name of the state
+	 * @return the state with the name
+	 * @throws IllegalArgumentException if there is no state with the name
+	 */
+	private static State findState(String state) {
+		if (state == null || "".equals(state)) {
+			throw new IllegalArgumentException("Incident cannot be creatd.");
 		}
-		else {
-			currentState = newState;
-			if (!statusDetails.equals(NO_STATUS)) {
-				throw new IllegalArgumentException("Incident cannot be created");
-			}
-			if (!owner.equals(UNOWNED)) {
-				throw new IllegalArgumentException("Incident cannot be created");
+		for (int i = 0; i < STATES.length; i++) {
+			if (STATES[i].getStateName().equals(state)) {
+				return STATES[i];
 			}
 		}
-		
-		
+		throw new IllegalArgumentException("Incident cannot be created.");
 	}
 	
 	/**
 	 * Returns the title of the Incident
 	 * @return title as a String
 	 */
-	public String getTitle() {
+	public synchronized String getTitle() {
 		return title;
 	}
 	
@@ -271,7 +311,8 @@ public class Incident {
 	 * @param title title of the Incident to set
 	 * @throws IllegalArgumentException if the title is empty or null
 	 */
-	public void setTitle(String title) {
+	public synchronized void setTitle(String title) {
+		dirty = true;
 		if ("".equals(title) || title == null) {
 			throw new IllegalArgumentException("Incident cannot be created.");
 		}
@@ -282,7 +323,7 @@ public class Incident {
 	 * Returns the caller for the Incident
 	 * @return caller as a String
 	 */
-	public String getCaller() {
+	public synchronized String getCaller() {
 		return caller;
 	}
 	
@@ -291,18 +332,19 @@ public class Incident {
 	 * @param caller caller of the Incident to set
 	 * @throws IllegalArgumentException if the caller is empty or null
 	 */
-	public void setCaller(String caller) {
+	public synchronized void setCaller(String caller) {
+		dirty = true;
 		if ("".equals(caller) || caller == null) {
 			throw new IllegalArgumentException("Incident cannot be created.");
 		}
-		this.caller = caller;
+		this.caller = SymbolTable.intern(caller);
 	}
 	
 	/** 
 	 * Gets the reopen count for the Incident
 	 * @return reopen count integer
 	 */
-	public int getReopenCount() {
+	public synchronized int getReopenCount() {
 		return reopenCount;
 	}
 	
@@ -311,7 +353,8 @@ public class Incident {
 	 * @param reopenCount number of times the Incident has been reopened.
 	 * @throws IllegalArgumentException if the reopenCount is less than 0.
 	 */
-	public void setReopenCount(int reopenCount) {
+	public synchronized void setReopenCount(int reopenCount) {
+		dirty = true;
 		if (reopenCount < 0) {
 			throw new IllegalArgumentException("Incident cannot be created.");
 		}
@@ -322,7 +365,7 @@ public class Incident {
 	 * Gets the owner for the Incident
 	 * @return owner of the Incident as a String
 	 */
-	public String getOwner() {
+	public synchronized String getOwner() {
 		return owner;
 	}
 	
@@ -331,13 +374,14 @@ public class Incident {
 	 * @param owner owner of the Incident to set
 	 * @throws IllegalArgumentException if the owner is empty or null
 	 */
-	public void setOwner(String owner) {
+	public synchronized void setOwner(String owner) {
+		dirty = true;
 		
 		if (owner == null || "".equals(owner)) {
 			throw new IllegalArgumentException("Incident cannot be created.");
 		}
 		
-		this.owner = owner;
+		this.owner = SymbolTable.intern(owner);
 		
 	}
 	
@@ -345,7 +389,7 @@ public class Incident {
 	 * Returns the status details for the Incident
 	 * @return status details as a String
 	 */
-	public String getStatusDetails() {
+	public synchronized String getStatusDetails() {
 		return statusDetails;
 	}
 	
@@ -354,30 +398,122 @@ public class Incident {
 	 * @param statusDetails statusDetails of the Incident to set
 	 * @throws IllegalArgumentException if the statusDetails are empty or null
 	 */
-	public void setStatusDetails(String statusDetails) {
+	public synchronized void setStatusDetails(String statusDetails) {
+		dirty = true;
 		if (statusDetails == null || "".equals(statusDetails)) {
 			throw new IllegalArgumentException("Incident cannot be created");
 		}
 		
-		this.statusDetails = statusDetails;
+		this.statusDetails = SymbolTable.intern(statusDetails);
+		statusDetailsCode = StatusDetails.fromText(this.statusDetails);
 		
 	}
 	
 	/** 
 	 * Adds a message to the Incident's message log
 	 * @param message message to add to the log
-	 * @return int value of the index in the ArrayList the message was added.
+	 * @return int value of the index in the log the message was added.
 	 */
 	private int addMessageToIncidentLog(String message) {
+		loadIncidentLog();
+		if (logArena != null) {
+			if (logEntryCount == logEntries.length) {
+				logEntries = Arrays.copyOf(logEntries, Math.max(2, logEntryCount * 2));
+			}
+			logEntries[logEntryCount++] = logArena.append(message);
+			return logEntryCount - 1;
+		}
 		incidentLog.add(message);
 		return incidentLog.size() - 1;
 	}
 	
+	/**
+	 * Loads the Incident's message log from its source if it has not been loaded yet, into the log arena if the Incident has one
+	 * @throws IllegalArgumentException if the log cannot be loaded or is empty
+	 */
+	private void loadIncidentLog() {
+		if (incidentLogSource != null) {
+			ArrayList<String> log = incidentLogSource.loadIncidentLog();
+			if (log == null || log.size() == 0) {
+				throw new IllegalArgumentException("Incident cannot be created.");
+			}
+			incidentLogSource = null;
+			if (logArena != null) {
+				for (int i = 0; i < log.size(); i++) {
+					addMessageToIncidentLog(log.get(i));
+				}
+			}
+			else {
+				incidentLog = log;
+			}
+		}
+		else if (incidentLog == null && logArena == null) {
+			incidentLog = new ArrayList<String>();
+		}
+	}
+	
+	/**
+	 * Returns the number of messages in the Incident's log, loading it if it has not been loaded yet
+	 * @return number of log messages
+	 */
+	private int incidentLogSize() {
+		loadIncidentLog();
+		return logArena != null ? logEntryCount : incidentLog.size();
+	}
+	
+	/**
+	 * Returns a message in the Incident's log, loading the log if it has not been loaded yet
+	 * @param index position of the message in the log
+	 * @return the log message
+	 * @throws IndexOutOfBoundsException if there is no message at the position
+	 */
+	private String incidentLogMessage(int index) {
+		loadIncidentLog();
+		if (logArena != null) {
+			Objects.checkIndex(index, logEntryCount);
+			return logArena.get(logEntries[index]);
+		}
+		return incidentLog.get(index);
+	}
+	
+	/**
+	 * Moves the Incident's message log into an arena shared with other Incidents, where its messages take less memory. Messages added to the log afterwards 
+	 * are added to the arena as well. A log that has not been loaded yet is loaded into the arena when it is first needed.
+	 * @param arena arena to move the log into
+	 */
+	public synchronized void moveIncidentLogTo(IncidentLogArena arena) {
+		if (arena == logArena) {
+			return;
+		}
+		String[] messages = new String[0];
+		if (incidentLogSource == null) {
+			messages = new String[incidentLogSize()];
+			for (int i = 0; i < messages.length; i++) {
+				messages[i] = incidentLogMessage(i);
+			}
+		}
+		logArena = arena;
+		logEntries = new long[messages.length];
+		logEntryCount = 0;
+		incidentLog = null;
+		for (int i = 0; i < messages.length; i++) {
+			addMessageToIncidentLog(messages[i]);
+		}
+	}
+	
+	/**
+	 * Returns whether the Incident's message log is held in memory. A log given to the Incident by an IncidentLogSource is not loaded until it is first needed.
+	 * @return true if the log has been loaded
+	 */
+	public synchronized boolean isIncidentLogLoaded() {
+		return incidentLogSource == null;
+	}
+	
 	/** 
 	 * Increments the counter to help keep track of how many Incidents have been created. 
 	 */
 	public static void incrementCounter() {
-		counter += 1;
+		counter.incrementAndGet();
 	}
 	
 	/** 
@@ -385,310 +521,263 @@ public class Incident {
 	 * @param incidentId id of the incident to set the counter to
 	 */
 	public static void setCounter(int incidentId) {
-		counter = incidentId;
+		counter.set(incidentId);
+	}
+	
+	/** 
+	 * Raises the counter past the id of an Incident added to a ServiceGroup, so the next Incident created without an id does not reuse it. The counter is 
+	 * never lowered, so adding an Incident to one ServiceGroup cannot make another ServiceGroup's ids available again.
+	 * @param incidentId id of the added Incident
+	 */
+	public static void raiseCounter(int incidentId) {
+		counter.accumulateAndGet(incidentId + 1, Math::max);
+	}
+	
+	/**
+	 * Returns the number of messages in the Incident's log
+	 * @return number of log messages
+	 */
+	public synchronized int getIncidentLogSize() {
+		return incidentLogSize();
+	}
+	
+	/**
+	 * Returns a message in the Incident's log
+	 * @param index position of the message in the log
+	 * @return the log message
+	 */
+	public synchronized String getIncidentLogMessage(int index) {
+		return incidentLogMessage(index);
+	}
+	
+	/**
+	 * Returns a copy of the Incident with its fields and log as they are now, which later changes to the Incident do not affect
+	 * @return copy of the Incident
+	 */
+	public synchronized Incident copy() {
+		int size = incidentLogSize();
+		ArrayList<String> log = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			log.add(incidentLogMessage(i));
+		}
+		return restore(incidentId, getState(), title, caller, reopenCount, owner, statusDetails, () -> log);
+	}
+	
+	/**
+	 * Returns whether the Incident has changed since it was last marked clean. A new Incident is dirty until it has been saved.
+	 * @return true if the Incident has changed
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+	
+	/**
+	 * Marks the Incident as saved, so that it is dirty again only once it changes
+	 */
+	public void markClean() {
+		dirty = false;
 	}
 	
 	/**
 	 * Returns a string representation of the incident's log messages
 	 * @return Incident's log messages as a String
 	 */
-	public String getIncidentLogMessages() {
-		String s = "";
-		for (int i = 0; i < incidentLog.size(); i++) {
-			s += "- " + incidentLog.get(i) + '\n';
+	public synchronized String getIncidentLogMessages() {
+		StringBuilder s = new StringBuilder();
+		try {
+			writeIncidentLogMessagesTo(s);
+		} catch (IOException e) {
+			// A StringBuilder never throws an IOException
+			throw new UncheckedIOException(e);
+		}
+		return s.toString();
+	}
+	
+	/**
+	 * Writes the incident's log messages to an Appendable, one message per line with each message following a -
+	 * @param out Appendable to write the log messages to
+	 * @throws IOException if the Appendable cannot be written to
+	 */
+	private void writeIncidentLogMessagesTo(Appendable out) throws IOException {
+		IncidentLogSource source = incidentLogSource;
+		if (source != null) {
+			// A log that has not been loaded yet is read from its source without being kept, so writing out Incidents does not leave their logs in memory
+			ArrayList<String> log = source.loadIncidentLog();
+			if (log == null || log.size() == 0) {
+				throw new IllegalArgumentException("Incident cannot be created.");
+			}
+			for (int i = 0; i < log.size(); i++) {
+				out.append("- ").append(log.get(i)).append('\n');
+			}
+			return;
+		}
+		int size = incidentLogSize();
+		for (int i = 0; i < size; i++) {
+			out.append("- ").append(incidentLogMessage(i)).append('\n');
 		}
-		
-		return s;
 	}
 	
 	/**
 	 * Updates the state of the Incident and drives it through the FSM.
 	 * @param command Command that controls the path the Incident takes through the FSM.
 	 */
-	public void update(Command command) {
-		if (currentState == newState) {
-			newState.updateState(command);
-		}
-		else if (currentState == onHoldState) {
-			onHoldState.updateState(command);
-		}
-		else if (currentState == inProgressState) {
-			inProgressState.updateState(command);
-		}
-		else if(currentState == resolvedState) {
-			resolvedState.updateState(command);
+	public synchronized void update(Command command) {
+		dirty = true;
+		Transition transition = TRANSITIONS[currentState][command.getCommand().ordinal()];
+		if (transition == null) {
+			throw new UnsupportedOperationException();
 		}
-		else {
-			canceledState.updateState(command);
+		currentState = (byte) transition.nextState.ordinal();
+		if (transition.effect != null) {
+			transition.effect.apply(this, command);
 		}
+		addMessageToIncidentLog(command.getCommandMessage());
 	}
 	
 	/** 
 	 * Returns the Incident as a String
 	 * @return String representation of the Incident. 
 	 */
-	public String toString() {
-		return "* " + incidentId + "," + this.getState() + "," + title + "," + caller + "," + reopenCount + "," + owner + "," + statusDetails + '\n' + getIncidentLogMessages();
-		
+	public synchronized String toString() {
+		StringBuilder s = new StringBuilder(64 + 64 * (incidentLog == null ? logEntryCount : incidentLog.size()));
+		try {
+			writeTo(s);
+		} catch (IOException e) {
+			// A StringBuilder never throws an IOException
+			throw new UncheckedIOException(e);
+		}
+		return s.toString();
 	}
 	
 	/**
-	 * Interface for states in the Incident State Pattern.  All 
-	 * concrete incident states must implement the IncidentState interface.
-	 * The IncidentState interface should be a private interface of the 
-	 * Incident class.
-	 * 
-	 * @author Dr. Sarah Heckman (sarah_heckman@ncsu.edu) 
-	 */
-	private interface IncidentState {
-		
-		/**
-		 * Update the Incident based on the given Command.
-		 * An UnsupportedOperationException is thrown if the Command
-		 * is not a valid action for the given state.  
-		 * @param command Command describing the action that will update the Incident's
-		 * state.
-		 * @throws UnsupportedOperationException if the Command is not a valid action
-		 * for the given state.
-		 */
-		void updateState(Command command);
-		
-		/**
-		 * Returns the name of the current state as a String.
-		 * @return the name of the current state as a String.
-		 */
-		String getStateName();
-
-	}
-	
-	/** 
-	 * Represents the New state of an Incident. Controls how the state of an Incident changes depending on the Command given.
-	 * @author Tyler Strickland
-	 *
+	 * Writes the Incident in the same form as toString directly to an Appendable, such as a Writer or a CharBuffer, without building a String of the whole Incident
+	 * @param out Appendable to write the Incident to
+	 * @throws IOException if the Appendable cannot be written to
 	 */
-	private class NewState implements IncidentState {
-		
-		/** 
-		 * Constructs a new NewState
-		 */
-		private NewState() {
-			
-		}
-		
-		/** 
-		 * Updates the currentState of the Incident depending on what the command value and command information is
-		 * @param command command being given to the Incident
-		 * @throws UnSupportedOperationExcepion if the command is not appropriate given the current state of the incident
-		 */
-		public void updateState(Command command) {
-			if (command.getCommand() != CommandValue.ASSIGN && command.getCommand() != CommandValue.CANCEL) {
-				throw new UnsupportedOperationException();
-			}
-			else {
-				if (command.getCommand() == CommandValue.ASSIGN) {
-					currentState = inProgressState;
-					setOwner(command.getCommandInformation());
-					addMessageToIncidentLog(command.getCommandMessage());
-				}
-				else if (command.getCommand() == CommandValue.CANCEL) {
-					currentState = canceledState;
-					setStatusDetails(command.getCommandInformation());
-					addMessageToIncidentLog(command.getCommandMessage());
-				}
-			}
-		}
-		
-		/**
-		 * Returns the name of the state
-		 * @return name of the state as a String
-		 */
-		public String getStateName() {
-			return NEW_NAME;
-		}
-			
+	public synchronized void writeTo(Appendable out) throws IOException {
+		out.append("* ").append(Integer.toString(incidentId)).append(',').append(STATES[currentState].getStateName()).append(',')
+			.append(title).append(',').append(caller).append(',').append(Integer.toString(reopenCount)).append(',')
+			.append(owner).append(',').append(statusDetails).append('\n');
+		writeIncidentLogMessagesTo(out);
 	}
 	
 	/**
-	 * Represents the In Progress state of an Incident. Controls how the state changes depending on the command given. 
-	 * @author Tyler Strickland
-	 *
+	 * Creates the transition table of the fsm. Every transition moves the Incident to its next state, applies its effect and then adds the Command's message to 
+	 * the Incident's log.
+	 * @return transitions indexed by the ordinal of the current state and the ordinal of the CommandValue
 	 */
-	private class InProgressState implements IncidentState {
-		
-		/**
-		 * Creates a new InProgressState
-		 */
-		private InProgressState() {
-			
-		}
-		
-		/** 
-		 * Updates the currentState of the Incident depending on what the command value and command information is
-		 * @param command command being given to the Incident
-		 * @throws UnSupportedOperationExcepion if the command is not appropriate given the current state of the incident
-		 */
-		public void updateState(Command command) {
-			//hold, resolve, assign, cancel
-			if (command.getCommand() != CommandValue.HOLD && command.getCommand() != CommandValue.RESOLVE && command.getCommand() != CommandValue.ASSIGN && command.getCommand() != CommandValue.CANCEL) {
-				throw new UnsupportedOperationException();
-			}
-			
-			else {
-				if (command.getCommand() == CommandValue.HOLD) {
-					currentState = onHoldState;
-					setStatusDetails(command.getCommandInformation());
-					setState(ON_HOLD_NAME);
-					addMessageToIncidentLog(command.getCommandMessage());
-				}
-				else if (command.getCommand() == CommandValue.RESOLVE) {
-					currentState = resolvedState;
-					setStatusDetails(command.getCommandInformation());
-					addMessageToIncidentLog(command.getCommandMessage());
-				}
-				else if (command.getCommand() == CommandValue.ASSIGN) {
-					currentState = inProgressState;
-					setOwner(command.getCommandInformation());
-					addMessageToIncidentLog(command.getCommandMessage());
-				}
-				else if (command.getCommand() == CommandValue.CANCEL) {
-					currentState = canceledState;
-					setStatusDetails(command.getCommandInformation());
-					setOwner(UNOWNED);
-					addMessageToIncidentLog(command.getCommandMessage());
-				}
-			}
-		}
-		
-		/**
-		 * Returns the name of the state
-		 * @return name of the State as a String
-		 */
-		public String getStateName() {
-			return IN_PROGRESS_NAME;
-		}
-			
+	private static Transition[][] createTransitions() {
+		Transition[][] transitions = new Transition[STATES.length][CommandValue.values().length];
+		transitions[State.NEW.ordinal()][CommandValue.ASSIGN.ordinal()] = new Transition(State.IN_PROGRESS, (incident, command) -> incident.setOwner(command.getCommandInformation()));
+		transitions[State.NEW.ordinal()][CommandValue.CANCEL.ordinal()] = new Transition(State.CANCELED, (incident, command) -> incident.setStatusDetails(command.getCommandInformation()));
+		
+		transitions[State.IN_PROGRESS.ordinal()][CommandValue.HOLD.ordinal()] = new Transition(State.ON_HOLD, (incident, command) -> {
+			incident.setStatusDetails(command.getCommandInformation());
+			incident.setState(ON_HOLD_NAME);
+		});
+		transitions[State.IN_PROGRESS.ordinal()][CommandValue.RESOLVE.ordinal()] = new Transition(State.RESOLVED, (incident, command) -> incident.setStatusDetails(command.getCommandInformation()));
+		transitions[State.IN_PROGRESS.ordinal()][CommandValue.ASSIGN.ordinal()] = new Transition(State.IN_PROGRESS, (incident, command) -> incident.setOwner(command.getCommandInformation()));
+		transitions[State.IN_PROGRESS.ordinal()][CommandValue.CANCEL.ordinal()] = new Transition(State.CANCELED, (incident, command) -> {
+			incident.setStatusDetails(command.getCommandInformation());
+			incident.setOwner(UNOWNED);
+		});
+		
+		transitions[State.ON_HOLD.ordinal()][CommandValue.INVESTIGATE.ordinal()] = new Transition(State.IN_PROGRESS, (incident, command) -> incident.setStatusDetails(NO_STATUS));
+		
+		transitions[State.RESOLVED.ordinal()][CommandValue.CANCEL.ordinal()] = new Transition(State.CANCELED, (incident, command) -> {
+			incident.setStatusDetails(command.getCommandInformation());
+			incident.setOwner(UNOWNED);
+		});
+		transitions[State.RESOLVED.ordinal()][CommandValue.REOPEN.ordinal()] = new Transition(State.IN_PROGRESS, (incident, command) -> {
+			incident.setStatusDetails(NO_STATUS);
+			incident.setReopenCount(incident.reopenCount + 1);
+		});
+		return transitions;
 	}
 	
 	/**
-	 * Represents the Canceled state of an Incident. Controls how the state of an Incident changes when in the Canceled state depending on the command given. 
+	 * Changes an Incident makes to its fields when it takes a transition of the fsm
 	 * @author Tyler Strickland
 	 *
 	 */
-	private class CanceledState implements IncidentState {
-		
-		/**
-		 * Creates a new CanceledState
-		 */
-		private CanceledState() {
-			
-		}
-		
-		/** 
-		 * Updates the currentState of the Incident depending on what the command value and command information is
-		 * @param command command being given to the Incident
-		 * @throws UnSupportedOperationExcepion if the command is not appropriate given the current state of the incident
-		 */
-		public void updateState(Command command) {
-			currentState = canceledState;
-			throw new UnsupportedOperationException();
-		}
+	private interface TransitionEffect {
 		
 		/**
-		 * Returns the name of the state
-		 * @return name of the state as a String
+		 * Applies the changes to an Incident
+		 * @param incident Incident taking the transition
+		 * @param command Command that caused the transition
 		 */
-		public String getStateName() {
-			return CANCELED_NAME;
-		}
-			
+		void apply(Incident incident, Command command);
 	}
 	
 	/**
-	 * Represents the On Hold state for an Incident. Controls how the state of an Incident changes when in the On Hold state depending on the command given. 
+	 * Entry of the transition table: the state an Incident moves to and the changes it makes to its fields
 	 * @author Tyler Strickland
 	 *
 	 */
-	private class OnHoldState implements IncidentState {
+	private static class Transition {
 		
-		/**
-		 * Creates a new OnHoldState
-		 */
-		private OnHoldState() {
-			
-		}
-		
-		/** 
-		 * Updates the currentState of the Incident depending on what the command value and command information is
-		 * @param command command being given to the Incident
-		 * @throws UnSupportedOperationExcepion if the command is not appropriate given the current state of the incident
-		 */
-		public void updateState(Command command) {
-			if (command.getCommand() == CommandValue.INVESTIGATE) {
-				currentState = inProgressState;
-				setStatusDetails(NO_STATUS);
-				addMessageToIncidentLog(command.getCommandMessage());
-			}
-			else {
-				throw new UnsupportedOperationException();
-			}
-		}
+		/** State the Incident moves to */
+		private final State nextState;
+		/** Changes the Incident makes to its fields, or null if it only adds the Command's message to its log */
+		private final TransitionEffect effect;
 		
 		/**
-		 * Returns the name of the state
-		 * @return name of the State as a String
+		 * Constructs a new Transition
+		 * @param nextState state the Incident moves to
+		 * @param effect changes the Incident makes to its fields
 		 */
-		public String getStateName() {
-			return ON_HOLD_NAME;
+		private Transition(State nextState, TransitionEffect effect) {
+			this.nextState = nextState;
+			this.effect = effect;
 		}
-			
 	}
 	
 	/** 
-	 * Represents the Resolved State for an Incident. Controls how the state of an Incident changes when in the Resolved state depending on the command given. 
+	 * States of an Incident. The states hold no data of their own, so every Incident shares them and stores only the ordinal of its current state. How an 
+	 * Incident moves between the states is given by the transition table.
 	 * @author Tyler Strickland
 	 *
 	 */
-	private class ResolvedState implements IncidentState {
-	
+	private enum State {
+		
+		/** New state of an Incident */
+		NEW(NEW_NAME, EnumSet.of(StatusDetails.NO_STATUS), false),
+		/** In Progress state of an Incident */
+		IN_PROGRESS(IN_PROGRESS_NAME, EnumSet.of(StatusDetails.NO_STATUS), true),
+		/** On Hold state of an Incident */
+		ON_HOLD(ON_HOLD_NAME, StatusDetails.HOLD_REASONS, true),
+		/** Resolved state of an Incident */
+		RESOLVED(RESOLVED_NAME, StatusDetails.RESOLUTION_CODES, true),
+		/** Canceled state of an Incident */
+		CANCELED(CANCELED_NAME, StatusDetails.CANCELLATION_CODES, false);
+		
+		/** Name of the state */
+		private final String stateName;
+		/** Status details an Incident in the state can have */
+		private final EnumSet<StatusDetails> statusDetails;
+		/** Whether an Incident in the state must have an owner, rather than being unowned */
+		private final boolean owned;
+		
 		/**
-		 * Creates a new Resolved State
+		 * Constructs a State with the given name
+		 * @param stateName name of the state
+		 * @param statusDetails status details an Incident in the state can have
+		 * @param owned whether an Incident in the state must have an owner
 		 */
-		private ResolvedState() {
-			
+		State(String stateName, EnumSet<StatusDetails> statusDetails, boolean owned) {
+			this.stateName = stateName;
+			this.statusDetails = statusDetails;
+			this.owned = owned;
 		}
-	
-		/** 
-		 * Updates the currentState of the Incident depending on what the command value and command information is
-		 * @param command command being given to the Incident
-		 * @throws UnSupportedOperationExcepion if the command is not appropriate given the current state of the incident
-		 */
-		public void updateState(Command command) {
-			if (command.getCommand() == CommandValue.CANCEL) {
-				currentState = canceledState;
-				setStatusDetails(command.getCommandInformation());
-				setOwner(UNOWNED);
-				addMessageToIncidentLog(command.getCommandMessage());
-			}
-			else if(command.getCommand() == CommandValue.REOPEN) {
-				currentState = inProgressState;
-				setStatusDetails(NO_STATUS);
-				setReopenCount(reopenCount + 1);
-				addMessageToIncidentLog(command.getCommandMessage());
-			}
-			else {
-				throw new UnsupportedOperationException();
-			}
-		}
-	
+		
 		/**
 		 * Returns the name of the state
 		 * @return name of the state as a String
 		 */
-		public String getStateName() {
-			return RESOLVED_NAME;
+		private String getStateName() {
+			return stateName;
 		}
-		
 	}
 	
-	
 }
@@ -0,0 +1,114 @@
+/**
+ * 
+ */
+package servicewolf.src.incident;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Append-only storage for the log messages of many Incidents. Messages are packed as UTF-8 into large chunks, each message being its length followed by its 
+ * bytes, and a message is referred to by a single long entry holding its chunk and position. An Incident whose log is in an arena holds only the entries of 
+ * its messages, so a message costs its bytes and eight bytes instead of a String and its array. The chunks can be allocated outside of the heap. Messages 
+ * are never removed, so the space of the messages of deleted Incidents is only freed with the arena.
+ * @author Tyler Strickland
+ *
+ */
+public class IncidentLogArena {
+
+	/** Size of each chunk, apart from chunks holding a single larger message */
+	private static final int CHUNK_SIZE = 1 << 20;
+	/** Largest number of bytes the length of a message takes */
+	private static final int MAX_LENGTH_SIZE = 5;
+
+	/** Whether the chunks are allocated outside of the heap */
+	private final boolean direct;
+	/** Chunks of the arena in the order they were allocated. Replaced with a larger copy when it is full, so it can be read without holding the lock. */
+	private volatile ByteBuffer[] chunks;
+	/** Number of chunks in use */
+	private int chunkCount;
+	/** Number of bytes used in all chunks */
+	private long size;
+
+	/**
+	 * Constructs a new IncidentLogArena with chunks on the heap
+	 */
+	public IncidentLogArena() {
+		this(false);
+	}
+
+	/**
+	 * Constructs a new IncidentLogArena
+	 * @param direct whether the chunks are allocated outside of the heap
+	 */
+	public IncidentLogArena(boolean direct) {
+		this.direct = direct;
+		this.chunks = new ByteBuffer[4];
+	}
+
+	/**
+	 * Adds a message to the arena
+	 * @param message message to add
+	 * @return entry of the message, which is used to read it
+	 */
+	public synchronized long append(String message) {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		int needed = MAX_LENGTH_SIZE + bytes.length;
+		ByteBuffer chunk = chunkCount == 0 ? null : chunks[chunkCount - 1];
+		if (chunk == null || chunk.remaining() < needed) {
+			chunk = direct ? ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, needed)) : ByteBuffer.allocate(Math.max(CHUNK_SIZE, needed));
+			ByteBuffer[] current = chunks;
+			if (chunkCount == current.length) {
+				current = Arrays.copyOf(current, chunkCount * 2);
+			}
+			current[chunkCount++] = chunk;
+			chunks = current;
+		}
+		int position = chunk.position();
+		int length = bytes.length;
+		while ((length & ~0x7F) != 0) {
+			chunk.put((byte) ((length & 0x7F) | 0x80));
+			length >>>= 7;
+		}
+		chunk.put((byte) length);
+		chunk.put(bytes);
+		size += chunk.position() - position;
+		return ((long) (chunkCount - 1) << 32) | position;
+	}
+
+	/**
+	 * Returns a message in the arena
+	 * @param entry entry of the message returned by append
+	 * @return the message
+	 */
+	public String get(long entry) {
+		ByteBuffer chunk = chunks[(int) (entry >>> 32)];
+		int position = (int) entry;
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = chunk.get(position++);
+			length |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				break;
+			}
+		}
+		if (chunk.hasArray()) {
+			return new String(chunk.array(), chunk.arrayOffset() + position, length, StandardCharsets.UTF_8);
+		}
+		byte[] bytes = new byte[length];
+		ByteBuffer view = chunk.duplicate();
+		view.position(position);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the number of bytes the messages in the arena take
+	 * @return number of bytes used
+	 */
+	public synchronized long size() {
+		return size;
+	}
+}
@@ -0,0 +1,23 @@
+/**
+ * 
+ */
+package servicewolf.src.incident;
+
+import java.util.ArrayList;
+
+
+/**
+ * Source of an Incident's log messages that have not been loaded yet. An Incident created with an IncidentLogSource keeps only the source until its log is
+ * first needed, so Incidents whose logs are never read or added to do not hold their messages in memory.
+ * @author Tyler Strickland
+ *
+ */
+public interface IncidentLogSource {
+
+	/**
+	 * Loads the log messages of the Incident
+	 * @return log messages in the order they were added to the Incident
+	 * @throws IllegalArgumentException if the log messages cannot be loaded
+	 */
+	ArrayList<String> loadIncidentLog();
+}
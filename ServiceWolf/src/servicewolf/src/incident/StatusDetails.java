@@ -0,0 +1,114 @@
+/**
+ * 
+ */
+package servicewolf.src.incident;
+
+import java.util.EnumSet;
+
+
+/**
+ * Status details an Incident can have: no status, the reasons an Incident is on hold, the ways it was resolved and the reasons it was canceled. Each state 
+ * of an Incident allows a set of status details, so checking an Incident's status details is a test of a bit in an EnumSet. The text of a status detail is 
+ * turned into its constant with a perfect hash table, which finds any status detail with a single String comparison.
+ * @author Tyler Strickland
+ *
+ */
+public enum StatusDetails {
+
+	/** No status */
+	NO_STATUS(Incident.NO_STATUS),
+	/** On hold awaiting the caller */
+	AWAITING_CALLER(Incident.HOLD_AWAITING_CALLER),
+	/** On hold awaiting a change */
+	AWAITING_CHANGE(Incident.HOLD_AWAITING_CHANGE),
+	/** On hold awaiting a vendor */
+	AWAITING_VENDOR(Incident.HOLD_AWAITING_VENDOR),
+	/** Resolved permanently */
+	PERMANENTLY_SOLVED(Incident.RESOLUTION_PERMANENTLY_SOLVED),
+	/** Resolved with a workaround */
+	WORKAROUND(Incident.RESOLUTION_WORKAROUND),
+	/** Resolved by the caller closing the Incident */
+	CALLER_CLOSED(Incident.RESOLUTION_CALLER_CLOSED),
+	/** Canceled as a duplicate */
+	DUPLICATE(Incident.CANCELLATION_DUPLICATE),
+	/** Canceled as unnecessary */
+	UNNECESSARY(Incident.CANCELLATION_UNNECESSARY),
+	/** Canceled as not an incident */
+	NOT_AN_INCIDENT(Incident.CANCELLATION_NOT_AN_INCIDENT),
+	/** Canceled by the caller */
+	CALLER_CANCELED(Incident.CANCELLATION_CALLER_CANCELLED);
+
+	/** Reasons an Incident can be on hold */
+	public static final EnumSet<StatusDetails> HOLD_REASONS = EnumSet.range(AWAITING_CALLER, AWAITING_VENDOR);
+	/** Ways an Incident can be resolved */
+	public static final EnumSet<StatusDetails> RESOLUTION_CODES = EnumSet.range(PERMANENTLY_SOLVED, CALLER_CLOSED);
+	/** Reasons an Incident can be canceled */
+	public static final EnumSet<StatusDetails> CANCELLATION_CODES = EnumSet.range(DUPLICATE, CALLER_CANCELED);
+	/** Status details in the slots of the perfect hash table, or null for an empty slot */
+	private static final StatusDetails[] TABLE = createTable();
+
+	/** Text of the status detail */
+	private final String text;
+
+	/**
+	 * Constructs a status detail with the given text
+	 * @param text text of the status detail
+	 */
+	StatusDetails(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Returns the text of the status detail, which is the text an Incident is saved with
+	 * @return text of the status detail
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Returns the status detail with the given text
+	 * @param text text of the status detail
+	 * @return the status detail, or null if the text is not the text of a status detail
+	 */
+	public static StatusDetails fromText(String text) {
+		if (text == null) {
+			return null;
+		}
+		StatusDetails statusDetails = TABLE[slot(text.hashCode(), TABLE.length)];
+		if (statusDetails != null && (statusDetails.text == text || statusDetails.text.equals(text))) {
+			return statusDetails;
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the smallest power of two sized table in which every status detail has a slot of its own
+	 * @return the table of status details
+	 */
+	private static StatusDetails[] createTable() {
+		StatusDetails[] values = values();
+		for (int size = Integer.highestOneBit(values.length) * 2; ; size *= 2) {
+			StatusDetails[] table = new StatusDetails[size];
+			boolean perfect = true;
+			for (int i = 0; i < values.length && perfect; i++) {
+				int slot = slot(values[i].text.hashCode(), size);
+				perfect = table[slot] == null;
+				table[slot] = values[i];
+			}
+			if (perfect) {
+				return table;
+			}
+		}
+	}
+
+	/**
+	 * Returns the slot of a hash code in a table
+	 * @param hash hash code of the text
+	 * @param size size of the table, which is a power of two
+	 * @return slot of the hash code
+	 */
+	private static int slot(int hash, int size) {
+		return (hash ^ (hash >>> 16)) & (size - 1);
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * 
+ */
+package servicewolf.src.incident;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+
+/**
+ * Table of the Strings that repeat across Incidents, such as callers, owners and status details. Interning a String returns the single instance of it held 
+ * by the table, so Incidents read from a file or changed by a Command share one instance of each value instead of each holding its own copy. The constants of 
+ * the Incident class are in the table from the start, so interning a state name or status detail always returns the constant itself. The table only holds 
+ * its Strings weakly, so a String that no Incident uses any more is dropped from the table once it is garbage collected. The table is split into stripes by 
+ * the hash of each String, each with a lock of its own, so threads parsing a file in parallel rarely wait for each other to intern their Strings.
+ * @author Tyler Strickland
+ *
+ */
+public class SymbolTable {
+
+	/** Number of stripes of the table, a power of two */
+	private static final int STRIPE_COUNT = 64;
+	/** Stripes of the table, each holding a weak reference to the instance of every String in it, keyed by the String itself and guarded by the stripe */
+	private static final WeakHashMap<String, WeakReference<String>>[] STRIPES = createStripes();
+
+	static {
+		String[] constants = {Incident.NEW_NAME, Incident.IN_PROGRESS_NAME, Incident.ON_HOLD_NAME, Incident.RESOLVED_NAME, Incident.CANCELED_NAME, 
+			Incident.HOLD_AWAITING_CALLER, Incident.HOLD_AWAITING_CHANGE, Incident.HOLD_AWAITING_VENDOR, Incident.RESOLUTION_PERMANENTLY_SOLVED, 
+			Incident.RESOLUTION_WORKAROUND, Incident.RESOLUTION_CALLER_CLOSED, Incident.CANCELLATION_DUPLICATE, Incident.CANCELLATION_UNNECESSARY, 
+			Incident.CANCELLATION_NOT_AN_INCIDENT, Incident.CANCELLATION_CALLER_CANCELLED, Incident.UNOWNED, Incident.NO_STATUS};
+		for (int i = 0; i < constants.length; i++) {
+			stripe(constants[i]).put(constants[i], new WeakReference<String>(constants[i]));
+		}
+	}
+
+	/**
+	 * Creates the empty stripes of the table
+	 * @return the stripes
+	 */
+	@SuppressWarnings("unchecked")
+	private static WeakHashMap<String, WeakReference<String>>[] createStripes() {
+		WeakHashMap<String, WeakReference<String>>[] stripes = new WeakHashMap[STRIPE_COUNT];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new WeakHashMap<String, WeakReference<String>>();
+		}
+		return stripes;
+	}
+
+	/**
+	 * Returns the stripe of the table a String belongs in. The high bits of the hash are mixed into the low bits so that Strings that differ only in their 
+	 * last characters still spread across the stripes.
+	 * @param symbol String to find the stripe of
+	 * @return the stripe
+	 */
+	private static WeakHashMap<String, WeakReference<String>> stripe(String symbol) {
+		int hash = symbol.hashCode();
+		return STRIPES[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+	}
+
+	/**
+	 * Returns the table's instance of a String, adding the String to the table if it is not already in it
+	 * @param symbol String to intern
+	 * @return the instance of the String held by the table, or null if the String is null
+	 */
+	public static String intern(String symbol) {
+		if (symbol == null) {
+			return null;
+		}
+		WeakHashMap<String, WeakReference<String>> stripe = stripe(symbol);
+		synchronized (stripe) {
+			WeakReference<String> reference = stripe.get(symbol);
+			String existing = reference == null ? null : reference.get();
+			if (existing != null) {
+				return existing;
+			}
+			stripe.put(symbol, new WeakReference<String>(symbol));
+			return symbol;
+		}
+	}
+}
@@ -0,0 +1,460 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Block compression of ServiceGroups files. A compressed file starts with a header of the bytes SWZ, the format version, the codec and the block size, followed
+ * by blocks that are each compressed on their own with Deflate. Each block has a header of its flags, its uncompressed length and its compressed length, and the
+ * file ends with a block of length 0. Because the blocks are independent they can be decompressed in any order, and a block that is flagged as starting at a
+ * ServiceGroup header can be parsed without the blocks before it.
+ * @author Tyler Strickland
+ *
+ */
+class BlockCompression {
+
+	/** Bytes every compressed file starts with */
+	private static final byte[] MAGIC = {'S', 'W', 'Z'};
+	/** Version of the compressed format that is written */
+	private static final int VERSION = 1;
+	/** Codec of blocks compressed with Deflate */
+	private static final int CODEC_DEFLATE = 1;
+	/** Size of the header of a compressed file */
+	private static final int HEADER_SIZE = MAGIC.length + 2 + Integer.BYTES;
+	/** Size of the header of a block */
+	private static final int BLOCK_HEADER_SIZE = 1 + 2 * Integer.BYTES;
+	/** Flag of a block that starts at a ServiceGroup header */
+	static final int FLAG_SERVICE_GROUP = 1;
+	/** Flag of a block that is stored without compression because compressing it did not make it smaller */
+	private static final int FLAG_STORED = 2;
+	/** Number of uncompressed bytes in each block that is written */
+	static final int BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Checks whether a file is block compressed
+	 * @param file file to check
+	 * @return true if the file starts with the header of a compressed file
+	 * @throws IOException if the file cannot be read
+	 */
+	static boolean isCompressed(String file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] start = new byte[MAGIC.length];
+			return in.readNBytes(start, 0, start.length) == start.length && Arrays.equals(start, MAGIC);
+		}
+	}
+
+	/**
+	 * Opens a stream of the contents of a file, decompressing the file if it is block compressed
+	 * @param in stream of the file
+	 * @return stream of the uncompressed contents
+	 * @throws IOException if the file cannot be read or has an invalid header
+	 */
+	static InputStream decompress(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+		buffered.mark(MAGIC.length);
+		byte[] start = new byte[MAGIC.length];
+		int read = buffered.readNBytes(start, 0, start.length);
+		buffered.reset();
+		if (read == start.length && Arrays.equals(start, MAGIC)) {
+			return new BlockInputStream(buffered);
+		}
+		return buffered;
+	}
+
+	/**
+	 * Finds the blocks of a compressed file without decompressing them
+	 * @param channel channel of the file
+	 * @return the blocks in the order they appear in the file
+	 * @throws IOException if the file cannot be read or is not a valid compressed file
+	 */
+	static ArrayList<Block> findBlocks(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, 0);
+		checkHeader(header.array());
+		ArrayList<Block> blocks = new ArrayList<Block>();
+		long position = HEADER_SIZE;
+		ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+		while (true) {
+			blockHeader.clear();
+			readFully(channel, blockHeader, position);
+			blockHeader.flip();
+			int flags = blockHeader.get();
+			int length = blockHeader.getInt();
+			int compressedLength = blockHeader.getInt();
+			if (length == 0) {
+				return blocks;
+			}
+			if (length < 0 || compressedLength < 0) {
+				throw new IOException("Invalid block");
+			}
+			position += BLOCK_HEADER_SIZE;
+			blocks.add(new Block(flags, position, length, compressedLength));
+			position += compressedLength;
+		}
+	}
+
+	/**
+	 * Reads and decompresses a block of a compressed file
+	 * @param channel channel of the file
+	 * @param block block to read
+	 * @return the uncompressed bytes of the block
+	 * @throws IOException if the block cannot be read or decompressed
+	 */
+	static byte[] readBlock(FileChannel channel, Block block) throws IOException {
+		ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength);
+		readFully(channel, compressed, block.position);
+		return uncompress(block.flags, compressed.array(), block.compressedLength, block.length);
+	}
+
+	/**
+	 * Checks the header of a compressed file
+	 * @param header bytes of the header
+	 * @throws IOException if the header is not the header of a supported compressed file
+	 */
+	private static void checkHeader(byte[] header) throws IOException {
+		if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+			throw new IOException("Not a compressed file");
+		}
+		if (header[MAGIC.length] != VERSION || header[MAGIC.length + 1] != CODEC_DEFLATE) {
+			throw new IOException("Unsupported compressed file");
+		}
+	}
+
+	/**
+	 * Decompresses the bytes of a block
+	 * @param flags flags of the block
+	 * @param compressed compressed bytes of the block
+	 * @param compressedLength number of compressed bytes
+	 * @param length number of uncompressed bytes
+	 * @return the uncompressed bytes
+	 * @throws IOException if the block cannot be decompressed to its length
+	 */
+	private static byte[] uncompress(int flags, byte[] compressed, int compressedLength, int length) throws IOException {
+		if ((flags & FLAG_STORED) != 0) {
+			if (compressedLength != length) {
+				throw new IOException("Invalid block");
+			}
+			return Arrays.copyOf(compressed, length);
+		}
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(compressed, 0, compressedLength);
+			byte[] bytes = new byte[length];
+			int read = 0;
+			while (read < length && !inflater.finished()) {
+				int n = inflater.inflate(bytes, read, length - read);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				read += n;
+			}
+			if (read != length) {
+				throw new IOException("Invalid block");
+			}
+			return bytes;
+		} catch (DataFormatException e) {
+			throw new IOException("Invalid block", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Reads bytes from a position of a channel until a buffer is full
+	 * @param channel channel to read from
+	 * @param buffer buffer to fill
+	 * @param position position in the channel to read from
+	 * @throws IOException if the channel cannot be read or ends before the buffer is full
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			position += n;
+		}
+	}
+
+	/**
+	 * Position and size of a block in a compressed file
+	 * @author Tyler Strickland
+	 *
+	 */
+	static class Block {
+
+		/** Flags of the block */
+		final int flags;
+		/** Position of the compressed bytes of the block in the file */
+		final long position;
+		/** Number of uncompressed bytes */
+		final int length;
+		/** Number of compressed bytes */
+		final int compressedLength;
+
+		/**
+		 * Constructs a new Block
+		 * @param flags flags of the block
+		 * @param position position of the compressed bytes of the block in the file
+		 * @param length number of uncompressed bytes
+		 * @param compressedLength number of compressed bytes
+		 */
+		private Block(int flags, long position, int length, int compressedLength) {
+			this.flags = flags;
+			this.position = position;
+			this.length = length;
+			this.compressedLength = compressedLength;
+		}
+
+		/**
+		 * Returns whether the block starts at a ServiceGroup header
+		 * @return true if the block starts at a ServiceGroup header
+		 */
+		boolean startsServiceGroup() {
+			return (flags & FLAG_SERVICE_GROUP) != 0;
+		}
+	}
+
+	/**
+	 * Stream that compresses what is written to it into blocks. A block is ended early at a ServiceGroup header once it is a quarter full, so most blocks
+	 * start at a ServiceGroup header and can be parsed on their own. Closing the stream writes the last block and the end of the file, but does not close the
+	 * stream it writes to.
+	 * @author Tyler Strickland
+	 *
+	 */
+	static class BlockOutputStream extends OutputStream {
+
+		/** Stream the compressed file is written to */
+		private final OutputStream out;
+		/** Uncompressed bytes of the current block */
+		private final byte[] block;
+		/** Compressed bytes of the current block */
+		private final byte[] compressed;
+		/** Compressor of the blocks */
+		private final Deflater deflater;
+		/** Number of bytes in the current block */
+		private int length;
+		/** Whether the current block starts at a ServiceGroup header */
+		private boolean startsServiceGroup;
+		/** Whether the stream has been closed */
+		private boolean closed;
+
+		/**
+		 * Constructs a new BlockOutputStream and writes the header of the compressed file
+		 * @param out stream to write the compressed file to
+		 * @throws IOException if the header cannot be written
+		 */
+		BlockOutputStream(OutputStream out) throws IOException {
+			this.out = out;
+			block = new byte[BLOCK_SIZE];
+			compressed = new byte[BLOCK_SIZE];
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			startsServiceGroup = true;
+			out.write(MAGIC);
+			out.write(VERSION);
+			out.write(CODEC_DEFLATE);
+			writeInt(BLOCK_SIZE);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (length == block.length) {
+				writeBlock();
+			}
+			block[length++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int count) throws IOException {
+			while (count > 0) {
+				if (length == block.length) {
+					writeBlock();
+				}
+				int n = Math.min(count, block.length - length);
+				System.arraycopy(bytes, offset, block, length, n);
+				length += n;
+				offset += n;
+				count -= n;
+			}
+		}
+
+		/**
+		 * Marks that a ServiceGroup header is about to be written. The current block is ended here if it is at least a quarter full, so that the next block
+		 * starts at the ServiceGroup header.
+		 * @throws IOException if the block cannot be written
+		 */
+		void markServiceGroup() throws IOException {
+			if (length == 0) {
+				startsServiceGroup = true;
+			}
+			else if (length >= block.length / 4) {
+				writeBlock();
+				startsServiceGroup = true;
+			}
+		}
+
+		/**
+		 * Does nothing, so that flushing a writer on top of the stream does not end the current block
+		 */
+		@Override
+		public void flush() {
+			// Blocks are only written when they are full, at a ServiceGroup header or when the stream is closed
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				if (length > 0) {
+					writeBlock();
+				}
+				out.write(0);
+				writeInt(0);
+				writeInt(0);
+				deflater.end();
+			}
+		}
+
+		/**
+		 * Compresses and writes the current block
+		 * @throws IOException if the block cannot be written
+		 */
+		private void writeBlock() throws IOException {
+			deflater.reset();
+			deflater.setInput(block, 0, length);
+			deflater.finish();
+			int compressedLength = 0;
+			while (!deflater.finished() && compressedLength < length) {
+				compressedLength += deflater.deflate(compressed, compressedLength, Math.min(compressed.length, length) - compressedLength);
+			}
+			int flags = startsServiceGroup ? FLAG_SERVICE_GROUP : 0;
+			if (!deflater.finished()) {
+				out.write(flags | FLAG_STORED);
+				writeInt(length);
+				writeInt(length);
+				out.write(block, 0, length);
+			}
+			else {
+				out.write(flags);
+				writeInt(length);
+				writeInt(compressedLength);
+				out.write(compressed, 0, compressedLength);
+			}
+			length = 0;
+			startsServiceGroup = false;
+		}
+
+		/**
+		 * Writes an int as four bytes, high byte first
+		 * @param value int to write
+		 * @throws IOException if the int cannot be written
+		 */
+		private void writeInt(int value) throws IOException {
+			out.write(value >>> 24);
+			out.write(value >>> 16);
+			out.write(value >>> 8);
+			out.write(value);
+		}
+	}
+
+	/**
+	 * Stream of the uncompressed contents of a compressed file, decompressing one block at a time
+	 * @author Tyler Strickland
+	 *
+	 */
+	private static class BlockInputStream extends InputStream {
+
+		/** Stream of the compressed file */
+		private final DataInputStream in;
+		/** Uncompressed bytes of the current block */
+		private byte[] block;
+		/** Position of the next byte to read in the current block */
+		private int position;
+		/** Whether the end of the file has been read */
+		private boolean ended;
+
+		/**
+		 * Constructs a new BlockInputStream and reads the header of the compressed file
+		 * @param in stream of the compressed file
+		 * @throws IOException if the header cannot be read or is invalid
+		 */
+		private BlockInputStream(InputStream in) throws IOException {
+			this.in = new DataInputStream(in);
+			byte[] header = new byte[HEADER_SIZE];
+			this.in.readFully(header);
+			checkHeader(header);
+			block = new byte[0];
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextBlock()) {
+				return -1;
+			}
+			return block[position++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int count) throws IOException {
+			if (count == 0) {
+				return 0;
+			}
+			if (!nextBlock()) {
+				return -1;
+			}
+			int n = Math.min(count, block.length - position);
+			System.arraycopy(block, position, bytes, offset, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		/**
+		 * Decompresses the next block if every byte of the current block has been read
+		 * @return false if the end of the file has been reached
+		 * @throws IOException if the next block cannot be read or decompressed
+		 */
+		private boolean nextBlock() throws IOException {
+			while (position == block.length) {
+				if (ended) {
+					return false;
+				}
+				int flags = in.readUnsignedByte();
+				int length = in.readInt();
+				int compressedLength = in.readInt();
+				if (length == 0) {
+					ended = true;
+					return false;
+				}
+				if (length < 0 || compressedLength < 0) {
+					throw new IOException("Invalid block");
+				}
+				byte[] compressed = new byte[compressedLength];
+				in.readFully(compressed);
+				block = uncompress(flags, compressed, compressedLength, length);
+				position = 0;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import servicewolf.src.incident.IncidentLogSource;
+
+
+/**
+ * Log of an Incident that is still in a memory mapped ServiceGroups file. Only the range of the log lines in the mapping is kept, and the lines are parsed into
+ * log messages when the log is loaded, following the same rules as the ServiceGroupsParser. The mapping stays valid after the file it was mapped from is
+ * closed or replaced, so the log can be loaded at any time. The mapping, which can be up to a whole region of the file, is only released once every log in it
+ * has been garbage collected. Until then the file stays open on some platforms, such as Windows, where it cannot be replaced or deleted.
+ * @author Tyler Strickland
+ *
+ */
+class MappedIncidentLog implements IncidentLogSource {
+
+	/** Mapped region holding the log lines, which is shared by every log in the region */
+	private final ByteBuffer region;
+	/** Index in the region of the first byte of the log lines */
+	private final int start;
+	/** Index in the region just after the last byte of the log lines */
+	private final int end;
+
+	/**
+	 * Constructs a new MappedIncidentLog for the log lines in a range of a mapped region
+	 * @param region mapped region holding the log lines
+	 * @param start index of the first byte of the log lines
+	 * @param end index just after the last byte of the log lines
+	 */
+	MappedIncidentLog(ByteBuffer region, int start, int end) {
+		this.region = region;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Parses the log lines into log messages. Lines starting with - begin a message and any other line continues the message before it. Blank lines outside of
+	 * a message are ignored.
+	 * @return log messages in the order they appear in the file
+	 */
+	@Override
+	public ArrayList<String> loadIncidentLog() {
+		// Each load reads through its own view, so logs in the same region can be loaded by several threads at once
+		ByteBuffer lines = region.duplicate();
+		ArrayList<String> incidentLog = new ArrayList<String>();
+		StringBuilder message = null;
+		int lineStart = start;
+		while (lineStart < end) {
+			int lineEnd = lineStart;
+			while (lineEnd < end && lines.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			int next = lineEnd + 1;
+			if (lineEnd > lineStart && lines.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+			if (lineEnd > lineStart && lines.get(lineStart) == '-') {
+				if (message != null) {
+					incidentLog.add(message.toString().trim());
+				}
+				message = new StringBuilder(decode(lines, lineStart + 1, lineEnd));
+			}
+			else if (message != null) {
+				message.append('\n').append(decode(lines, lineStart, lineEnd));
+			}
+			else if (!isBlank(lines, lineStart, lineEnd)) {
+				message = new StringBuilder(decode(lines, lineStart, lineEnd));
+			}
+			lineStart = next;
+		}
+		if (message != null) {
+			incidentLog.add(message.toString().trim());
+		}
+		return incidentLog;
+	}
+
+	/**
+	 * Checks whether a range holds only whitespace
+	 * @param lines view of the mapped region
+	 * @param from index of the first byte of the range
+	 * @param to index just after the last byte of the range
+	 * @return true if every byte in the range is whitespace
+	 */
+	static boolean isBlank(ByteBuffer lines, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if ((lines.get(i) & 0xff) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a range of UTF-8 bytes into a String
+	 * @param lines view of the mapped region
+	 * @param from index of the first byte of the range
+	 * @param to index just after the last byte of the range
+	 * @return text of the range
+	 */
+	private static String decode(ByteBuffer lines, int from, int to) {
+		byte[] bytes = new byte[to - from];
+		lines.position(from);
+		lines.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,432 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import servicewolf.src.incident.Incident;
+import servicewolf.src.service_group.ServiceGroup;
+
+
+/**
+ * Reads a ServiceGroups file by memory mapping it and parsing the records directly from the mapped bytes. Separators and whitespace are skipped in place, ids and
+ * reopen counts are parsed without creating Strings, and state, owner and status detail fields that match one of the Incident constants reuse that constant.
+ * Only the remaining text fields and log messages are decoded. The file is expected to be UTF-8 encoded.
+ * @author Tyler Strickland
+ *
+ */
+class MappedServiceGroupsReader {
+
+	/** Largest number of bytes mapped at once */
+	private static final int MAX_REGION_SIZE = 1 << 30;
+	/** Incident state names that are shared instead of decoded */
+	private static final String[] STATE_NAMES = {Incident.NEW_NAME, Incident.IN_PROGRESS_NAME, Incident.ON_HOLD_NAME, Incident.RESOLVED_NAME, Incident.CANCELED_NAME};
+	/** Owners that are shared instead of decoded */
+	private static final String[] OWNERS = {Incident.UNOWNED};
+	/** Status details that are shared instead of decoded */
+	private static final String[] STATUS_DETAILS = {Incident.NO_STATUS, Incident.HOLD_AWAITING_CALLER, Incident.HOLD_AWAITING_CHANGE, Incident.HOLD_AWAITING_VENDOR,
+		Incident.RESOLUTION_PERMANENTLY_SOLVED, Incident.RESOLUTION_WORKAROUND, Incident.RESOLUTION_CALLER_CLOSED, Incident.CANCELLATION_DUPLICATE,
+		Incident.CANCELLATION_UNNECESSARY, Incident.CANCELLATION_NOT_AN_INCIDENT, Incident.CANCELLATION_CALLER_CANCELLED};
+
+	/** Parser that the records are passed to */
+	private ServiceGroupsParser parser;
+	/** Region of the file currently being read */
+	private ByteBuffer region;
+	/** Scratch space that text fields are copied into before being decoded */
+	private byte[] scratch;
+	/** Scratch space for the end of each field of an Incident record */
+	private int[] incidentFieldEnds;
+	/** Whether the logs of Incidents are left in the mapped file and loaded only when they are first needed */
+	private boolean lazyLogs;
+	/** Whether the log lines of the current Incident are being collected to be loaded later */
+	private boolean collectingLog;
+	/** Index in the region of the first log line of the current Incident, or -1 if none has been read */
+	private int logStart;
+	/** Index in the region just after the last log line of the current Incident */
+	private int logEnd;
+	/** Whether the log lines of the current Incident hold a log message */
+	private boolean logHasMessage;
+
+	/**
+	 * Constructs a new MappedServiceGroupsReader that passes records to the given parser
+	 * @param parser parser to pass the records to
+	 * @param lazyLogs whether Incident logs are left in the mapped file until they are first needed
+	 */
+	private MappedServiceGroupsReader(ServiceGroupsParser parser, boolean lazyLogs) {
+		this.parser = parser;
+		this.lazyLogs = lazyLogs;
+		this.scratch = new byte[256];
+		this.incidentFieldEnds = new int[7];
+	}
+
+	/**
+	 * Reads every ServiceGroup in a file by mapping it into memory one region at a time. Each region ends on a line boundary.
+	 * @param file file to read
+	 * @return ArrayList of ServiceGroups in the order they appear in the file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the file contains an invalid ServiceGroup or Incident
+	 */
+	static ArrayList<ServiceGroup> read(String file) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			return read(channel, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Reads every ServiceGroup in a file by mapping it into memory one region at a time, leaving each Incident's log in the mapping until it is first read or
+	 * added to. Only the position of each log is held until then. A log that spans two regions is read straight away.
+	 * @param file file to read
+	 * @return ArrayList of ServiceGroups in the order they appear in the file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the file contains an invalid ServiceGroup or Incident
+	 */
+	static ArrayList<ServiceGroup> readWithLazyLogs(String file) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			return read(channel, 0, channel.size(), true);
+		}
+	}
+
+	/**
+	 * Reads every ServiceGroup in part of a file by mapping it into memory one region at a time. Each region ends on a line boundary. The part must start at the
+	 * beginning of a line.
+	 * @param channel channel of the file to read
+	 * @param start position in the file of the first byte to read
+	 * @param size number of bytes to read
+	 * @return ArrayList of ServiceGroups in the order they appear in the part of the file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the part of the file contains an invalid ServiceGroup or Incident
+	 */
+	static ArrayList<ServiceGroup> read(FileChannel channel, long start, long size) throws IOException {
+		return read(channel, start, size, false);
+	}
+
+	/**
+	 * Reads every ServiceGroup in part of a file by mapping it into memory one region at a time. Each region ends on a line boundary. The part must start at the
+	 * beginning of a line.
+	 * @param channel channel of the file to read
+	 * @param start position in the file of the first byte to read
+	 * @param size number of bytes to read
+	 * @param lazyLogs whether Incident logs are left in the mapping until they are first needed
+	 * @return ArrayList of ServiceGroups in the order they appear in the part of the file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the part of the file contains an invalid ServiceGroup or Incident
+	 */
+	private static ArrayList<ServiceGroup> read(FileChannel channel, long start, long size, boolean lazyLogs) throws IOException {
+		ServiceGroupsParser parser = new ServiceGroupsParser();
+		MappedServiceGroupsReader reader = new MappedServiceGroupsReader(parser, lazyLogs);
+		long position = 0;
+		while (position < size) {
+			int length = (int) Math.min(MAX_REGION_SIZE, size - position);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start + position, length);
+			int end = length;
+			if (position + length < size) {
+				end = lastLineEnd(mapped, length);
+			}
+			reader.region = mapped;
+			reader.processLines(0, end);
+			position += end;
+			if (position < size) {
+				reader.readCollectedLog();
+			}
+		}
+		reader.endCollectedLog();
+		return parser.finish();
+	}
+
+	/**
+	 * Finds the position of every line in a file that starts with #, which is where each ServiceGroup begins
+	 * @param channel channel of the file to scan
+	 * @return positions of the ServiceGroup headers in the order they appear in the file
+	 * @throws IOException if the file cannot be mapped
+	 */
+	static long[] findServiceGroupHeaders(FileChannel channel) throws IOException {
+		long[] headers = new long[16];
+		int count = 0;
+		long size = channel.size();
+		long position = 0;
+		byte previous = '\n';
+		while (position < size) {
+			int length = (int) Math.min(MAX_REGION_SIZE, size - position);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			for (int i = 0; i < length; i++) {
+				byte current = mapped.get(i);
+				if (current == '#' && previous == '\n') {
+					if (count == headers.length) {
+						headers = Arrays.copyOf(headers, count * 2);
+					}
+					headers[count++] = position + i;
+				}
+				previous = current;
+			}
+			position += length;
+		}
+		return Arrays.copyOf(headers, count);
+	}
+
+	/**
+	 * Finds the end of the last complete line in a region
+	 * @param buffer region to search
+	 * @param length number of bytes in the region
+	 * @return index just after the last line terminator in the region
+	 * @throws IllegalArgumentException if the region does not contain a line terminator
+	 */
+	private static int lastLineEnd(ByteBuffer buffer, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		throw new IllegalArgumentException("Incident cannot be created");
+	}
+
+	/**
+	 * Processes every line in a range of the current region
+	 * @param from index of the first byte to process, which must be the start of a line
+	 * @param end index just after the last byte to process
+	 */
+	private void processLines(int from, int end) {
+		int start = from;
+		while (start < end) {
+			int lineEnd = start;
+			while (lineEnd < end && region.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			int next = lineEnd + 1;
+			if (lineEnd > start && region.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+			processLine(start, lineEnd);
+			start = next;
+		}
+	}
+
+	/**
+	 * Processes a single line, passing its record to the parser
+	 * @param start index of the first byte of the line
+	 * @param end index just after the last byte of the line
+	 */
+	private void processLine(int start, int end) {
+		byte marker = start == end ? (byte) '\n' : region.get(start);
+		if (marker == '#') {
+			endCollectedLog();
+			parser.beginServiceGroup(decodeTrimmed(start + 1, end, null));
+		}
+		else if (marker == '*') {
+			endCollectedLog();
+			processIncident(start + 1, end);
+			if (lazyLogs) {
+				collectingLog = true;
+				logStart = -1;
+				logHasMessage = false;
+			}
+		}
+		else if (collectingLog) {
+			if (logStart < 0) {
+				logStart = start;
+			}
+			logEnd = end;
+			logHasMessage = logHasMessage || marker == '-' || !MappedIncidentLog.isBlank(region, start, end);
+		}
+		else if (start == end) {
+			parser.continueMessage("");
+		}
+		else if (marker == '-') {
+			parser.beginMessage(decode(skipWhitespace(start + 1, end), end));
+		}
+		else {
+			parser.continueMessage(decode(start, end));
+		}
+	}
+
+	/**
+	 * Stops collecting the log lines of the current Incident and gives it a log that is loaded from them when it is first needed. An Incident without a log
+	 * message is left without a log, so that it is rejected when it is created.
+	 */
+	private void endCollectedLog() {
+		if (collectingLog) {
+			collectingLog = false;
+			if (logHasMessage) {
+				parser.setIncidentLogSource(new MappedIncidentLog(region, logStart, logEnd));
+			}
+		}
+	}
+
+	/**
+	 * Passes the log lines collected for the current Incident to the parser before the region they are in is replaced. The rest of the Incident's log is
+	 * then read straight away as well.
+	 */
+	private void readCollectedLog() {
+		if (collectingLog && logStart >= 0) {
+			collectingLog = false;
+			processLines(logStart, logEnd);
+		}
+	}
+
+	/**
+	 * Parses the comma separated fields of an Incident record and passes them to the parser
+	 * @param start index of the first byte after the *
+	 * @param end index just after the last byte of the line
+	 * @throws IllegalArgumentException if the record has too few fields or the ids are not integers
+	 */
+	private void processIncident(int start, int end) {
+		int[] fieldEnds = incidentFieldEnds;
+		int fieldStart = start;
+		for (int i = 0; i < fieldEnds.length; i++) {
+			fieldEnds[i] = nextField(fieldStart, end);
+			if (fieldEnds[i] == end && i != fieldEnds.length - 1) {
+				throw new IllegalArgumentException("Incident cannot be created");
+			}
+			fieldStart = fieldEnds[i] + 1;
+		}
+		int idEnd = fieldEnds[0];
+		int stateEnd = fieldEnds[1];
+		int titleEnd = fieldEnds[2];
+		int callerEnd = fieldEnds[3];
+		int reopenCountEnd = fieldEnds[4];
+		int ownerEnd = fieldEnds[5];
+		int statusDetailsEnd = fieldEnds[6];
+
+		parser.beginIncident(parseInt(start, idEnd), decodeTrimmed(idEnd + 1, stateEnd, STATE_NAMES), decodeTrimmed(stateEnd + 1, titleEnd, null),
+				decodeTrimmed(titleEnd + 1, callerEnd, null), parseInt(callerEnd + 1, reopenCountEnd), decodeTrimmed(reopenCountEnd + 1, ownerEnd, OWNERS),
+				decodeTrimmed(ownerEnd + 1, statusDetailsEnd, STATUS_DETAILS));
+	}
+
+	/**
+	 * Finds the end of the field starting at the given index
+	 * @param start index of the first byte of the field
+	 * @param end index just after the last byte of the line
+	 * @return index of the comma ending the field, or end if the field is the last on the line
+	 */
+	private int nextField(int start, int end) {
+		int i = start;
+		while (i < end && region.get(i) != ',') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the index of the first non-whitespace byte in a range
+	 * @param start index of the first byte of the range
+	 * @param end index just after the last byte of the range
+	 * @return index of the first non-whitespace byte, or end if there is none
+	 */
+	private int skipWhitespace(int start, int end) {
+		int i = start;
+		while (i < end && (region.get(i) & 0xff) <= ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Parses a decimal integer with optional surrounding whitespace from a range
+	 * @param start index of the first byte of the range
+	 * @param end index just after the last byte of the range
+	 * @return value of the integer
+	 * @throws IllegalArgumentException if the range is not a valid integer
+	 */
+	private int parseInt(int start, int end) {
+		int from = skipWhitespace(start, end);
+		int to = end;
+		while (to > from && (region.get(to - 1) & 0xff) <= ' ') {
+			to--;
+		}
+		boolean negative = false;
+		if (from < to && (region.get(from) == '-' || region.get(from) == '+')) {
+			negative = region.get(from) == '-';
+			from++;
+		}
+		if (from == to) {
+			throw new IllegalArgumentException("Incident cannot be created");
+		}
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			int digit = region.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new IllegalArgumentException("Incident cannot be created");
+			}
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				throw new IllegalArgumentException("Incident cannot be created");
+			}
+		}
+		if (negative) {
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Incident cannot be created");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Decodes a range with surrounding whitespace removed. If the range matches one of the known values, that value is returned without decoding.
+	 * @param start index of the first byte of the range
+	 * @param end index just after the last byte of the range
+	 * @param knownValues values to reuse when they match the range, or null
+	 * @return text of the range
+	 */
+	private String decodeTrimmed(int start, int end, String[] knownValues) {
+		int from = skipWhitespace(start, end);
+		int to = end;
+		while (to > from && (region.get(to - 1) & 0xff) <= ' ') {
+			to--;
+		}
+		if (knownValues != null) {
+			for (int i = 0; i < knownValues.length; i++) {
+				if (matches(from, to, knownValues[i])) {
+					return knownValues[i];
+				}
+			}
+		}
+		return decode(from, to);
+	}
+
+	/**
+	 * Checks whether a range holds exactly the given ASCII value
+	 * @param start index of the first byte of the range
+	 * @param end index just after the last byte of the range
+	 * @param value value to compare against
+	 * @return true if the range holds the value
+	 */
+	private boolean matches(int start, int end, String value) {
+		if (end - start != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (region.get(start + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a range of UTF-8 bytes into a String
+	 * @param start index of the first byte of the range
+	 * @param end index just after the last byte of the range
+	 * @return text of the range
+	 */
+	private String decode(int start, int end) {
+		int length = end - start;
+		if (length == 0) {
+			return "";
+		}
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		region.position(start);
+		region.get(scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+}
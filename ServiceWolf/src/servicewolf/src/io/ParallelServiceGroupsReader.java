@@ -0,0 +1,211 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import servicewolf.src.service_group.ServiceGroup;
+
+
+/**
+ * Reads a ServiceGroups file by splitting it at its ServiceGroup headers and parsing each ServiceGroup on a ForkJoinPool. The headers are found with a single scan
+ * of the memory mapped file and each ServiceGroup is then parsed from its own mapped part of the file, so the ServiceGroups that are created are the same as
+ * the ones created by reading the file in order. A block compressed file is split at the blocks that start at a ServiceGroup header instead, and each part is
+ * decompressed and parsed on its own.
+ * @author Tyler Strickland
+ *
+ */
+class ParallelServiceGroupsReader {
+
+	/** Number of characters buffered when parsing a part of a compressed file */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Reads every ServiceGroup in a file, parsing the ServiceGroups in parallel
+	 * @param file file to read
+	 * @param pool pool to parse the ServiceGroups on
+	 * @return ArrayList of ServiceGroups in the order they appear in the file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the file contains an invalid ServiceGroup or Incident
+	 */
+	static ArrayList<ServiceGroup> read(String file, ForkJoinPool pool) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			long[] headers = MappedServiceGroupsReader.findServiceGroupHeaders(channel);
+			long[] bounds = new long[headers.length + 2];
+			System.arraycopy(headers, 0, bounds, 1, headers.length);
+			bounds[bounds.length - 1] = channel.size();
+			return invoke(pool, part -> MappedServiceGroupsReader.read(channel, bounds[part], bounds[part + 1] - bounds[part]), bounds.length - 1);
+		}
+	}
+
+	/**
+	 * Reads every ServiceGroup in a block compressed file, decompressing and parsing the parts of the file that start at a ServiceGroup header in parallel
+	 * @param file file to read
+	 * @param pool pool to parse the ServiceGroups on
+	 * @return ArrayList of ServiceGroups in the order they appear in the file
+	 * @throws IOException if the file cannot be read or is not a valid compressed file
+	 * @throws IllegalArgumentException if the file contains an invalid ServiceGroup or Incident
+	 */
+	static ArrayList<ServiceGroup> readCompressed(String file, ForkJoinPool pool) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ArrayList<BlockCompression.Block> blocks = BlockCompression.findBlocks(channel);
+			if (blocks.size() == 0) {
+				return new ArrayList<ServiceGroup>();
+			}
+			ArrayList<Integer> starts = new ArrayList<Integer>();
+			for (int i = 0; i < blocks.size(); i++) {
+				if (i == 0 || blocks.get(i).startsServiceGroup()) {
+					starts.add(i);
+				}
+			}
+			starts.add(blocks.size());
+			return invoke(pool, part -> readCompressedPart(channel, blocks, starts.get(part), starts.get(part + 1)), starts.size() - 1);
+		}
+	}
+
+	/**
+	 * Decompresses and parses a range of blocks of a compressed file, one block at a time
+	 * @param channel channel of the file
+	 * @param blocks blocks of the file
+	 * @param low index of the first block to read
+	 * @param high index just after the last block to read
+	 * @return ArrayList of ServiceGroups in the blocks
+	 * @throws IOException if a block cannot be read or decompressed
+	 */
+	private static ArrayList<ServiceGroup> readCompressedPart(FileChannel channel, ArrayList<BlockCompression.Block> blocks, int low, int high) throws IOException {
+		Enumeration<InputStream> parts = new Enumeration<InputStream>() {
+			
+			/** Index of the next block to decompress */
+			private int next = low;
+
+			@Override
+			public boolean hasMoreElements() {
+				return next < high;
+			}
+
+			@Override
+			public InputStream nextElement() {
+				try {
+					return new ByteArrayInputStream(BlockCompression.readBlock(channel, blocks.get(next++)));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+		ServiceGroupsParser parser = new ServiceGroupsParser();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new SequenceInputStream(parts), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+			String line = reader.readLine();
+			while (line != null) {
+				parser.processLine(line);
+				line = reader.readLine();
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return parser.finish();
+	}
+
+	/**
+	 * Reads the parts of a file on a pool and joins their ServiceGroups in order
+	 * @param pool pool to read the parts on
+	 * @param reader reader of a single part
+	 * @param parts number of parts
+	 * @return ArrayList of ServiceGroups of every part in order, which is empty if there are no parts
+	 * @throws IOException if a part cannot be read
+	 */
+	private static ArrayList<ServiceGroup> invoke(ForkJoinPool pool, PartReader reader, int parts) throws IOException {
+		if (parts <= 0) {
+			return new ArrayList<ServiceGroup>();
+		}
+		try {
+			return pool.invoke(new ReadTask(reader, 0, parts));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Reads the ServiceGroups in a single part of a file
+	 * @author Tyler Strickland
+	 *
+	 */
+	private interface PartReader {
+
+		/**
+		 * Reads the ServiceGroups in a part of a file
+		 * @param part index of the part
+		 * @return ArrayList of ServiceGroups in the part in the order they appear in the file
+		 * @throws IOException if the part cannot be read
+		 */
+		ArrayList<ServiceGroup> read(int part) throws IOException;
+	}
+
+	/**
+	 * Task that reads a range of parts of a file, splitting the range in half until a single part is left.
+	 * @author Tyler Strickland
+	 *
+	 */
+	private static class ReadTask extends RecursiveTask<ArrayList<ServiceGroup>> {
+
+		/** Serial version of the task */
+		private static final long serialVersionUID = 1L;
+		/** Reader of a single part */
+		private final transient PartReader reader;
+		/** Index of the first part to read */
+		private final int low;
+		/** Index just after the last part to read */
+		private final int high;
+
+		/**
+		 * Constructs a new ReadTask for a range of parts of a file
+		 * @param reader reader of a single part
+		 * @param low index of the first part to read
+		 * @param high index just after the last part to read
+		 */
+		private ReadTask(PartReader reader, int low, int high) {
+			this.reader = reader;
+			this.low = low;
+			this.high = high;
+		}
+
+		/**
+		 * Reads the parts of the file in the range
+		 * @return ArrayList of ServiceGroups in the range in the order they appear in the file
+		 */
+		@Override
+		protected ArrayList<ServiceGroup> compute() {
+			if (high - low <= 0) {
+				return new ArrayList<ServiceGroup>();
+			}
+			if (high - low == 1) {
+				try {
+					return reader.read(low);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			int middle = (low + high) >>> 1;
+			ReadTask first = new ReadTask(reader, low, middle);
+			ReadTask second = new ReadTask(reader, middle, high);
+			second.fork();
+			ArrayList<ServiceGroup> serviceGroups = first.compute();
+			serviceGroups.addAll(second.join());
+			return serviceGroups;
+		}
+	}
+}
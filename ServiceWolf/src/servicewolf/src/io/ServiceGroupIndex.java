@@ -0,0 +1,423 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import servicewolf.src.incident.Incident;
+import servicewolf.src.service_group.ServiceGroup;
+import servicewolf.src.service_group.ServiceGroupSource;
+
+
+/**
+ * Reads and writes the index file kept next to a ServiceGroups file. The index holds where each ServiceGroup and each Incident is in the file, so a single 
+ * ServiceGroup or Incident can be read without parsing the rest of the file. An index starts with the bytes SWIX, a format version and the size and last 
+ * modified time of the file it indexes, which are checked before the index is used. A table of the ServiceGroups follows, giving each ServiceGroup's name, 
+ * position and length in the file, its number of Incidents and the position in the index of its table of Incidents. Each table of Incidents holds the id, 
+ * position and length of every Incident of the ServiceGroup in id order, in entries of a fixed size that can be searched in place.
+ * @author Tyler Strickland
+ *
+ */
+public class ServiceGroupIndex {
+
+	/** End of the file name of every index */
+	private static final String INDEX_SUFFIX = ".idx";
+	/** Bytes every index starts with */
+	private static final byte[] MAGIC = {'S', 'W', 'I', 'X'};
+	/** Version of the index format that is written */
+	private static final int VERSION = 1;
+	/** Number of bytes in the header of an index */
+	private static final int HEADER_SIZE = MAGIC.length + 4 + 8 + 8 + 4;
+	/** Number of bytes in each entry of a table of Incidents */
+	private static final int INCIDENT_ENTRY_SIZE = 4 + 8 + 4;
+	/** Size of the buffer used when reading the table of ServiceGroups */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Returns the name of the index file of a ServiceGroups file
+	 * @param file ServiceGroups file
+	 * @return name of the index file
+	 */
+	public static String getIndexFile(String file) {
+		return file + INDEX_SUFFIX;
+	}
+
+	/**
+	 * Reads the table of ServiceGroups in the index of a file and creates a ServiceGroup for each, without reading the file itself. The Incidents of each 
+	 * ServiceGroup are read from the file when they are first needed.
+	 * @param file ServiceGroups file whose index to read
+	 * @return ServiceGroups in the order they appear in the file, or null if the file has no index or its index is out of date
+	 * @throws IOException if the index cannot be read or is not a valid index
+	 */
+	static ArrayList<ServiceGroup> read(String file) throws IOException {
+		Path data = Paths.get(file);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(getIndexFile(file)), BUFFER_SIZE))) {
+			long dataLength = readHeader(in, data);
+			if (dataLength < 0) {
+				return null;
+			}
+			long dataModified = Files.getLastModifiedTime(data).toMillis();
+			int serviceGroupCount = in.readInt();
+			ArrayList<ServiceGroup> serviceGroups = new ArrayList<ServiceGroup>(serviceGroupCount);
+			for (int i = 0; i < serviceGroupCount; i++) {
+				String name = readString(in);
+				long offset = in.readLong();
+				long length = in.readLong();
+				in.readInt();
+				in.readLong();
+				if (offset < 0 || length < 0 || offset + length > dataLength) {
+					throw new IOException("Invalid index");
+				}
+				serviceGroups.add(new ServiceGroup(name, new IndexedServiceGroup(data, offset, length, dataLength, dataModified)));
+			}
+			return serviceGroups;
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a single Incident from a file using the file's index. Only the table of ServiceGroups, a search of one table of Incidents and the Incident itself 
+	 * are read.
+	 * @param file ServiceGroups file to read the Incident from
+	 * @param serviceGroupName name of the ServiceGroup of the Incident
+	 * @param id id of the Incident
+	 * @return the Incident, or null if the ServiceGroup or Incident is not in the file
+	 * @throws IOException if the file or its index cannot be read, or the index is missing or out of date
+	 * @throws IllegalArgumentException if the Incident in the file is invalid
+	 */
+	static Incident readIncident(String file, String serviceGroupName, int id) throws IOException {
+		Path data = Paths.get(file);
+		long incidentCount = -1;
+		long incidentTable = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(getIndexFile(file)), BUFFER_SIZE))) {
+			if (readHeader(in, data) < 0) {
+				throw new IOException("Index out of date");
+			}
+			int serviceGroupCount = in.readInt();
+			for (int i = 0; i < serviceGroupCount && incidentCount < 0; i++) {
+				String name = readString(in);
+				in.readLong();
+				in.readLong();
+				int count = in.readInt();
+				long table = in.readLong();
+				if (name.equals(serviceGroupName)) {
+					incidentCount = count;
+					incidentTable = table;
+				}
+			}
+		}
+		if (incidentCount < 0) {
+			return null;
+		}
+
+		try (FileChannel index = FileChannel.open(Paths.get(getIndexFile(file)), StandardOpenOption.READ)) {
+			ByteBuffer entry = ByteBuffer.allocate(INCIDENT_ENTRY_SIZE);
+			long low = 0;
+			long high = incidentCount - 1;
+			while (low <= high) {
+				long middle = (low + high) >>> 1;
+				readFully(index, entry, incidentTable + middle * INCIDENT_ENTRY_SIZE);
+				int middleId = entry.getInt(0);
+				if (middleId < id) {
+					low = middle + 1;
+				}
+				else if (middleId > id) {
+					high = middle - 1;
+				}
+				else {
+					return readIncident(data, serviceGroupName, id, entry.getLong(4), entry.getInt(12));
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads and parses the record of a single Incident from a file
+	 * @param data ServiceGroups file to read the Incident from
+	 * @param serviceGroupName name of the ServiceGroup of the Incident
+	 * @param id id of the Incident
+	 * @param offset position of the Incident's record in the file
+	 * @param length length of the Incident's record in bytes
+	 * @return the Incident
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the Incident in the file is invalid
+	 */
+	private static Incident readIncident(Path data, String serviceGroupName, int id, long offset, int length) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(length);
+		try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+			readFully(channel, record, offset);
+		}
+		ServiceGroupsParser parser = new ServiceGroupsParser();
+		parser.beginServiceGroup(serviceGroupName);
+		BufferedReader lines = new BufferedReader(new StringReader(new String(record.array(), StandardCharsets.UTF_8)));
+		String line = lines.readLine();
+		while (line != null) {
+			parser.processLine(line);
+			line = lines.readLine();
+		}
+		return parser.finish().get(0).getIncidentById(id);
+	}
+
+	/**
+	 * Reads the header of an index and checks that the index matches the current size and last modified time of the file it indexes
+	 * @param in stream of the index
+	 * @param data file the index is of
+	 * @return size of the file, or -1 if the index is out of date
+	 * @throws IOException if the index cannot be read or is not a valid index
+	 */
+	private static long readHeader(DataInputStream in, Path data) throws IOException {
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (in.readByte() != MAGIC[i]) {
+				throw new IOException("Not an index");
+			}
+		}
+		if (in.readInt() != VERSION) {
+			throw new IOException("Unsupported index version");
+		}
+		long dataLength = in.readLong();
+		long dataModified = in.readLong();
+		if (Files.size(data) != dataLength || Files.getLastModifiedTime(data).toMillis() != dataModified) {
+			return -1;
+		}
+		return dataLength;
+	}
+
+	/**
+	 * Reads a String written as its length in UTF-8 bytes followed by the bytes
+	 * @param in stream to read from
+	 * @return the String
+	 * @throws IOException if the stream cannot be read or the length is invalid
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > BUFFER_SIZE) {
+			throw new IOException("Invalid index");
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Fills a buffer from a position in a channel
+	 * @param channel channel to read from
+	 * @param buffer buffer to fill, which is cleared first
+	 * @param position position in the channel of the first byte to read
+	 * @throws IOException if the channel cannot be read or ends before the buffer is full
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position + buffer.position());
+			if (n < 0) {
+				throw new IOException("Invalid index");
+			}
+		}
+	}
+
+	/**
+	 * Loads the Incidents of a ServiceGroup from its range of a ServiceGroups file, once the file has been checked to be the one that was indexed
+	 * @author Tyler Strickland
+	 *
+	 */
+	private static class IndexedServiceGroup implements ServiceGroupSource {
+
+		/** ServiceGroups file the ServiceGroup is in */
+		private final Path data;
+		/** Position of the ServiceGroup in the file */
+		private final long offset;
+		/** Length of the ServiceGroup in bytes */
+		private final long length;
+		/** Size of the file when it was indexed */
+		private final long dataLength;
+		/** Last modified time of the file when it was indexed */
+		private final long dataModified;
+
+		/**
+		 * Constructs a new IndexedServiceGroup for a range of a ServiceGroups file
+		 * @param data ServiceGroups file the ServiceGroup is in
+		 * @param offset position of the ServiceGroup in the file
+		 * @param length length of the ServiceGroup in bytes
+		 * @param dataLength size of the file when it was indexed
+		 * @param dataModified last modified time of the file when it was indexed
+		 */
+		private IndexedServiceGroup(Path data, long offset, long length, long dataLength, long dataModified) {
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+			this.dataLength = dataLength;
+			this.dataModified = dataModified;
+		}
+
+		/**
+		 * Reads the ServiceGroup's range of the file
+		 * @return Incidents of the ServiceGroup
+		 * @throws IllegalArgumentException if the file has changed since it was indexed, cannot be read or holds an invalid Incident
+		 */
+		@Override
+		public ArrayList<Incident> loadIncidents() {
+			try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+				if (channel.size() != dataLength || Files.getLastModifiedTime(data).toMillis() != dataModified) {
+					throw new IllegalArgumentException("Cannot load file " + data);
+				}
+				ArrayList<ServiceGroup> serviceGroups = MappedServiceGroupsReader.read(channel, offset, length);
+				if (serviceGroups.size() != 1) {
+					throw new IllegalArgumentException("Cannot load file " + data);
+				}
+				return serviceGroups.get(0).getIncidents();
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Cannot load file " + data);
+			}
+		}
+	}
+
+	/**
+	 * Stream that a ServiceGroups file is written through, which records the position of each ServiceGroup and Incident as they are written. The writer above
+	 * the stream must be flushed before each ServiceGroup and Incident is marked. Flushing the stream itself does nothing, so that doing so does not flush the
+	 * stream below it.
+	 * @author Tyler Strickland
+	 *
+	 */
+	static class IndexingOutputStream extends FilterOutputStream {
+
+		/** Number of bytes written */
+		private long position;
+		/** Names of the ServiceGroups in the order they were written */
+		private ArrayList<String> names;
+		/** Position of each ServiceGroup */
+		private long[] serviceGroupOffsets;
+		/** Number of Incidents of each ServiceGroup */
+		private int[] incidentCounts;
+		/** Id of each Incident, in the order they were written */
+		private int[] incidentIds;
+		/** Position of each Incident */
+		private long[] incidentOffsets;
+		/** Number of Incidents written */
+		private int incidentCount;
+
+		/**
+		 * Constructs a new IndexingOutputStream writing to the given stream
+		 * @param out stream to write to
+		 */
+		IndexingOutputStream(OutputStream out) {
+			super(out);
+			names = new ArrayList<String>();
+			serviceGroupOffsets = new long[16];
+			incidentCounts = new int[16];
+			incidentIds = new int[256];
+			incidentOffsets = new long[256];
+		}
+
+		/**
+		 * Records that a ServiceGroup starts at the current position
+		 * @param name name of the ServiceGroup
+		 */
+		void markServiceGroup(String name) {
+			int i = names.size();
+			if (i == serviceGroupOffsets.length) {
+				serviceGroupOffsets = Arrays.copyOf(serviceGroupOffsets, i * 2);
+				incidentCounts = Arrays.copyOf(incidentCounts, i * 2);
+			}
+			names.add(name);
+			serviceGroupOffsets[i] = position;
+		}
+
+		/**
+		 * Records that an Incident of the last marked ServiceGroup starts at the current position. Incidents must be marked in id order.
+		 * @param id id of the Incident
+		 */
+		void markIncident(int id) {
+			if (incidentCount == incidentIds.length) {
+				incidentIds = Arrays.copyOf(incidentIds, incidentCount * 2);
+				incidentOffsets = Arrays.copyOf(incidentOffsets, incidentCount * 2);
+			}
+			incidentIds[incidentCount] = id;
+			incidentOffsets[incidentCount] = position;
+			incidentCount++;
+			incidentCounts[names.size() - 1]++;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			position++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			position += len;
+		}
+
+		@Override
+		public void flush() {
+			// The stream below is flushed once the whole file has been written
+		}
+
+		/**
+		 * Writes the index of everything written through the stream. Each ServiceGroup and Incident ends where the next one starts, and the last ends at the 
+		 * current position.
+		 * @param index stream to write the index to
+		 * @param dataModified last modified time of the written file
+		 * @throws IOException if the index cannot be written
+		 */
+		void writeIndex(OutputStream index, long dataModified) throws IOException {
+			DataOutputStream out = new DataOutputStream(index);
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(position);
+			out.writeLong(dataModified);
+			out.writeInt(names.size());
+
+			long incidentTable = HEADER_SIZE;
+			byte[][] encodedNames = new byte[names.size()][];
+			for (int i = 0; i < names.size(); i++) {
+				encodedNames[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+				incidentTable += 4 + encodedNames[i].length + 8 + 8 + 4 + 8;
+			}
+			int firstIncident = 0;
+			for (int i = 0; i < names.size(); i++) {
+				long end = i + 1 < names.size() ? serviceGroupOffsets[i + 1] : position;
+				out.writeInt(encodedNames[i].length);
+				out.write(encodedNames[i]);
+				out.writeLong(serviceGroupOffsets[i]);
+				out.writeLong(end - serviceGroupOffsets[i]);
+				out.writeInt(incidentCounts[i]);
+				out.writeLong(incidentTable + (long) firstIncident * INCIDENT_ENTRY_SIZE);
+				firstIncident += incidentCounts[i];
+			}
+			int incident = 0;
+			for (int i = 0; i < names.size(); i++) {
+				long serviceGroupEnd = i + 1 < names.size() ? serviceGroupOffsets[i + 1] : position;
+				for (int j = 0; j < incidentCounts[i]; j++, incident++) {
+					long end = j + 1 < incidentCounts[i] ? incidentOffsets[incident + 1] : serviceGroupEnd;
+					out.writeInt(incidentIds[incident]);
+					out.writeLong(incidentOffsets[incident]);
+					out.writeInt((int) (end - incidentOffsets[incident]));
+				}
+			}
+			out.flush();
+		}
+	}
+}
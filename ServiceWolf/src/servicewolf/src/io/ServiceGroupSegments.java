@@ -0,0 +1,157 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import servicewolf.src.service_group.ServiceGroup;
+
+
+/**
+ * Reads and writes ServiceGroups saved as a directory of segments. Each segment is a binary snapshot holding a single ServiceGroup, so any title, caller or 
+ * message reads back exactly, and a
+ * manifest lists the segments of the saved ServiceGroups in order, one segment file name per line. Because every ServiceGroup has its own segment, a ServiceGroup
+ * that has not changed does not need to be written again, and the manifest is replaced in a single step so the directory always describes a complete save.
+ * @author Tyler Strickland
+ *
+ */
+public class ServiceGroupSegments {
+
+	/** Name of the manifest file in a segment directory */
+	public static final String MANIFEST = "manifest.txt";
+	/** Start of the file name of every segment */
+	private static final String SEGMENT_PREFIX = "segment-";
+	/** End of the file name of every segment */
+	private static final String SEGMENT_SUFFIX = ".bin";
+
+	/**
+	 * Returns the file name of the segment with the given number
+	 * @param number number of the segment
+	 * @return file name of the segment
+	 */
+	public static String getSegmentName(int number) {
+		return SEGMENT_PREFIX + number + SEGMENT_SUFFIX;
+	}
+
+	/**
+	 * Returns the number of a segment from its file name
+	 * @param segment file name of the segment
+	 * @return number of the segment, or -1 if the name is not the name of a segment
+	 */
+	public static int getSegmentNumber(String segment) {
+		if (!segment.startsWith(SEGMENT_PREFIX) || !segment.endsWith(SEGMENT_SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(segment.substring(SEGMENT_PREFIX.length(), segment.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes a ServiceGroup to its segment, replacing the segment in a single step
+	 * @param directory directory of the segments
+	 * @param segment file name of the segment
+	 * @param serviceGroup ServiceGroup to write
+	 * @throws IllegalArgumentException if the segment cannot be written
+	 */
+	public static void writeSegment(String directory, String segment, ServiceGroup serviceGroup) {
+		ArrayList<ServiceGroup> serviceGroups = new ArrayList<ServiceGroup>();
+		serviceGroups.add(serviceGroup);
+		ServiceGroupWriter.writeServiceGroupsSnapshot(Paths.get(directory, segment).toString(), serviceGroups);
+	}
+
+	/**
+	 * Writes the manifest of a segment directory, replacing it in a single step
+	 * @param directory directory of the segments
+	 * @param segments file names of the segments, in the order of their ServiceGroups
+	 * @throws IllegalArgumentException if the manifest cannot be written
+	 */
+	public static void writeManifest(String directory, List<String> segments) {
+		ServiceGroupWriter.writeFile(Paths.get(directory, MANIFEST).toString(), out -> {
+			for (int i = 0; i < segments.size(); i++) {
+				out.write(segments.get(i).getBytes(StandardCharsets.UTF_8));
+				out.write('\n');
+			}
+		});
+	}
+
+	/**
+	 * Reads the manifest of a segment directory
+	 * @param directory directory of the segments
+	 * @return file names of the segments, in the order of their ServiceGroups
+	 * @throws IllegalArgumentException if the manifest cannot be read or names a file that is not a segment
+	 */
+	public static ArrayList<String> readManifest(String directory) {
+		try {
+			ArrayList<String> segments = new ArrayList<String>();
+			List<String> lines = Files.readAllLines(Paths.get(directory, MANIFEST), StandardCharsets.UTF_8);
+			for (int i = 0; i < lines.size(); i++) {
+				String segment = lines.get(i).trim();
+				if (!segment.isEmpty()) {
+					if (getSegmentNumber(segment) < 0) {
+						throw new IllegalArgumentException("Cannot load file " + MANIFEST);
+					}
+					segments.add(segment);
+				}
+			}
+			return segments;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot load file " + MANIFEST);
+		}
+	}
+
+	/**
+	 * Reads the ServiceGroup in a segment
+	 * @param directory directory of the segments
+	 * @param segment file name of the segment
+	 * @return the ServiceGroup in the segment
+	 * @throws IllegalArgumentException if the segment cannot be read or does not hold exactly one valid ServiceGroup
+	 */
+	public static ServiceGroup readSegment(String directory, String segment) {
+		try {
+			ArrayList<ServiceGroup> serviceGroups = ServiceGroupSnapshot.read(Paths.get(directory, segment).toString());
+			if (serviceGroups.size() != 1) {
+				throw new IllegalArgumentException("Cannot load file " + segment);
+			}
+			return serviceGroups.get(0);
+		} catch (IllegalArgumentException | IOException e) {
+			throw new IllegalArgumentException("Cannot load file " + segment);
+		}
+	}
+
+	/**
+	 * Deletes a segment that is no longer listed in the manifest
+	 * @param directory directory of the segments
+	 * @param segment file name of the segment
+	 */
+	public static void deleteSegment(String directory, String segment) {
+		try {
+			Files.deleteIfExists(Paths.get(directory, segment));
+		} catch (IOException e) {
+			// A segment that is not in the manifest is never read, so it is only left behind
+		}
+	}
+
+	/**
+	 * Creates a segment directory if it does not exist
+	 * @param directory directory of the segments
+	 * @throws IllegalArgumentException if the directory cannot be created
+	 */
+	public static void createDirectory(String directory) {
+		try {
+			Path path = Paths.get(directory);
+			Files.createDirectories(path);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to file " + directory);
+		}
+	}
+}
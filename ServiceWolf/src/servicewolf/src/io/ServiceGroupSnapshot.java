@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import servicewolf.src.incident.Incident;
+import servicewolf.src.service_group.ServiceGroup;
+
+
+/**
+ * Reads and writes ServiceGroups in the binary snapshot format. A snapshot starts with the bytes SWSN and a format version, followed by the number of
+ * ServiceGroups. Each ServiceGroup is its name and number of Incidents followed by its Incidents in id order. Each Incident is the difference between its id
+ * and the id before it, its state, title, caller, reopen count, owner, status details and its log messages. Numbers are unsigned variable length integers
+ * holding seven bits per byte and Strings are their length in UTF-8 bytes followed by the bytes, so no value needs escaping. States, owners and status
+ * details are written once to a dictionary that is built as the snapshot is written: a reference of 0 is followed by a new String, and any other reference
+ * is one more than the position of a String already in the dictionary.
+ * @author Tyler Strickland
+ *
+ */
+class ServiceGroupSnapshot {
+
+	/** Bytes every snapshot starts with */
+	private static final byte[] MAGIC = {'S', 'W', 'S', 'N'};
+	/** Version of the snapshot format that is written */
+	private static final int VERSION = 1;
+	/** Dictionary reference followed by a new String */
+	private static final int NEW_ENTRY = 0;
+	/** Size of the buffer used when reading a snapshot */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Writes ServiceGroups to a stream as a snapshot
+	 * @param out stream to write to
+	 * @param serviceGroups ServiceGroups to write
+	 * @throws IOException if the stream cannot be written to
+	 */
+	static void write(OutputStream out, ArrayList<ServiceGroup> serviceGroups) throws IOException {
+		HashMap<String, Integer> dictionary = new HashMap<String, Integer>();
+		out.write(MAGIC);
+		writeVarint(out, VERSION);
+		writeVarint(out, serviceGroups.size());
+		for (int i = 0; i < serviceGroups.size(); i++) {
+			ArrayList<Incident> incidents = serviceGroups.get(i).getIncidents();
+			writeString(out, serviceGroups.get(i).getServiceGroupName());
+			writeVarint(out, incidents.size());
+			int previousId = 0;
+			for (int j = 0; j < incidents.size(); j++) {
+				Incident incident = incidents.get(j);
+				synchronized (incident) {
+					writeVarint(out, incident.getId() - previousId);
+					previousId = incident.getId();
+					writeReference(out, dictionary, incident.getState());
+					writeString(out, incident.getTitle());
+					writeString(out, incident.getCaller());
+					writeVarint(out, incident.getReopenCount());
+					writeReference(out, dictionary, incident.getOwner());
+					writeReference(out, dictionary, incident.getStatusDetails());
+					int logSize = incident.getIncidentLogSize();
+					writeVarint(out, logSize);
+					for (int k = 0; k < logSize; k++) {
+						writeString(out, incident.getIncidentLogMessage(k));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a non-negative int as an unsigned variable length integer
+	 * @param out stream to write to
+	 * @param value value to write
+	 * @throws IOException if the stream cannot be written to
+	 */
+	private static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Writes a String as its length in UTF-8 bytes followed by the bytes
+	 * @param out stream to write to
+	 * @param s String to write
+	 * @throws IOException if the stream cannot be written to
+	 */
+	private static void writeString(OutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes a reference to a String in the dictionary, adding the String to the dictionary if it is not already in it
+	 * @param out stream to write to
+	 * @param dictionary positions of the Strings in the dictionary
+	 * @param s String to write
+	 * @throws IOException if the stream cannot be written to
+	 */
+	private static void writeReference(OutputStream out, HashMap<String, Integer> dictionary, String s) throws IOException {
+		Integer position = dictionary.get(s);
+		if (position == null) {
+			dictionary.put(s, dictionary.size());
+			writeVarint(out, NEW_ENTRY);
+			writeString(out, s);
+		}
+		else {
+			writeVarint(out, position + 1);
+		}
+	}
+
+	/**
+	 * Reads every ServiceGroup in a snapshot file, decompressing the file if it is block compressed
+	 * @param file file to read
+	 * @return ArrayList of ServiceGroups in the order they appear in the file
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 * @throws IllegalArgumentException if the file contains an invalid ServiceGroup or Incident
+	 */
+	static ArrayList<ServiceGroup> read(String file) throws IOException {
+		try (InputStream in = BlockCompression.decompress(new FileInputStream(file))) {
+			return read(in);
+		}
+	}
+
+	/**
+	 * Reads every ServiceGroup in a snapshot from a stream
+	 * @param in stream to read
+	 * @return ArrayList of ServiceGroups in the order they appear in the stream
+	 * @throws IOException if the stream cannot be read or is not a valid snapshot
+	 * @throws IllegalArgumentException if the stream contains an invalid ServiceGroup or Incident
+	 */
+	static ArrayList<ServiceGroup> read(InputStream in) throws IOException {
+		SnapshotInput input = new SnapshotInput(in);
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (input.readByte() != MAGIC[i]) {
+				throw new IOException("Not a snapshot");
+			}
+		}
+		if (input.readVarint() != VERSION) {
+			throw new IOException("Unsupported snapshot version");
+		}
+
+		ArrayList<String> dictionary = new ArrayList<String>();
+		int serviceGroupCount = input.readVarint();
+		ArrayList<ServiceGroup> serviceGroups = new ArrayList<ServiceGroup>();
+		for (int i = 0; i < serviceGroupCount; i++) {
+			ServiceGroup serviceGroup = new ServiceGroup(input.readString());
+			int incidentCount = input.readVarint();
+			ArrayList<Incident> incidents = new ArrayList<Incident>(Math.min(incidentCount, BUFFER_SIZE));
+			int id = 0;
+			for (int j = 0; j < incidentCount; j++) {
+				id += input.readVarint();
+				String state = input.readReference(dictionary);
+				String title = input.readString();
+				String caller = input.readString();
+				int reopenCount = input.readVarint();
+				String owner = input.readReference(dictionary);
+				String statusDetails = input.readReference(dictionary);
+				int logSize = input.readVarint();
+				if (logSize == 0) {
+					throw new IllegalArgumentException("Incident cannot be created.");
+				}
+				ArrayList<String> incidentLog = new ArrayList<String>(Math.min(logSize, BUFFER_SIZE));
+				for (int k = 0; k < logSize; k++) {
+					incidentLog.add(input.readString());
+				}
+				// Restored rather than constructed, so the state, owner and status details that commands gave the Incident read back exactly
+				incidents.add(Incident.restore(id, state, title, caller, reopenCount, owner, statusDetails, () -> incidentLog));
+			}
+			serviceGroup.addIncidents(incidents);
+			serviceGroups.add(serviceGroup);
+		}
+		return serviceGroups;
+	}
+
+	/**
+	 * Buffered reader of the values in a snapshot. Strings are decoded straight from the buffer when they fit in it.
+	 * @author Tyler Strickland
+	 *
+	 */
+	private static class SnapshotInput {
+
+		/** Stream the snapshot is read from */
+		private final InputStream in;
+		/** Bytes read from the stream */
+		private final byte[] buffer;
+		/** Position of the next byte to read in the buffer */
+		private int position;
+		/** Number of bytes in the buffer */
+		private int limit;
+
+		/**
+		 * Constructs a new SnapshotInput reading from a stream
+		 * @param in stream to read from
+		 */
+		private SnapshotInput(InputStream in) {
+			this.in = in;
+			buffer = new byte[BUFFER_SIZE];
+		}
+
+		/**
+		 * Reads the next byte
+		 * @return the byte
+		 * @throws IOException if the stream cannot be read or has ended
+		 */
+		private byte readByte() throws IOException {
+			if (position == limit) {
+				fill();
+			}
+			return buffer[position++];
+		}
+
+		/**
+		 * Reads the next unsigned variable length integer
+		 * @return the integer
+		 * @throws IOException if the stream cannot be read or the integer does not fit in an int
+		 */
+		private int readVarint() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				byte b = readByte();
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					if (value < 0) {
+						throw new IOException("Invalid snapshot");
+					}
+					return value;
+				}
+			}
+			throw new IOException("Invalid snapshot");
+		}
+
+		/**
+		 * Reads the next String
+		 * @return the String
+		 * @throws IOException if the stream cannot be read or has ended before the end of the String
+		 */
+		private String readString() throws IOException {
+			int length = readVarint();
+			if (length <= limit - position) {
+				String s = new String(buffer, position, length, StandardCharsets.UTF_8);
+				position += length;
+				return s;
+			}
+			byte[] bytes = new byte[length];
+			int read = limit - position;
+			System.arraycopy(buffer, position, bytes, 0, read);
+			position = limit;
+			while (read < length) {
+				int n = in.read(bytes, read, length - read);
+				if (n < 0) {
+					throw new EOFException();
+				}
+				read += n;
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Reads the next reference to a String in the dictionary, adding a new String to the dictionary
+		 * @param dictionary Strings in the dictionary in the order they were added
+		 * @return the referenced String
+		 * @throws IOException if the stream cannot be read or the reference is not in the dictionary
+		 */
+		private String readReference(ArrayList<String> dictionary) throws IOException {
+			int reference = readVarint();
+			if (reference == NEW_ENTRY) {
+				String s = readString();
+				dictionary.add(s);
+				return s;
+			}
+			if (reference > dictionary.size()) {
+				throw new IOException("Invalid snapshot");
+			}
+			return dictionary.get(reference - 1);
+		}
+
+		/**
+		 * Refills the buffer from the stream
+		 * @throws IOException if the stream cannot be read or has ended
+		 */
+		private void fill() throws IOException {
+			int n = in.read(buffer, 0, buffer.length);
+			if (n <= 0) {
+				throw new EOFException();
+			}
+			position = 0;
+			limit = n;
+		}
+	}
+}
@@ -3,42 +3,252 @@
  */
 package servicewolf.src.io;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.ArrayList;
+import java.util.UUID;
 
 import servicewolf.src.incident.Incident;
 import servicewolf.src.service_group.ServiceGroup;
 
 
 /**
- * Writes ServiceGroups along with their Incidents and their log messages to a file so that they can be saved and modified. 
+ * Writes ServiceGroups along with their Incidents and their log messages to a file so that they can be saved and modified. The ServiceGroups are written through
+ * a large buffer into a temporary file next to the target, which is forced to disk and then renamed over the target, so the target is never left partly written.
  * @author Tyler Strickland
  *
  */
 public class ServiceGroupWriter {
 
+	/** Size of the buffers used when writing a file */
+	private static final int BUFFER_SIZE = 1 << 16;
+
 	/**
-	 * Writes ServiceGroups to a file
+	 * Writes ServiceGroups to a file. The file is replaced in a single step once every ServiceGroup has been written, and is left unchanged if writing fails.
 	 * @param file file to write the ServiceGroups to 
 	 * @param serviceGroups ArrayList of ServiceGroups that are to be in the file
-	 * @throws FileNotFoundException if the file is unable to be written to.
+	 * @throws IllegalArgumentException if the file is unable to be written to.
 	 */
 	public static void writeServiceGroupsToFile(String file, ArrayList<ServiceGroup> serviceGroups) {
+		writeServiceGroupsToFile(file, serviceGroups, false);
+	}
+
+	/**
+	 * Writes ServiceGroups to a file, optionally block compressed. A compressed file is read by ServiceGroupsReader like any other file, and its blocks mostly
+	 * start at ServiceGroup headers so that it can still be read in parallel. The file is replaced in a single step once every ServiceGroup has been written, 
+	 * and is left unchanged if writing fails.
+	 * @param file file to write the ServiceGroups to 
+	 * @param serviceGroups ArrayList of ServiceGroups that are to be in the file
+	 * @param compress whether to compress the file
+	 * @throws IllegalArgumentException if the file is unable to be written to.
+	 */
+	public static void writeServiceGroupsToFile(String file, ArrayList<ServiceGroup> serviceGroups, boolean compress) {
+		writeFile(file, out -> {
+			BlockCompression.BlockOutputStream blocks = compress ? new BlockCompression.BlockOutputStream(out) : null;
+			Writer fileWriter = new BufferedWriter(new OutputStreamWriter(compress ? blocks : out, StandardCharsets.UTF_8), BUFFER_SIZE);
+			writeServiceGroups(fileWriter, serviceGroups, blocks, null);
+			fileWriter.flush();
+			if (compress) {
+				blocks.close();
+			}
+		});
+	}
+
+	/**
+	 * Writes ServiceGroups to a file along with an index of where each ServiceGroup and Incident is in the file, which lets ServiceGroupsReader read a single 
+	 * ServiceGroup or Incident without parsing the rest of the file. The index is written after the file and records the file's size and last modified time, 
+	 * so an index that does not match its file is never used.
+	 * @param file file to write the ServiceGroups to 
+	 * @param serviceGroups ArrayList of ServiceGroups that are to be in the file
+	 * @throws IllegalArgumentException if the file or its index is unable to be written to.
+	 */
+	public static void writeServiceGroupsToFileWithIndex(String file, ArrayList<ServiceGroup> serviceGroups) {
+		ServiceGroupIndex.IndexingOutputStream[] index = new ServiceGroupIndex.IndexingOutputStream[1];
+		writeFile(file, out -> {
+			index[0] = new ServiceGroupIndex.IndexingOutputStream(out);
+			Writer fileWriter = new BufferedWriter(new OutputStreamWriter(index[0], StandardCharsets.UTF_8), BUFFER_SIZE);
+			writeServiceGroups(fileWriter, serviceGroups, null, index[0]);
+			fileWriter.flush();
+		});
+		long dataModified = 0;
 		try {
-			PrintStream fileWriter = new PrintStream(new File(file)); 
-			ArrayList<Incident> incidents = null;
-			for (int i = 0; i < serviceGroups.size(); i++) {
-				fileWriter.println("# " + serviceGroups.get(i).getServiceGroupName());
-				incidents = serviceGroups.get(i).getIncidents();
-				for (int j = 0; j < incidents.size(); j++) {
-					fileWriter.print(incidents.get(j).toString());
-				}
+			dataModified = Files.getLastModifiedTime(Paths.get(file)).toMillis();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to file " + file);
+		}
+		long modified = dataModified;
+		writeFile(ServiceGroupIndex.getIndexFile(file), out -> index[0].writeIndex(out, modified));
+	}
+
+	/**
+	 * Writes ServiceGroups to a file in the binary snapshot format, which can be read by ServiceGroupsReader.readServiceGroupsSnapshot. The file is replaced in 
+	 * a single step once every ServiceGroup has been written, and is left unchanged if writing fails.
+	 * @param file file to write the ServiceGroups to 
+	 * @param serviceGroups ArrayList of ServiceGroups that are to be in the file
+	 * @throws IllegalArgumentException if the file is unable to be written to.
+	 */
+	public static void writeServiceGroupsSnapshot(String file, ArrayList<ServiceGroup> serviceGroups) {
+		writeServiceGroupsSnapshot(file, serviceGroups, false);
+	}
+
+	/**
+	 * Writes ServiceGroups to a file in the binary snapshot format, optionally block compressed. A compressed snapshot is read by 
+	 * ServiceGroupsReader.readServiceGroupsSnapshot like any other snapshot. 
+	 * @param file file to write the ServiceGroups to 
+	 * @param serviceGroups ArrayList of ServiceGroups that are to be in the file
+	 * @param compress whether to compress the file
+	 * @throws IllegalArgumentException if the file is unable to be written to.
+	 */
+	public static void writeServiceGroupsSnapshot(String file, ArrayList<ServiceGroup> serviceGroups, boolean compress) {
+		writeFile(file, out -> {
+			if (compress) {
+				BlockCompression.BlockOutputStream blocks = new BlockCompression.BlockOutputStream(out);
+				ServiceGroupSnapshot.write(blocks, serviceGroups);
+				blocks.close();
+			}
+			else {
+				ServiceGroupSnapshot.write(out, serviceGroups);
+			}
+		});
+	}
+
+	/**
+	 * Writes the contents of a file through a buffered stream into a temporary file next to it, forces the temporary file to disk, renames it over the file 
+	 * and forces the directory, so the new file is in place even if the system stops right after. The file keeps the permissions it had, and a new file gets 
+	 * the same permissions as any other new file.
+	 * @param file file to write
+	 * @param contents writes the contents of the file
+	 * @throws IllegalArgumentException if the file is unable to be written to
+	 */
+	static void writeFile(String file, FileContents contents) {
+		Path temp = null;
+		try {
+			Path target = Paths.get(file).toAbsolutePath();
+			temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+				contents.writeTo(out);
+				out.flush();
+				channel.force(true);
 			}
-			fileWriter.close();
+			copyPermissions(target, temp);
+			moveIntoPlace(temp, target);
+			temp = null;
+			forceDirectory(target.getParent());
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Unable to write to file " + file);
+		} finally {
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException e) {
+					// The temporary file is left behind, but the target is unchanged
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes each ServiceGroup and its Incidents to a writer
+	 * @param fileWriter writer to write to
+	 * @param serviceGroups ServiceGroups to write
+	 * @param blocks compressed stream under the writer, which is told where each ServiceGroup starts, or null if the file is not compressed
+	 * @param index stream under the writer that records where each ServiceGroup and Incident starts, or null if the file is not indexed
+	 * @throws IOException if the writer cannot be written to
+	 */
+	private static void writeServiceGroups(Writer fileWriter, ArrayList<ServiceGroup> serviceGroups, BlockCompression.BlockOutputStream blocks, 
+			ServiceGroupIndex.IndexingOutputStream index) throws IOException {
+		String lineSeparator = System.lineSeparator();
+		ArrayList<Incident> incidents = null;
+		for (int i = 0; i < serviceGroups.size(); i++) {
+			String serviceGroupName = serviceGroups.get(i).getServiceGroupName();
+			if (blocks != null) {
+				fileWriter.flush();
+				blocks.markServiceGroup();
+			}
+			if (index != null) {
+				fileWriter.flush();
+				index.markServiceGroup(serviceGroupName);
+			}
+			fileWriter.write("# ");
+			fileWriter.write(serviceGroupName);
+			fileWriter.write(lineSeparator);
+			incidents = serviceGroups.get(i).getIncidents();
+			for (int j = 0; j < incidents.size(); j++) {
+				if (index != null) {
+					fileWriter.flush();
+					index.markIncident(incidents.get(j).getId());
+				}
+				incidents.get(j).writeTo(fileWriter);
+			}
+		}
+	}
+
+	/**
+	 * Renames the written temporary file over the target, atomically when the file system supports it
+	 * @param temp temporary file that was written
+	 * @param target file to replace
+	 * @throws IOException if the file cannot be renamed
+	 */
+	private static void moveIntoPlace(Path temp, Path target) throws IOException {
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
 		}
 	}
+
+	/**
+	 * Gives the temporary file the permissions of the file it replaces, if that file exists and the file system has POSIX permissions
+	 * @param target file to replace
+	 * @param temp temporary file that was written
+	 * @throws IOException if the permissions cannot be read or set
+	 */
+	private static void copyPermissions(Path target, Path temp) throws IOException {
+		if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+			Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+		}
+	}
+
+	/**
+	 * Forces a directory to disk so that a file renamed into it stays renamed. Directories cannot be opened on some platforms, such as Windows, where the 
+	 * rename is already durable once it returns.
+	 * @param directory directory to force
+	 */
+	private static void forceDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// The directory cannot be opened on this platform
+		}
+	}
+
+	/**
+	 * Writes the contents of a file
+	 * @author Tyler Strickland
+	 *
+	 */
+	interface FileContents {
+
+		/**
+		 * Writes the contents to a stream
+		 * @param out stream to write to
+		 * @throws IOException if the stream cannot be written to
+		 */
+		void writeTo(OutputStream out) throws IOException;
+	}
 }
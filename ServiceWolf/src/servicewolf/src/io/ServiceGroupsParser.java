@@ -0,0 +1,247 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.util.ArrayList;
+
+import servicewolf.src.incident.Incident;
+import servicewolf.src.incident.IncidentLogSource;
+import servicewolf.src.service_group.ServiceGroup;
+
+
+/**
+ * Assembles ServiceGroups, Incidents and incident logs from the lines of a ServiceGroups file in a single pass. Lines starting with # begin a ServiceGroup, lines
+ * starting with * begin an Incident and lines starting with - begin a log message. Any other line continues the log message before it. Only the Incident that is
+ * currently being read is held outside of the resulting ServiceGroups.
+ * @author Tyler Strickland
+ *
+ */
+class ServiceGroupsParser {
+
+	/** Number of comma separated fields in an Incident record */
+	private static final int INCIDENT_FIELDS = 7;
+
+	/** ServiceGroups that have been read so far */
+	private ArrayList<ServiceGroup> serviceGroups;
+	/** ServiceGroup that Incidents are currently being added to */
+	private ServiceGroup serviceGroup;
+	/** Incidents read for the current ServiceGroup, which are added to it together once the ServiceGroup has been read */
+	private ArrayList<Incident> incidents;
+	/** Whether an Incident is currently being read */
+	private boolean readingIncident;
+	/** Id of the Incident currently being read */
+	private int id;
+	/** State of the Incident currently being read */
+	private String state;
+	/** Title of the Incident currently being read */
+	private String title;
+	/** Caller of the Incident currently being read */
+	private String caller;
+	/** Reopen count of the Incident currently being read */
+	private int reopenCount;
+	/** Owner of the Incident currently being read */
+	private String owner;
+	/** Status details of the Incident currently being read */
+	private String statusDetails;
+	/** Log messages of the Incident currently being read */
+	private ArrayList<String> incidentLog;
+	/** Source the log of the Incident currently being read is loaded from, or null if its log messages are read by the parser */
+	private IncidentLogSource incidentLogSource;
+	/** First line of the log message currently being read, or null if no message is being read */
+	private String message;
+	/** Following lines of the log message currently being read, or null if the message has a single line */
+	private StringBuilder messageLines;
+
+	/**
+	 * Constructs a new ServiceGroupsParser with no ServiceGroups read
+	 */
+	ServiceGroupsParser() {
+		serviceGroups = new ArrayList<ServiceGroup>();
+		incidents = new ArrayList<Incident>();
+		incidentLog = new ArrayList<String>();
+	}
+
+	/**
+	 * Processes the next line of a ServiceGroups file
+	 * @param line line to process, without its line terminator
+	 * @throws IllegalArgumentException if the line cannot be part of a valid ServiceGroups file
+	 */
+	void processLine(String line) {
+		if (line.isEmpty()) {
+			continueMessage(line);
+		}
+		else if (line.charAt(0) == '#') {
+			beginServiceGroup(line.substring(1).trim());
+		}
+		else if (line.charAt(0) == '*') {
+			beginIncident(line.substring(1));
+		}
+		else if (line.charAt(0) == '-') {
+			beginMessage(line.substring(1));
+		}
+		else {
+			continueMessage(line);
+		}
+	}
+
+	/**
+	 * Finishes the ServiceGroup currently being read and returns every ServiceGroup that was read
+	 * @return ArrayList of ServiceGroups in the order they were read
+	 * @throws IllegalArgumentException if the last ServiceGroup cannot be created
+	 */
+	ArrayList<ServiceGroup> finish() {
+		endServiceGroup();
+		return serviceGroups;
+	}
+
+	/**
+	 * Finishes the current ServiceGroup and starts a new one
+	 * @param name name of the ServiceGroup
+	 * @throws IllegalArgumentException if the current ServiceGroup or the new ServiceGroup cannot be created
+	 */
+	void beginServiceGroup(String name) {
+		endServiceGroup();
+		serviceGroup = new ServiceGroup(name);
+		serviceGroups.add(serviceGroup);
+	}
+	
+	/**
+	 * Finishes the current Incident and adds every Incident read for the current ServiceGroup to it in a single batch
+	 * @throws IllegalArgumentException if the current Incident cannot be created or two Incidents in the ServiceGroup have the same id
+	 */
+	private void endServiceGroup() {
+		endIncident();
+		if (serviceGroup != null) {
+			serviceGroup.addIncidents(incidents);
+			incidents.clear();
+		}
+	}
+
+	/**
+	 * Finishes the current Incident and starts reading a new one from its comma separated record
+	 * @param record id, state, title, caller, reopen count, owner and status details of the Incident
+	 * @throws IllegalArgumentException if the record has too few fields or the ids are not integers
+	 */
+	private void beginIncident(String record) {
+		String[] fields = new String[INCIDENT_FIELDS];
+		int start = 0;
+		for (int i = 0; i < INCIDENT_FIELDS; i++) {
+			int end = record.indexOf(',', start);
+			if (end == -1) {
+				if (i != INCIDENT_FIELDS - 1) {
+					throw new IllegalArgumentException("Incident cannot be created");
+				}
+				end = record.length();
+			}
+			fields[i] = record.substring(start, end).trim();
+			start = end + 1;
+		}
+		beginIncident(Integer.parseInt(fields[0]), fields[1], fields[2], fields[3], Integer.parseInt(fields[4]), fields[5], fields[6]);
+	}
+
+	/**
+	 * Finishes the current Incident and starts reading a new one. The Incident is created once all of its log messages have been read.
+	 * @param incidentId id of the Incident
+	 * @param incidentState state of the Incident
+	 * @param incidentTitle title of the Incident
+	 * @param incidentCaller caller of the Incident
+	 * @param incidentReopenCount reopen count of the Incident
+	 * @param incidentOwner owner of the Incident
+	 * @param incidentStatusDetails status details of the Incident
+	 * @throws IllegalArgumentException if there is no ServiceGroup for the Incident
+	 */
+	void beginIncident(int incidentId, String incidentState, String incidentTitle, String incidentCaller, int incidentReopenCount, String incidentOwner, String incidentStatusDetails) {
+		endIncident();
+		if (serviceGroup == null) {
+			throw new IllegalArgumentException("Incident cannot be created");
+		}
+		readingIncident = true;
+		id = incidentId;
+		state = incidentState;
+		title = incidentTitle;
+		caller = incidentCaller;
+		reopenCount = incidentReopenCount;
+		owner = incidentOwner;
+		statusDetails = incidentStatusDetails;
+	}
+
+	/**
+	 * Finishes the current log message and starts a new one
+	 * @param text text of the message following the -
+	 * @throws IllegalArgumentException if there is no Incident for the message
+	 */
+	void beginMessage(String text) {
+		if (!readingIncident) {
+			throw new IllegalArgumentException("Incident cannot be created");
+		}
+		endMessage();
+		message = text;
+	}
+
+	/**
+	 * Adds a line without a record marker to the current log message. Blank lines outside of a message are ignored.
+	 * @param line line to add to the message
+	 * @throws IllegalArgumentException if the line is not blank and there is no Incident for it
+	 */
+	void continueMessage(String line) {
+		if (message != null) {
+			if (messageLines == null) {
+				messageLines = new StringBuilder(message);
+			}
+			messageLines.append('\n').append(line);
+		}
+		else if (!line.trim().isEmpty()) {
+			beginMessage(line);
+		}
+	}
+
+	/**
+	 * Gives the Incident currently being read a log that is loaded from a source when it is first needed, instead of log messages read by the parser
+	 * @param source source of the Incident's log
+	 * @throws IllegalArgumentException if there is no Incident for the log
+	 */
+	void setIncidentLogSource(IncidentLogSource source) {
+		if (!readingIncident) {
+			throw new IllegalArgumentException("Incident cannot be created");
+		}
+		incidentLogSource = source;
+	}
+
+	/**
+	 * Adds the current log message to the log of the current Incident
+	 */
+	private void endMessage() {
+		if (messageLines != null) {
+			incidentLog.add(messageLines.toString().trim());
+			messageLines = null;
+		}
+		else if (message != null) {
+			incidentLog.add(message.trim());
+		}
+		message = null;
+	}
+
+	/**
+	 * Creates the Incident currently being read and adds it to the Incidents of the current ServiceGroup
+	 * @throws IllegalArgumentException if the Incident cannot be created
+	 */
+	private void endIncident() {
+		if (!readingIncident) {
+			return;
+		}
+		endMessage();
+		readingIncident = false;
+
+		Incident incident;
+		if (incidentLogSource != null && incidentLog.isEmpty()) {
+			incident = new Incident(id, state, title, caller, reopenCount, owner, statusDetails, incidentLogSource);
+		}
+		else {
+			incident = new Incident(id, state, title, caller, reopenCount, owner, statusDetails, incidentLog);
+		}
+		incidents.add(incident);
+		incidentLog.clear();
+		incidentLogSource = null;
+	}
+}
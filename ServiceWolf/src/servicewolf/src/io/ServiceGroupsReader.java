@@ -3,11 +3,13 @@
  */
 package servicewolf.src.io;
 
+import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import servicewolf.src.incident.Incident;
 import servicewolf.src.service_group.ServiceGroup;
@@ -21,132 +23,174 @@ import servicewolf.src.service_group.ServiceGroup;
  */
 public class ServiceGroupsReader {
 
+	/** Number of characters buffered from the file at a time */
+	private static final int BUFFER_SIZE = 1 << 16;
+
 	/**
 	 * Creates an ArrayList of ServiceGroups by processing a file and using the information within the file to construct new ServiceGroups that contain incidents and incident logs. 
+	 * The file is streamed line by line in a single pass, so reading takes time linear in the size of the file. A block compressed file is decompressed as it 
+	 * is streamed. The file is read as UTF-8, which is how ServiceGroupWriter writes it.
 	 * @param file to read for processing
-	 * @return ArrayList of ServiceGroup objects 
-	 * @throws FileNotFoundException if the file cannot be read. 
+	 * @return ArrayList of ServiceGroup objects, or an empty ArrayList if the file contains an invalid ServiceGroup or Incident
+	 * @throws IllegalArgumentException if the file cannot be read. 
 	 */
 	public static ArrayList<ServiceGroup> readServiceGroupsFile(String file) {
-		
-		String s = "";
-		String groups = "";
-		ArrayList<ServiceGroup> serviceGroups = new ArrayList<ServiceGroup>();
+		ServiceGroupsParser parser = new ServiceGroupsParser();
+		try (BufferedReader fileReader = new BufferedReader(new InputStreamReader(BlockCompression.decompress(new FileInputStream(file)), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+			String line = fileReader.readLine();
+			while (line != null) {
+				parser.processLine(line);
+				line = fileReader.readLine();
+			}
+			return parser.finish();
+		} catch (IllegalArgumentException e) {
+			return new ArrayList<ServiceGroup>();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot load file " + file);
+		}
+	}
+	
+	/**
+	 * Creates an ArrayList of ServiceGroups from a file by memory mapping it and parsing the records directly from the mapped bytes. Only the titles, callers,
+	 * owners, status details and log messages of the Incidents are decoded into Strings, which keeps loading large files fast and their heap use low. 
+	 * The file must be UTF-8 encoded. A block compressed file cannot be mapped and is streamed instead.
+	 * @param file to read for processing
+	 * @return ArrayList of ServiceGroup objects, or an empty ArrayList if the file contains an invalid ServiceGroup or Incident
+	 * @throws IllegalArgumentException if the file cannot be read. 
+	 */
+	public static ArrayList<ServiceGroup> readMappedServiceGroupsFile(String file) {
 		try {
-			Scanner fileScanner = new Scanner(new FileInputStream(file));
-			while (fileScanner.hasNext()) {
-				s += fileScanner.nextLine() + '\n';
+			if (BlockCompression.isCompressed(file)) {
+				return readServiceGroupsFile(file);
 			}
-			Scanner groupScanner = new Scanner(s);
-			groupScanner.useDelimiter("\\r?\\n?[#]");
-			try {
-			while (groupScanner.hasNext() ) {
-				ServiceGroup group = processServiceGroup(groupScanner.next());
-				if (group == null) {
-					groupScanner.close();
-					serviceGroups = new ArrayList<ServiceGroup>();
-					return serviceGroups;
-				}
-				else {
-					serviceGroups.add(group);
-				}
+			return MappedServiceGroupsReader.read(file);
+		} catch (IllegalArgumentException e) {
+			return new ArrayList<ServiceGroup>();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot load file " + file);
+		}
+	}
+
+	/**
+	 * Creates an ArrayList of ServiceGroups from the index written next to a file by ServiceGroupWriter.writeServiceGroupsToFileWithIndex. Only the names of 
+	 * the ServiceGroups are read, so this takes time linear in the number of ServiceGroups rather than the size of the file. The Incidents of each ServiceGroup 
+	 * are read from the file when they are first needed, and reading them fails if the file has changed since then. A file without an index, or whose index 
+	 * is out of date, is read with readMappedServiceGroupsFile instead.
+	 * @param file to read for processing
+	 * @return ArrayList of ServiceGroup objects, or an empty ArrayList if the file is read in full and contains an invalid ServiceGroup or Incident
+	 * @throws IllegalArgumentException if the file cannot be read. 
+	 */
+	public static ArrayList<ServiceGroup> readIndexedServiceGroupsFile(String file) {
+		try {
+			ArrayList<ServiceGroup> serviceGroups = ServiceGroupIndex.read(file);
+			if (serviceGroups != null) {
+				return serviceGroups;
+			}
+		} catch (IllegalArgumentException | IOException e) {
+			// An index that cannot be used is ignored and the whole file is read
+		}
+		return readMappedServiceGroupsFile(file);
+	}
+
+	/**
+	 * Reads a single Incident from a file. With an up to date index only the Incident's record is read and parsed; otherwise the whole file is read.
+	 * @param file to read the Incident from
+	 * @param serviceGroupName name of the ServiceGroup of the Incident
+	 * @param id id of the Incident
+	 * @return the Incident, or null if the file has no such Incident or contains an invalid Incident
+	 * @throws IllegalArgumentException if the file cannot be read. 
+	 */
+	public static Incident readIncident(String file, String serviceGroupName, int id) {
+		try {
+			return ServiceGroupIndex.readIncident(file, serviceGroupName, id);
+		} catch (IllegalArgumentException e) {
+			return null;
+		} catch (IOException e) {
+			// An index that cannot be used is ignored and the whole file is read
+		}
+		ArrayList<ServiceGroup> serviceGroups = readMappedServiceGroupsFile(file);
+		for (int i = 0; i < serviceGroups.size(); i++) {
+			if (serviceGroups.get(i).getServiceGroupName().equals(serviceGroupName)) {
+				return serviceGroups.get(i).getIncidentById(id);
 			}
-			groupScanner.close();
-			} catch (IllegalArgumentException e) {
-				groupScanner.close();
-				return null;
+		}
+		return null;
+	}
+
+	/**
+	 * Creates an ArrayList of ServiceGroups from a file by memory mapping it and leaving the log of each Incident in the mapping. An Incident's log is parsed only
+	 * when it is first read or a command adds to it, so ServiceGroups whose logs are rarely looked at hold little more than their Incident fields in memory.
+	 * The file must be UTF-8 encoded. A block compressed file cannot be mapped and is streamed with its logs read straight away instead. The mapping keeps the 
+	 * file open while any of the ServiceGroups are reachable, and on platforms that do not allow replacing an open file, such as Windows, the ServiceGroups 
+	 * cannot be saved over the file they were read from.
+	 * @param file to read for processing
+	 * @return ArrayList of ServiceGroup objects, or an empty ArrayList if the file contains an invalid ServiceGroup or Incident
+	 * @throws IllegalArgumentException if the file cannot be read. 
+	 */
+	public static ArrayList<ServiceGroup> readServiceGroupsFileWithLazyLogs(String file) {
+		try {
+			if (BlockCompression.isCompressed(file)) {
+				return readServiceGroupsFile(file);
 			}
-			System.out.print(groups);
-		} catch (FileNotFoundException e) {
+			return MappedServiceGroupsReader.readWithLazyLogs(file);
+		} catch (IllegalArgumentException e) {
+			return new ArrayList<ServiceGroup>();
+		} catch (IOException e) {
 			throw new IllegalArgumentException("Cannot load file " + file);
 		}
-		return serviceGroups;
 	}
 	
 	/**
-	 * Processes a line of the file and returns a ServiceGroup given the information in the line. 
-	 * @param line line to process for ServiceGroup information. 
-	 * @return ServiceGroup using information passed in the line
-	 * @throws IllegalArgumentException in the ServiceGroup cannot be created
+	 * Creates an ArrayList of ServiceGroups from a file by splitting the file at its ServiceGroup headers and parsing each ServiceGroup in parallel on the common 
+	 * ForkJoinPool. The ServiceGroups are returned in the order they appear in the file and are the same as the ones created by readMappedServiceGroupsFile. 
+	 * The file must be UTF-8 encoded. A block compressed file is split at its blocks that start at a ServiceGroup header, which are decompressed and parsed in 
+	 * parallel.
+	 * @param file to read for processing
+	 * @return ArrayList of ServiceGroup objects, or an empty ArrayList if the file contains an invalid ServiceGroup or Incident
+	 * @throws IllegalArgumentException if the file cannot be read. 
 	 */
-	private static ServiceGroup processServiceGroup(String line) {
-		
-		Scanner scan = new Scanner(line);
-		String name = scan.nextLine();
-		name = name.trim();
-		ServiceGroup s = new ServiceGroup(name);
-		scan.useDelimiter("\\r?\\n?[*]");
+	public static ArrayList<ServiceGroup> readServiceGroupsFileInParallel(String file) {
 		try {
-			while (scan.hasNext()) {
-				Incident i = processIncident(scan.next());
-				s.addIncident(i);
+			if (BlockCompression.isCompressed(file)) {
+				return ParallelServiceGroupsReader.readCompressed(file, ForkJoinPool.commonPool());
 			}
+			return ParallelServiceGroupsReader.read(file, ForkJoinPool.commonPool());
 		} catch (IllegalArgumentException e) {
-			scan.close();
-			return null;
+			return new ArrayList<ServiceGroup>();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot load file " + file);
 		}
-		scan.close();
-		return s;
 	}
 	
-	/** 
-	 * Creates a new Incident using information from a line that is passed in
-	 * @param line line to create the Incident from using the information in the line
-	 * @return an Incident with data from the line parameter. 
-	 * @throws IllegalArgumentException if the Incident cannot be created. 
+	/**
+	 * Creates an ArrayList of ServiceGroups from a binary snapshot file written by ServiceGroupWriter.writeServiceGroupsSnapshot. Values in a snapshot are 
+	 * length prefixed, so reading one needs no parsing of separators and no trimming of fields. 
+	 * @param file to read for processing
+	 * @return ArrayList of ServiceGroup objects, or an empty ArrayList if the file contains an invalid ServiceGroup or Incident
+	 * @throws IllegalArgumentException if the file cannot be read or is not a snapshot. 
 	 */
-	private static Incident processIncident(String line) {
-		Scanner scan = new Scanner(line);
-		String incident = scan.nextLine();
-		scan.close();
-		incident = incident.trim();
-
-		
-		Scanner incidentScanner = new Scanner(incident);
-		incidentScanner.useDelimiter(",");
-		int id = 0;
-		String state = "";
-		String title = "";
-		String caller = "";
-		int reopenCount = 0;
-		String owner = "";
-		String statusDetails = "";
-		ArrayList<String> incidentLog = new ArrayList<String>();
-		 
+	public static ArrayList<ServiceGroup> readServiceGroupsSnapshot(String file) {
 		try {
-			id = incidentScanner.nextInt();
-			state = incidentScanner.next();
-			state = state.trim();
-			title = incidentScanner.next();
-			title = title.trim();
-			caller = incidentScanner.next();
-			caller = caller.trim();
-			reopenCount = incidentScanner.nextInt();
-			owner = incidentScanner.next();
-			owner = owner.trim();
-			statusDetails = incidentScanner.next();
-			statusDetails = statusDetails.trim();
-			incidentScanner.close();
-		} catch (NoSuchElementException e) {
-			incidentScanner.close();
-			throw new IllegalArgumentException("Incident cannot be created");
+			return ServiceGroupSnapshot.read(file);
+		} catch (IllegalArgumentException e) {
+			return new ArrayList<ServiceGroup>();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot load file " + file);
 		}
-		
-		Scanner logScanner = new Scanner(line);
-		logScanner.nextLine();
-		String message = "";
-		logScanner.useDelimiter("\\r?\\n?[-]");
-
-		while (logScanner.hasNext()) {
-			message = logScanner.next();
-			message = message.trim();
-			incidentLog.add(message);
+	}
+	
+	/**
+	 * Creates an ArrayList of ServiceGroups from a checkpoint, which is a binary snapshot file. Unlike readServiceGroupsSnapshot, a file holding an invalid 
+	 * ServiceGroup or Incident is an error rather than an empty ArrayList, since recovering nothing from a checkpoint would lose every ServiceGroup in it.
+	 * @param file to read for processing
+	 * @return ArrayList of ServiceGroup objects
+	 * @throws IllegalArgumentException if the file cannot be read, is not a snapshot, or contains an invalid ServiceGroup or Incident. 
+	 */
+	public static ArrayList<ServiceGroup> readServiceGroupsCheckpoint(String file) {
+		try {
+			return ServiceGroupSnapshot.read(file);
+		} catch (IllegalArgumentException | IOException e) {
+			throw new IllegalArgumentException("Cannot load file " + file);
 		}
-		logScanner.close();
-
-		System.out.println();
-		Incident i = new Incident(id, state, title, caller, reopenCount, owner, statusDetails, incidentLog);
-		return i;
-		
 	}
 }
@@ -0,0 +1,567 @@
+/**
+ *
+ */
+package servicewolf.src.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import servicewolf.src.command.Command;
+import servicewolf.src.command.Command.CommandValue;
+
+
+/**
+ * Append-only journal of the changes made to ServiceGroups and their Incidents. Each change is appended as a single length-prefixed binary record, so the cost of
+ * recording a change depends only on the size of the change. A journal is replayed on top of the last saved ServiceGroups file to recover the changes made since
+ * that file was written, and the records the saved file holds are removed once the ServiceGroups have been saved again. Each record is forced to disk 
+ * before the method appending it returns. Records are appended one at a time, but the disk is forced outside of the journal's lock, so records appended by 
+ * several threads at once are forced together by a single force. A record that was only partly written when the program stopped is dropped when the journal 
+ * is replayed. Once a record fails to be appended or forced the journal refuses every later record, since replaying the records after it without it would 
+ * not recover the same changes.
+ * @author Tyler Strickland
+ *
+ */
+public class ServiceWolfJournal {
+
+	/** Record of an Incident added to a ServiceGroup */
+	private static final byte ADD_INCIDENT = 1;
+	/** Record of a Command executed on an Incident */
+	private static final byte EXECUTE_COMMAND = 2;
+	/** Record of an Incident deleted from a ServiceGroup */
+	private static final byte DELETE_INCIDENT = 3;
+	/** Record of a ServiceGroup that was added */
+	private static final byte ADD_SERVICE_GROUP = 4;
+	/** Record of a ServiceGroup that was renamed */
+	private static final byte EDIT_SERVICE_GROUP = 5;
+	/** Record of a ServiceGroup that was deleted */
+	private static final byte DELETE_SERVICE_GROUP = 6;
+	/** Record of every ServiceGroup being removed */
+	private static final byte CLEAR_SERVICE_GROUPS = 7;
+	/** Length written in place of a null String */
+	private static final int NULL_LENGTH = -1;
+
+	/** Journal file */
+	private final Path path;
+	/** Channel the records are appended to */
+	private FileChannel channel;
+	/** Number of records appended since the journal was opened, truncated or last began a checkpoint */
+	private int recordCount;
+	/** Whether a record failed to be appended */
+	private boolean failed;
+	/** Number of bytes appended since the journal was opened, which only grows */
+	private long appended;
+	/** Number of the appended bytes that are known to be on disk, guarded by forceLock */
+	private long durable;
+	/** Lock held while the channel is forced, taken before the journal's own lock */
+	private final Object forceLock;
+
+	/**
+	 * Constructs a new ServiceWolfJournal appending to a channel
+	 * @param path journal file
+	 * @param channel channel to append the records to
+	 */
+	private ServiceWolfJournal(Path path, FileChannel channel) {
+		this.path = path;
+		this.channel = channel;
+		forceLock = new Object();
+	}
+
+	/**
+	 * Opens a journal file for appending, creating the file if it does not exist
+	 * @param file journal file to append to
+	 * @return the opened journal
+	 * @throws IllegalArgumentException if the file cannot be opened
+	 */
+	public static ServiceWolfJournal open(String file) {
+		try {
+			Path path = Paths.get(file);
+			FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			channel.position(channel.size());
+			return new ServiceWolfJournal(path, channel);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to open journal " + file);
+		}
+	}
+
+	/**
+	 * Returns the number of records appended since the journal was opened, last truncated or last began a checkpoint
+	 * @return number of records appended
+	 */
+	public synchronized int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns whether a record failed to be appended, after which the journal refuses every record
+	 * @return true if a record failed to be appended
+	 */
+	public synchronized boolean hasFailed() {
+		return failed;
+	}
+
+	/**
+	 * Marks the journal as failed, so that it refuses every later record. Used when a change that could not be journaled has been applied.
+	 */
+	public synchronized void markFailed() {
+		failed = true;
+	}
+
+	/**
+	 * Appends a record of an Incident added to a ServiceGroup
+	 * @param serviceGroupName name of the ServiceGroup
+	 * @param id id of the Incident
+	 * @param title title of the Incident
+	 * @param caller caller of the Incident
+	 * @param message first message of the Incident
+	 * @throws IllegalArgumentException if the record cannot be written
+	 */
+	public void writeAddIncident(String serviceGroupName, int id, String title, String caller, String message) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(ADD_INCIDENT);
+			writeString(record, serviceGroupName);
+			record.writeInt(id);
+			writeString(record, title);
+			writeString(record, caller);
+			writeString(record, message);
+			append(bytes);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to journal");
+		}
+	}
+
+	/**
+	 * Appends a record of a Command executed on an Incident
+	 * @param serviceGroupName name of the ServiceGroup of the Incident
+	 * @param id id of the Incident
+	 * @param command Command that was executed
+	 * @throws IllegalArgumentException if the record cannot be written
+	 */
+	public void writeExecuteCommand(String serviceGroupName, int id, Command command) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(EXECUTE_COMMAND);
+			writeString(record, serviceGroupName);
+			record.writeInt(id);
+			record.writeByte(command.getCommand().ordinal());
+			writeString(record, command.getCommandInformation());
+			writeString(record, command.getCommandMessage());
+			append(bytes);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to journal");
+		}
+	}
+
+	/**
+	 * Appends a record of an Incident deleted from a ServiceGroup
+	 * @param serviceGroupName name of the ServiceGroup
+	 * @param id id of the Incident
+	 * @throws IllegalArgumentException if the record cannot be written
+	 */
+	public void writeDeleteIncident(String serviceGroupName, int id) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(DELETE_INCIDENT);
+			writeString(record, serviceGroupName);
+			record.writeInt(id);
+			append(bytes);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to journal");
+		}
+	}
+
+	/**
+	 * Appends a record of a ServiceGroup that was added
+	 * @param serviceGroupName name of the ServiceGroup
+	 * @throws IllegalArgumentException if the record cannot be written
+	 */
+	public void writeAddServiceGroup(String serviceGroupName) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(ADD_SERVICE_GROUP);
+			writeString(record, serviceGroupName);
+			append(bytes);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to journal");
+		}
+	}
+
+	/**
+	 * Appends a record of a ServiceGroup that was renamed
+	 * @param serviceGroupName name of the ServiceGroup before it was renamed
+	 * @param updateName new name of the ServiceGroup
+	 * @throws IllegalArgumentException if the record cannot be written
+	 */
+	public void writeEditServiceGroup(String serviceGroupName, String updateName) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(EDIT_SERVICE_GROUP);
+			writeString(record, serviceGroupName);
+			writeString(record, updateName);
+			append(bytes);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to journal");
+		}
+	}
+
+	/**
+	 * Appends a record of a ServiceGroup that was deleted
+	 * @param serviceGroupName name of the ServiceGroup
+	 * @throws IllegalArgumentException if the record cannot be written
+	 */
+	public void writeDeleteServiceGroup(String serviceGroupName) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(DELETE_SERVICE_GROUP);
+			writeString(record, serviceGroupName);
+			append(bytes);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to journal");
+		}
+	}
+
+	/**
+	 * Appends a record of every ServiceGroup being removed
+	 * @throws IllegalArgumentException if the record cannot be written
+	 */
+	public void writeClearServiceGroups() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(CLEAR_SERVICE_GROUPS);
+			append(bytes);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to journal");
+		}
+	}
+
+	/**
+	 * Removes every record from the journal. Called once the changes in the journal have been saved to a ServiceGroups file.
+	 * @throws IllegalArgumentException if the journal cannot be truncated
+	 */
+	public void truncate() {
+		synchronized (forceLock) {
+			synchronized (this) {
+				try {
+					channel.truncate(0);
+					channel.force(true);
+					recordCount = 0;
+					durable = appended;
+				} catch (IOException e) {
+					failed = true;
+					throw new IllegalArgumentException("Unable to write to journal");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks where a checkpoint begins. Every record before the returned position is held by the checkpoint, and the count of records starts again from zero.
+	 * @return position in the journal file of the first record the checkpoint does not hold
+	 * @throws IllegalArgumentException if the position cannot be read
+	 */
+	public synchronized long beginCheckpoint() {
+		try {
+			recordCount = 0;
+			return channel.position();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to write to journal");
+		}
+	}
+
+	/**
+	 * Removes the records before a position returned by beginCheckpoint, once the checkpoint has been saved. The records after the position are copied to a 
+	 * new journal file that then replaces the journal file, so the journal file always holds every record that is not in the checkpoint.
+	 * @param position position returned by beginCheckpoint
+	 * @throws IllegalArgumentException if the records cannot be removed, in which case the journal refuses every later record
+	 */
+	public void truncateBefore(long position) {
+		synchronized (forceLock) {
+			synchronized (this) {
+				try {
+					long size = channel.size();
+					if (position >= size) {
+						channel.truncate(0);
+						channel.force(true);
+					}
+					else {
+						Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+						try (FileChannel tail = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+							long copied = 0;
+							while (copied < size - position) {
+								copied += channel.transferTo(position + copied, size - position - copied, tail);
+							}
+							tail.force(true);
+						}
+						Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+						channel.close();
+						channel = FileChannel.open(path, StandardOpenOption.WRITE);
+						channel.position(channel.size());
+					}
+					durable = appended;
+				} catch (IOException e) {
+					failed = true;
+					throw new IllegalArgumentException("Unable to write to journal");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes the journal file
+	 */
+	public synchronized void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Every record was already written to the channel
+		}
+	}
+
+	/**
+	 * Writes a String to a record as its length in UTF-8 bytes followed by the bytes
+	 * @param record stream writing the record
+	 * @param s String to write, which may be null
+	 * @throws IOException if the String cannot be written
+	 */
+	private static void writeString(DataOutputStream record, String s) throws IOException {
+		if (s == null) {
+			record.writeInt(NULL_LENGTH);
+		}
+		else {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			record.writeInt(bytes.length);
+			record.write(bytes);
+		}
+	}
+
+	/**
+	 * Appends a record to the journal file, preceded by its length, and waits until it is on disk
+	 * @param record bytes of the record
+	 * @throws IOException if the record cannot be appended or forced, or an earlier record failed to be appended
+	 */
+	private void append(ByteArrayOutputStream record) throws IOException {
+		long end = 0;
+		synchronized (this) {
+			if (failed) {
+				throw new IOException("Journal failed");
+			}
+			failed = true;
+			ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + record.size());
+			frame.putInt(record.size());
+			frame.put(record.toByteArray());
+			frame.flip();
+			while (frame.hasRemaining()) {
+				channel.write(frame);
+			}
+			failed = false;
+			recordCount++;
+			appended += frame.capacity();
+			end = appended;
+		}
+		force(end);
+	}
+
+	/**
+	 * Forces the journal file to disk up to a number of appended bytes. Only one thread forces the file at a time, and every record appended before it starts 
+	 * is forced with it, so a thread whose record was forced by another thread returns without forcing the file again.
+	 * @param end number of appended bytes that must be on disk
+	 * @throws IOException if the file cannot be forced or the journal failed
+	 */
+	private void force(long end) throws IOException {
+		synchronized (forceLock) {
+			if (durable >= end) {
+				return;
+			}
+			long target = 0;
+			FileChannel forced = null;
+			synchronized (this) {
+				if (failed) {
+					throw new IOException("Journal failed");
+				}
+				target = appended;
+				forced = channel;
+			}
+			try {
+				forced.force(false);
+			} catch (IOException e) {
+				synchronized (this) {
+					failed = true;
+				}
+				throw e;
+			}
+			durable = target;
+		}
+	}
+
+	/**
+	 * Replays every complete record of a journal file, in the order they were appended. A partly written record at the end of the file is removed from the file.
+	 * Nothing is replayed if the file does not exist.
+	 * @param file journal file to replay
+	 * @param replayer receiver of the changes in the journal
+	 * @throws IllegalArgumentException if the file cannot be read or contains an invalid record, or the replayer cannot apply a change
+	 */
+	public static void replay(String file, Replayer replayer) {
+		Path path = Paths.get(file);
+		if (!Files.exists(path)) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+			long size = channel.size();
+			long position = 0;
+			while (position + Integer.BYTES <= size) {
+				int length = in.readInt();
+				if (length < 0 || position + Integer.BYTES + length > size) {
+					break;
+				}
+				byte[] bytes = new byte[length];
+				in.readFully(bytes);
+				replayRecord(new DataInputStream(new ByteArrayInputStream(bytes)), replayer);
+				position += Integer.BYTES + length;
+			}
+			if (position < size) {
+				channel.truncate(position);
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to read journal " + file);
+		}
+	}
+
+	/**
+	 * Passes the change in a single record to a replayer
+	 * @param in stream of the record's bytes
+	 * @param replayer receiver of the change
+	 * @throws IOException if the record is invalid
+	 */
+	private static void replayRecord(DataInputStream in, Replayer replayer) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case ADD_INCIDENT:
+			replayer.addIncident(readString(in), in.readInt(), readString(in), readString(in), readString(in));
+			break;
+		case EXECUTE_COMMAND:
+			String serviceGroupName = readString(in);
+			int id = in.readInt();
+			int commandValue = in.readByte();
+			if (commandValue < 0 || commandValue >= CommandValue.values().length) {
+				throw new IOException("Invalid command value");
+			}
+			replayer.executeCommand(serviceGroupName, id, new Command(CommandValue.values()[commandValue], readString(in), readString(in)));
+			break;
+		case DELETE_INCIDENT:
+			replayer.deleteIncident(readString(in), in.readInt());
+			break;
+		case ADD_SERVICE_GROUP:
+			replayer.addServiceGroup(readString(in));
+			break;
+		case EDIT_SERVICE_GROUP:
+			replayer.editServiceGroup(readString(in), readString(in));
+			break;
+		case DELETE_SERVICE_GROUP:
+			replayer.deleteServiceGroup(readString(in));
+			break;
+		case CLEAR_SERVICE_GROUPS:
+			replayer.clearServiceGroups();
+			break;
+		default:
+			throw new IOException("Invalid journal record");
+		}
+	}
+
+	/**
+	 * Reads a String written by writeString
+	 * @param in stream to read from
+	 * @return the String, which may be null
+	 * @throws IOException if the String cannot be read
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+		if (length < 0 || length > in.available()) {
+			throw new EOFException();
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Receiver of the changes in a journal as it is replayed. ServiceGroups are identified by their names at the time of the change.
+	 * @author Tyler Strickland
+	 *
+	 */
+	public interface Replayer {
+
+		/**
+		 * Adds an Incident to a ServiceGroup
+		 * @param serviceGroupName name of the ServiceGroup
+		 * @param id id of the Incident
+		 * @param title title of the Incident
+		 * @param caller caller of the Incident
+		 * @param message first message of the Incident
+		 */
+		void addIncident(String serviceGroupName, int id, String title, String caller, String message);
+
+		/**
+		 * Executes a Command on an Incident
+		 * @param serviceGroupName name of the ServiceGroup of the Incident
+		 * @param id id of the Incident
+		 * @param command Command to execute
+		 */
+		void executeCommand(String serviceGroupName, int id, Command command);
+
+		/**
+		 * Deletes an Incident from a ServiceGroup
+		 * @param serviceGroupName name of the ServiceGroup
+		 * @param id id of the Incident
+		 */
+		void deleteIncident(String serviceGroupName, int id);
+
+		/**
+		 * Adds a ServiceGroup
+		 * @param serviceGroupName name of the ServiceGroup
+		 */
+		void addServiceGroup(String serviceGroupName);
+
+		/**
+		 * Renames a ServiceGroup
+		 * @param serviceGroupName name of the ServiceGroup before it was renamed
+		 * @param updateName new name of the ServiceGroup
+		 */
+		void editServiceGroup(String serviceGroupName, String updateName);
+
+		/**
+		 * Deletes a ServiceGroup
+		 * @param serviceGroupName name of the ServiceGroup
+		 */
+		void deleteServiceGroup(String serviceGroupName);
+
+		/**
+		 * Removes every ServiceGroup
+		 */
+		void clearServiceGroups();
+	}
+}
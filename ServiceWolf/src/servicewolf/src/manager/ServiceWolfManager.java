@@ -4,36 +4,98 @@
  */
 package servicewolf.src.manager;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import servicewolf.src.command.Command;
 import servicewolf.src.incident.Incident;
+import servicewolf.src.io.ServiceGroupSegments;
 import servicewolf.src.io.ServiceGroupWriter;
 import servicewolf.src.io.ServiceGroupsReader;
+import servicewolf.src.io.ServiceWolfJournal;
 import servicewolf.src.service_group.ServiceGroup;
 
 
 
 /**
  * Manager class of ServiceWolf. Responsible for controlling both ServiceGroups and Incidents and is the main driver for the program. It is responsible for 
- * loading and saving files, creating arrays of Incidents for display, adding incidents to ServiceGroups, returning Incidents, and executing commands on Incidents
+ * loading and saving files, creating arrays of Incidents for display, adding incidents to ServiceGroups, returning Incidents, and executing commands on Incidents. 
+ * The manager is safe to use from several threads. The map of ServiceGroups is guarded by the manager's read/write lock, while work on the Incidents of a 
+ * ServiceGroup only takes that ServiceGroup's lock, so working one ServiceGroup never blocks work on another. Each ServiceWolfSession has its own current 
+ * ServiceGroup, and the methods without a session work on the current ServiceGroup of the manager's default session. While a journal is open every change to 
+ * the ServiceGroups and their Incidents is appended to it, and the ServiceGroups are checkpointed to a file once enough changes have been journaled. A change 
+ * whose outcome is known before it is made, such as adding or deleting an Incident or adding, renaming, deleting or clearing ServiceGroups, is written ahead: 
+ * its record is on disk before the change is applied, so a change that cannot be journaled is not made. A Command can only be checked by executing it, so 
+ * it is applied first and then journaled. Either way the record is on disk before the method making the change returns. Once a record cannot be written the 
+ * journal fails closed: the method throws, and every later change is refused until closeJournal is called, so changes are never silently left out of it. 
+ * Journaling keeps ServiceGroups apart as well: changes to the Incidents of one ServiceGroup are journaled in order while holding only that ServiceGroup, 
+ * changes to different ServiceGroups are journaled at the same time, and records appended together are forced to disk together. Only changes to the 
+ * ServiceGroups themselves wait for the journaled changes in progress. Checkpoints due to the number of changes run in the background: the journal is cut 
+ * at a point between changes, and each ServiceGroup is copied before its first change after the cut, so the checkpoint holds the ServiceGroups as they were 
+ * at the cut while changes carry on.
  * @author Tyler Strickland
  *
  */
 public class ServiceWolfManager {
 	
-	/** ArrayList of ServiceGroups */
-	private ArrayList<ServiceGroup> serviceGroups;
-	/** The current ServiceGroup which is the one that is currently having actions performed on */
-	private ServiceGroup currentServiceGroup;
+	/** ServiceGroups sorted and keyed by name, ignoring case */
+	private TreeMap<String, ServiceGroup> serviceGroups;
+	/** Session used by the methods that are not given a session. Its ServiceGroup is the currentServiceGroup */
+	private final ServiceWolfSession defaultSession;
+	/** Lock guarding the map of ServiceGroups and changes to the current ServiceGroup of a session */
+	private final ReentrantReadWriteLock lock;
+	/** Lock held while a change is applied and journaled. Changes to Incidents share it, while changes to ServiceGroups and checkpoint cuts hold it alone */
+	private final ReentrantReadWriteLock changeLock;
+	/** Lock held while the journal is checkpointed, from the cut until the checkpoint file is written. Always taken before the change lock */
+	private final ReentrantLock checkpointLock;
+	/** Thread the checkpoints due to the number of journaled changes run on, or null if no journal has been opened */
+	private volatile ExecutorService checkpointer;
+	/** Whether a checkpoint has been handed to the checkpointer and has not started */
+	private final AtomicBoolean checkpointScheduled;
+	/** Checkpoint whose ServiceGroups are still being copied, or null if there is none */
+	private volatile Checkpoint pendingCheckpoint;
+	/** Journal the changes are appended to, or null if no journal is open */
+	private volatile ServiceWolfJournal journal;
+	/** File the ServiceGroups are saved to when the journal is checkpointed */
+	private String checkpointFile;
+	/** Number of journaled changes after which the ServiceGroups are checkpointed */
+	private int checkpointInterval;
+	/** Lock held while the ServiceGroups are saved to or loaded from a segment directory */
+	private final ReentrantLock segmentLock;
+	/** Directory the ServiceGroups were last saved to or loaded from as segments, or null if there is none */
+	private String segmentDirectory;
+	/** Segment of each ServiceGroup in the segment directory */
+	private IdentityHashMap<ServiceGroup, String> segments;
+	/** Number of the next segment written to the segment directory */
+	private int nextSegment;
 	/** Singleton of ServiceWolfManager */
-	private static ServiceWolfManager manager;
+	private static volatile ServiceWolfManager manager;
 
 	/** 
-	 * Constructs a new ServiceWolfManager and creates a new ArrayList of ServiceGroups
+	 * Constructs a new ServiceWolfManager and creates a new map of ServiceGroups
 	 */
 	private ServiceWolfManager() {
-		serviceGroups = new ArrayList<ServiceGroup>();
+		lock = new ReentrantReadWriteLock();
+		changeLock = new ReentrantReadWriteLock();
+		checkpointLock = new ReentrantLock();
+		checkpointScheduled = new AtomicBoolean();
+		segmentLock = new ReentrantLock();
+		segments = new IdentityHashMap<ServiceGroup, String>();
+		defaultSession = new ServiceWolfSession();
+		serviceGroups = new TreeMap<String, ServiceGroup>(String.CASE_INSENSITIVE_ORDER);
 	}
 	
 	/**
@@ -41,77 +103,392 @@ public class ServiceWolfManager {
 	 * @return instance of the ServiceWolfManager
 	 */
 	public static ServiceWolfManager getInstance() {
-		if (manager == null) {
-			manager = new ServiceWolfManager(); 
+		ServiceWolfManager instance = manager;
+		if (instance == null) {
+			synchronized (ServiceWolfManager.class) {
+				instance = manager;
+				if (instance == null) {
+					instance = new ServiceWolfManager();
+					manager = instance;
+				}
+			}
 		}
-		return manager;
+		return instance;
 	}
 	
 	/**
-	 * Saves the ArrayList of ServiceGroups to a file using the ServiceGroupWriter class
+	 * Creates a new session with no current ServiceGroup. Each session keeps its own current ServiceGroup, so sessions can work on different ServiceGroups at the same time.
+	 * @return the new session
+	 */
+	public ServiceWolfSession createSession() {
+		return new ServiceWolfSession();
+	}
+	
+	/**
+	 * Saves the ServiceGroups to a file in alphabetical order using the ServiceGroupWriter class
 	 * @param file file to write the ServiceGroups to 
 	 */
 	public void saveToFile(String file) {
-		if (currentServiceGroup == null || currentServiceGroup.getIncidents().size() == 0) {
+		saveToFile(file, false);
+	}
+	
+	/**
+	 * Saves the ServiceGroups to a file in alphabetical order using the ServiceGroupWriter class, optionally block compressed. A compressed file is loaded by 
+	 * loadFromFile like any other file.
+	 * @param file file to write the ServiceGroups to 
+	 * @param compress whether to compress the file
+	 */
+	public void saveToFile(String file, boolean compress) {
+		ServiceGroup serviceGroup = defaultSession.getCurrentServiceGroup();
+		if (serviceGroup == null || serviceGroup.getIncidentCount() == 0) {
 			throw new IllegalArgumentException("Unable to save file " + file);
 		}
 
+		ArrayList<ServiceGroup> savedServiceGroups = null;
+		lock.readLock().lock();
+		try {
+			savedServiceGroups = new ArrayList<ServiceGroup>(serviceGroups.values());
+		} finally {
+			lock.readLock().unlock();
+		}
+		try {
+			ServiceGroupWriter.writeServiceGroupsToFile(file, savedServiceGroups, compress);
+		} catch (IllegalArgumentException e)  {
+			throw new IllegalArgumentException("Unable to save file " + file);
+		}
+	}
+	
+	/**
+	 * Saves every ServiceGroup to a file in alphabetical order along with an index of where each ServiceGroup and Incident is in the file, so that the file can 
+	 * be loaded with loadFromIndexedFile
+	 * @param file file to write the ServiceGroups to
+	 * @throws IllegalArgumentException if the ServiceGroups cannot be saved
+	 */
+	public void saveToFileWithIndex(String file) {
+		ArrayList<ServiceGroup> savedServiceGroups = null;
+		lock.readLock().lock();
+		try {
+			savedServiceGroups = new ArrayList<ServiceGroup>(serviceGroups.values());
+		} finally {
+			lock.readLock().unlock();
+		}
+		try {
+			ServiceGroupWriter.writeServiceGroupsToFileWithIndex(file, savedServiceGroups);
+		} catch (IllegalArgumentException e)  {
+			throw new IllegalArgumentException("Unable to save file " + file);
+		}
+	}
+	
+	/**
+	 * Saves every ServiceGroup to a file in the binary snapshot format. The text format of saveToFile remains available for import and export.
+	 * @param file file to write the ServiceGroups to
+	 * @throws IllegalArgumentException if the ServiceGroups cannot be saved
+	 */
+	public void saveToSnapshot(String file) {
+		ArrayList<ServiceGroup> savedServiceGroups = null;
+		lock.readLock().lock();
+		try {
+			savedServiceGroups = new ArrayList<ServiceGroup>(serviceGroups.values());
+		} finally {
+			lock.readLock().unlock();
+		}
 		try {
-			ServiceGroupWriter.writeServiceGroupsToFile(file, serviceGroups);
+			ServiceGroupWriter.writeServiceGroupsSnapshot(file, savedServiceGroups);
 		} catch (IllegalArgumentException e)  {
 			throw new IllegalArgumentException("Unable to save file " + file);
 		}
 	}
 	
+	/**
+	 * Loads ServiceGroups from a file in the binary snapshot format
+	 * @param file file to load the ServiceGroups from
+	 * @throws IllegalArgumentException if the file cannot be read or has no valid ServiceGroups
+	 */
+	public void loadFromSnapshot(String file) {
+		try {
+			addLoadedServiceGroups(ServiceGroupsReader.readServiceGroupsSnapshot(file));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unable to read file " + file);
+		}
+	}
+	
+	/**
+	 * Saves the ServiceGroups to a directory with one segment per ServiceGroup and a manifest listing the segments. Only the ServiceGroups that changed since they 
+	 * were last saved to or loaded from the directory are written; each is written to a new segment, the manifest is then replaced in a single step, and the 
+	 * segments that are no longer listed are deleted. The directory therefore always holds a complete save, and the cost of a save depends on the ServiceGroups 
+	 * that changed rather than on every ServiceGroup.
+	 * @param directory directory to save the ServiceGroups to, which is created if it does not exist
+	 * @throws IllegalArgumentException if the ServiceGroups cannot be saved
+	 */
+	public void saveToDirectory(String directory) {
+		segmentLock.lock();
+		try {
+			ServiceGroupSegments.createDirectory(directory);
+			ArrayList<String> previous = new ArrayList<String>();
+			if (!directory.equals(segmentDirectory)) {
+				segments = new IdentityHashMap<ServiceGroup, String>();
+				nextSegment = 0;
+				if (new File(directory, ServiceGroupSegments.MANIFEST).exists()) {
+					previous = ServiceGroupSegments.readManifest(directory);
+					nextSegment = nextSegmentNumber(previous);
+				}
+			}
+			else {
+				previous.addAll(segments.values());
+			}
+			
+			ArrayList<ServiceGroup> savedServiceGroups = null;
+			lock.readLock().lock();
+			try {
+				savedServiceGroups = new ArrayList<ServiceGroup>(serviceGroups.values());
+			} finally {
+				lock.readLock().unlock();
+			}
+			
+			IdentityHashMap<ServiceGroup, String> saved = new IdentityHashMap<ServiceGroup, String>();
+			ArrayList<String> manifest = new ArrayList<String>();
+			IdentityHashMap<ServiceGroup, String> written = new IdentityHashMap<ServiceGroup, String>();
+			try {
+				for (int i = 0; i < savedServiceGroups.size(); i++) {
+					ServiceGroup serviceGroup = savedServiceGroups.get(i);
+					String segment = segments.get(serviceGroup);
+					if (segment == null || serviceGroup.isDirty()) {
+						segment = ServiceGroupSegments.getSegmentName(nextSegment++);
+						serviceGroup.markClean();
+						written.put(serviceGroup, segment);
+						ServiceGroupSegments.writeSegment(directory, segment, serviceGroup);
+					}
+					saved.put(serviceGroup, segment);
+					manifest.add(segment);
+				}
+				ServiceGroupSegments.writeManifest(directory, manifest);
+			} catch (IllegalArgumentException e) {
+				// The manifest still lists the old segments, so every ServiceGroup written in this save must be written again by the next one
+				for (Map.Entry<ServiceGroup, String> entry : written.entrySet()) {
+					entry.getKey().markDirty();
+					ServiceGroupSegments.deleteSegment(directory, entry.getValue());
+				}
+				throw new IllegalArgumentException("Unable to save file " + directory);
+			}
+			
+			previous.removeAll(manifest);
+			for (int i = 0; i < previous.size(); i++) {
+				ServiceGroupSegments.deleteSegment(directory, previous.get(i));
+			}
+			segments = saved;
+			segmentDirectory = directory;
+		} finally {
+			segmentLock.unlock();
+		}
+	}
+	
+	/**
+	 * Loads ServiceGroups from a directory of segments written by saveToDirectory. The loaded ServiceGroups are clean, so the next save to the same directory 
+	 * only writes the ServiceGroups that change after they are loaded.
+	 * @param directory directory to load the ServiceGroups from
+	 * @throws IllegalArgumentException if the directory cannot be read or a loaded ServiceGroup has the name of an existing ServiceGroup
+	 */
+	public void loadFromDirectory(String directory) {
+		segmentLock.lock();
+		try {
+			ArrayList<String> manifest = null;
+			ArrayList<ServiceGroup> loadedServiceGroups = new ArrayList<ServiceGroup>();
+			IdentityHashMap<ServiceGroup, String> loaded = new IdentityHashMap<ServiceGroup, String>();
+			try {
+				manifest = ServiceGroupSegments.readManifest(directory);
+				for (int i = 0; i < manifest.size(); i++) {
+					ServiceGroup serviceGroup = ServiceGroupSegments.readSegment(directory, manifest.get(i));
+					serviceGroup.markClean();
+					loadedServiceGroups.add(serviceGroup);
+					loaded.put(serviceGroup, manifest.get(i));
+				}
+				if (loadedServiceGroups.size() != 0) {
+					addLoadedServiceGroups(loadedServiceGroups);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unable to read file " + directory);
+			}
+			if (!directory.equals(segmentDirectory)) {
+				segments = new IdentityHashMap<ServiceGroup, String>();
+				nextSegment = 0;
+			}
+			segments.putAll(loaded);
+			nextSegment = Math.max(nextSegment, nextSegmentNumber(manifest));
+			segmentDirectory = directory;
+		} finally {
+			segmentLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number after the largest number of the given segments
+	 * @param segmentNames file names of segments
+	 * @return number of the next segment to write
+	 */
+	private static int nextSegmentNumber(ArrayList<String> segmentNames) {
+		int next = 0;
+		for (int i = 0; i < segmentNames.size(); i++) {
+			next = Math.max(next, ServiceGroupSegments.getSegmentNumber(segmentNames.get(i)) + 1);
+		}
+		return next;
+	}
+	
 	/**
 	 * Loads ServiceGroups from a file
 	 * @param file file to load the ServiceGroups from
 	 */
 	public void loadFromFile(String file) {
 	
-		ArrayList<ServiceGroup> loadedServiceGroups = new ArrayList<ServiceGroup>();
 		try {
-			loadedServiceGroups = ServiceGroupsReader.readServiceGroupsFile(file);
-			currentServiceGroup = loadedServiceGroups.get(0);
-			for (int i = 0; i < loadedServiceGroups.size(); i++) {
-				addServiceGroupToListByName(loadedServiceGroups.get(i));
-			}
-			currentServiceGroup.setIncidentCounter();
+			addLoadedServiceGroups(ServiceGroupsReader.readServiceGroupsFile(file));
 		} catch (IllegalArgumentException e) {
 			throw new IllegalArgumentException("Unable to read file " + file);
 		}
 	}
+	
+	/**
+	 * Loads ServiceGroups from a file saved with saveToFileWithIndex. Only the names of the ServiceGroups are read from the file's index, and each ServiceGroup's
+	 * Incidents are read from the file when the ServiceGroup is loaded with loadServiceGroup or otherwise first used. The file must not be changed while any of
+	 * its ServiceGroups have not been used. A file without an up to date index is read in full.
+	 * @param file file to load the ServiceGroups from
+	 */
+	public void loadFromIndexedFile(String file) {
+		
+		try {
+			addLoadedServiceGroups(ServiceGroupsReader.readIndexedServiceGroupsFile(file));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unable to read file " + file);
+		}
+	}
+	
+	/**
+	 * Loads ServiceGroups from a file, leaving the log of each Incident in the file until it is first read or added to. The file must not be changed in place
+	 * while the ServiceGroups are loaded. It can be replaced by saving over it on platforms that allow replacing a memory mapped file, but not on Windows, 
+	 * where the file stays mapped until the loaded ServiceGroups are garbage collected; save to a different file there instead.
+	 * @param file file to load the ServiceGroups from
+	 */
+	public void loadFromFileWithLazyLogs(String file) {
+		
+		try {
+			addLoadedServiceGroups(ServiceGroupsReader.readServiceGroupsFileWithLazyLogs(file));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unable to read file " + file);
+		}
+	}
+	
+	/**
+	 * Loads ServiceGroups from a file, parsing each ServiceGroup in the file in parallel. The ServiceGroups that are loaded are the same as with loadFromFile.
+	 * @param file file to load the ServiceGroups from
+	 */
+	public void loadFromFileInParallel(String file) {
+		
+		try {
+			addLoadedServiceGroups(ServiceGroupsReader.readServiceGroupsFileInParallel(file));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unable to read file " + file);
+		}
+	}
+	
+	/**
+	 * Adds ServiceGroups that were loaded from a file to the list of ServiceGroups and makes the first one the currentServiceGroup
+	 * @param loadedServiceGroups ServiceGroups in the order they were loaded
+	 * @throws IllegalArgumentException if no ServiceGroups were loaded or a loaded ServiceGroup has the name of an existing ServiceGroup
+	 */
+	private void addLoadedServiceGroups(ArrayList<ServiceGroup> loadedServiceGroups) {
+		if (loadedServiceGroups.size() == 0) {
+			throw new IllegalArgumentException("No service groups were loaded");
+		}
+		checkpointLock.lock();
+		try {
+			ServiceWolfJournal current = beginChange(changeLock.writeLock());
+			try {
+				lock.writeLock().lock();
+				try {
+					addServiceGroups(loadedServiceGroups);
+					defaultSession.setCurrentServiceGroup(loadedServiceGroups.get(0));
+				} finally {
+					lock.writeLock().unlock();
+				}
+				if (current != null) {
+					writeRequiredCheckpoint(current);
+				}
+			} finally {
+				endChange(current, changeLock.writeLock());
+			}
+		} finally {
+			checkpointLock.unlock();
+		}
+	}
 	 
 	/**
-	 * Returns the Incidents in the currentServiceGroup as a 2d array. Used for display in the ServiceWolf program
+	 * Returns the Incidents in the currentServiceGroup as a 2d array. Each call returns a new array, which the caller may modify.
 	 * @return Incidents of the currentServiceGroup as a 2d array
 	 */
 	public String[][] getIncidentsAsArray() {
-		if (currentServiceGroup == null) {
+		return getIncidentsAsArray(defaultSession);
+	}
+	
+	/**
+	 * Returns the Incidents in the session's current ServiceGroup as a 2d array. Each call returns a new array, which the caller may modify.
+	 * @param session session whose current ServiceGroup to use
+	 * @return Incidents of the session's current ServiceGroup as a 2d array, or null if the session has no current ServiceGroup
+	 */
+	public String[][] getIncidentsAsArray(ServiceWolfSession session) {
+		ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+		if (serviceGroup == null) {
 			return null;
 		}
 		else {
-			String[][] incidentsArray = new String[currentServiceGroup.getIncidents().size()][4];
-			
-			for (int i = 0; i < currentServiceGroup.getIncidents().size(); i++) {
-				for (int j = 0; j < 4; j++) {
-					if (j == 0) {
-						int k = currentServiceGroup.getIncidents().get(i).getId();
-						String id = Integer.toString(k);
-						incidentsArray[i][j] = id;
-					}
-					else if (j == 1) {
-						incidentsArray[i][j] = currentServiceGroup.getIncidents().get(i).getState();
-					}
-					else if (j == 2) {
-						incidentsArray[i][j] = currentServiceGroup.getIncidents().get(i).getTitle();
-					}
-					else {
-						incidentsArray[i][j] = currentServiceGroup.getIncidents().get(i).getStatusDetails();
-					}
-				}
-			}
-			return incidentsArray;
+			return serviceGroup.getIncidentsAsArray();
+		}
+	}
+	
+	/**
+	 * Returns the rows of the Incidents in the currentServiceGroup. Used for display in the ServiceWolf program.
+	 * @return unmodifiable rows of the Incidents of the currentServiceGroup, or null if there is no currentServiceGroup
+	 */
+	public List<List<String>> getIncidentRows() {
+		return getIncidentRows(defaultSession);
+	}
+	
+	/**
+	 * Returns the rows of the Incidents in the session's current ServiceGroup. The rows are cached by the ServiceGroup and shared with every other caller 
+	 * until the ServiceGroup next changes, so the list and its rows are unmodifiable; a caller that edits the rows must copy them first.
+	 * @param session session whose current ServiceGroup to use
+	 * @return unmodifiable rows of the Incidents of the session's current ServiceGroup, or null if the session has no current ServiceGroup
+	 */
+	public List<List<String>> getIncidentRows(ServiceWolfSession session) {
+		ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+		if (serviceGroup == null) {
+			return null;
+		}
+		else {
+			return serviceGroup.getIncidentRows();
+		}
+	}
+	
+	/**
+	 * Returns the version of the rows returned by getIncidentRows for the currentServiceGroup. Used by the ServiceWolf program to skip refreshing a table 
+	 * that has not changed
+	 * @return version of the Incidents of the currentServiceGroup, or 0 if there is no currentServiceGroup
+	 */
+	public long getIncidentsVersion() {
+		return getIncidentsVersion(defaultSession);
+	}
+	
+	/**
+	 * Returns the version of the rows returned by getIncidentRows for the session's current ServiceGroup. The version changes whenever an Incident is 
+	 * added, deleted or changed, and differs between ServiceGroups, so it also changes when the session switches ServiceGroups.
+	 * @param session session whose current ServiceGroup to use
+	 * @return version of the Incidents of the session's current ServiceGroup, or 0 if the session has no current ServiceGroup
+	 */
+	public long getIncidentsVersion(ServiceWolfSession session) {
+		ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+		if (serviceGroup == null) {
+			return 0;
+		}
+		else {
+			return serviceGroup.getIncidentsVersion();
 		}
 	}
 	
@@ -121,16 +498,22 @@ public class ServiceWolfManager {
 	 * @return null if the currentServiceGroup is null. If not null, then the Incident of the given id. 
 	 */
 	public Incident getIncidentById(int id) {
-		if (currentServiceGroup == null) {
+		return getIncidentById(defaultSession, id);
+	}
+	
+	/**
+	 * Returns the Incident with the given id of the session's current ServiceGroup
+	 * @param session session whose current ServiceGroup to use
+	 * @param id id of the Incident to get
+	 * @return null if the session has no current ServiceGroup. If not null, then the Incident of the given id. 
+	 */
+	public Incident getIncidentById(ServiceWolfSession session, int id) {
+		ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+		if (serviceGroup == null) {
 			return null;
 		}
 		else {
-			for (int i = 0; i < currentServiceGroup.getIncidents().size(); i++) {
-				if (id == currentServiceGroup.getIncidents().get(i).getId()) {
-					return currentServiceGroup.getIncidents().get(i);
-				}
-			}
-			return null;
+			return serviceGroup.getIncidentById(id);
 		}
 	}
 	
@@ -140,8 +523,24 @@ public class ServiceWolfManager {
 	 * @param command command to execute on the Incident
 	 */
 	public void executeCommand(int id, Command command) {
-		if (currentServiceGroup != null) {
-			currentServiceGroup.executeCommand(id, command);
+		executeCommand(defaultSession, id, command);
+	}
+	
+	/**
+	 * Executes the command on the Incident of the given id in the session's current ServiceGroup
+	 * @param session session whose current ServiceGroup to use
+	 * @param id id of the incident to perform the command on
+	 * @param command command to execute on the Incident
+	 */
+	public void executeCommand(ServiceWolfSession session, int id, Command command) {
+		ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+		if (serviceGroup != null) {
+			changeIncidents(serviceGroup, current -> {
+				serviceGroup.executeCommand(id, command);
+				if (current != null) {
+					current.writeExecuteCommand(serviceGroup.getServiceGroupName(), id, command);
+				}
+			});
 		}
 	}
 	
@@ -150,52 +549,86 @@ public class ServiceWolfManager {
 	 * @param id id of the Incident to delete
 	 */
 	public void deleteIncidentById(int id) {
-		if (currentServiceGroup != null) {
-			for (int i = 0; i < currentServiceGroup.getIncidents().size(); i++) {
-				if (id == currentServiceGroup.getIncidents().get(i).getId()) {
-					currentServiceGroup.getIncidents().remove(i);
+		deleteIncidentById(defaultSession, id);
+	}
+	
+	/**
+	 * Deletes the Incident of the given id in the session's current ServiceGroup
+	 * @param session session whose current ServiceGroup to use
+	 * @param id id of the Incident to delete
+	 */
+	public void deleteIncidentById(ServiceWolfSession session, int id) {
+		ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+		if (serviceGroup != null) {
+			changeIncidents(serviceGroup, current -> {
+				if (current != null) {
+					current.writeDeleteIncident(serviceGroup.getServiceGroupName(), id);
 				}
-			}
+				serviceGroup.deleteIncidentById(id);
+			});
 		}
 	}
 	
 	
 	/**
-	 * Adds an Incident to the currentServiceGroup's ArrayList of Incidents
+	 * Adds an Incident to the currentServiceGroup's ArrayList of Incidents. The Incident's id is allocated by the currentServiceGroup.
 	 * @param title title of the new Incident
 	 * @param caller caller of the new Incident
 	 * @param message message of the new Incident
 	 */
 	public void addIncidentToServiceGroup(String title, String caller, String message) {
-		if (currentServiceGroup != null) {
-			Incident i = new Incident(title, caller, message);
-			
-			currentServiceGroup.addIncident(i);
+		addIncidentToServiceGroup(defaultSession, title, caller, message);
+	}
+	
+	/**
+	 * Adds an Incident to the session's current ServiceGroup. The Incident's id is allocated by the ServiceGroup.
+	 * @param session session whose current ServiceGroup to use
+	 * @param title title of the new Incident
+	 * @param caller caller of the new Incident
+	 * @param message message of the new Incident
+	 */
+	public void addIncidentToServiceGroup(ServiceWolfSession session, String title, String caller, String message) {
+		ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+		if (serviceGroup != null) {
+			changeIncidents(serviceGroup, current -> {
+				Incident incident = serviceGroup.createNewIncident(title, caller, message);
+				if (current != null) {
+					current.writeAddIncident(serviceGroup.getServiceGroupName(), incident.getId(), title, caller, message);
+				}
+				serviceGroup.addIncident(incident);
+			});
 		}
 	}
 
 	/**
 	 * Loads the ServiceGroup of the given name and makes that ServiceGroup the currentServiceGroup
 	 * @param serviceGroupName name of the ServiceGroup to make the currentServiceGroup
+	 * @throws IllegalArgumentException if there is no ServiceGroup with the name
 	 */
 	public void loadServiceGroup(String serviceGroupName) {
-		boolean exists = false;
-		for (int i = 0; i < serviceGroups.size(); i++) {
-			if (serviceGroups.get(i).getServiceGroupName().compareToIgnoreCase(serviceGroupName) == 0) {
-				exists = true;
-			}
-		}
-		if (!exists) {
-			throw new IllegalArgumentException("Invalid service group name");
-		}
-		else {
-			for (int i = 0; i < serviceGroups.size(); i++) {
-				if (serviceGroups.get(i).getServiceGroupName().compareToIgnoreCase(serviceGroupName) == 0) {
-					currentServiceGroup = serviceGroups.get(i);
-					currentServiceGroup.setIncidentCounter();
-				}
+		loadServiceGroup(defaultSession, serviceGroupName);
+	}
+	
+	/**
+	 * Loads the ServiceGroup of the given name and makes that ServiceGroup the session's current ServiceGroup
+	 * @param session session whose current ServiceGroup to set
+	 * @param serviceGroupName name of the ServiceGroup to make the session's current ServiceGroup
+	 * @throws IllegalArgumentException if there is no ServiceGroup with the name or its Incidents cannot be read
+	 */
+	public void loadServiceGroup(ServiceWolfSession session, String serviceGroupName) {
+		ServiceGroup serviceGroup = null;
+		lock.readLock().lock();
+		try {
+			serviceGroup = serviceGroups.get(serviceGroupName);
+			if (serviceGroup == null) {
+				throw new IllegalArgumentException("Invalid service group name");
 			}
+		} finally {
+			lock.readLock().unlock();
 		}
+		// A ServiceGroup loaded from an indexed file reads its Incidents now, outside of the lock on the list of ServiceGroups
+		serviceGroup.loadIncidents();
+		session.setCurrentServiceGroup(serviceGroup);
 	}
 	
 	/**
@@ -203,110 +636,185 @@ public class ServiceWolfManager {
 	 * @return name of the currentServiceGroup if currentServiceGroup is not null and returns null if the currentServiceGroup is null
 	 */
 	public String getServiceGroupName() {
-		if (currentServiceGroup == null) {
+		return getServiceGroupName(defaultSession);
+	}
+	
+	/**
+	 * Returns the name of the session's current ServiceGroup
+	 * @param session session whose current ServiceGroup to use
+	 * @return name of the session's current ServiceGroup, or null if the session has no current ServiceGroup
+	 */
+	public String getServiceGroupName(ServiceWolfSession session) {
+		ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+		if (serviceGroup == null) {
 			return null;
 		}
 		else {
-			return currentServiceGroup.getServiceGroupName();
+			return serviceGroup.getServiceGroupName();
 		}
 	}
 	
 	/**
-	 * Returns a String array of ServiceGroups in the order in which they were added
+	 * Returns a String array of the ServiceGroup names in alphabetical order
 	 * @return String array of ServiceGroups
 	 */
 	public String[] getServiceGroupList() {
-		String[] serviceGroupList = new String[serviceGroups.size()];
-		
-		for (int i = 0; i < serviceGroups.size(); i++) {
-			serviceGroupList[i] = serviceGroups.get(i).getServiceGroupName();
+		lock.readLock().lock();
+		try {
+			return serviceGroups.keySet().toArray(new String[serviceGroups.size()]);
+		} finally {
+			lock.readLock().unlock();
 		}
-		
-		return serviceGroupList;
 	}
 	
 	/**
-	 * Clears the ArrayList of ServiceGroups and makes the currentServiceGroup null
+	 * Clears the ServiceGroups and makes the currentServiceGroup null
 	 */
 	public void clearServiceGroups() {
-		serviceGroups = new ArrayList<ServiceGroup>();
-		
-		currentServiceGroup = null;
+		ServiceWolfJournal current = beginChange(changeLock.writeLock());
+		try {
+			lock.writeLock().lock();
+			try {
+				if (current != null) {
+					current.writeClearServiceGroups();
+				}
+				serviceGroups = new TreeMap<String, ServiceGroup>(String.CASE_INSENSITIVE_ORDER);
+				
+				defaultSession.setCurrentServiceGroup(null);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			endChange(current, changeLock.writeLock());
+		}
 	}
 	
 	/**
-	 * Edits the name of the currentServiceGroup
+	 * Edits the name of the currentServiceGroup. The ServiceGroup keeps its Incidents and stays the currentServiceGroup.
 	 * @param updateName name to update for the ServiceGroup
-	 * @throws IllegalArgumentException if the updateName is empty or null
+	 * @throws IllegalArgumentException if the updateName is empty or null or is the name of an existing ServiceGroup
 	 */
 	public void editServiceGroup(String updateName) {
-		if (currentServiceGroup == null) {
-			throw new IllegalArgumentException("No service group selected.");
-		}
-		else {
-			if (updateName == null || "".equals(updateName)) {
-				throw new IllegalArgumentException("Invalid service group name.");
+		editServiceGroup(defaultSession, updateName);
+	}
+	
+	/**
+	 * Edits the name of the session's current ServiceGroup. The ServiceGroup keeps its Incidents and stays the session's current ServiceGroup.
+	 * @param session session whose current ServiceGroup to rename
+	 * @param updateName name to update for the ServiceGroup
+	 * @throws IllegalArgumentException if the session has no current ServiceGroup or the updateName is empty or null or is the name of an existing ServiceGroup
+	 */
+	public void editServiceGroup(ServiceWolfSession session, String updateName) {
+		checkpointLock.lock();
+		try {
+			ServiceWolfJournal current = beginChange(changeLock.writeLock());
+			try {
+				String serviceGroupName = null;
+				boolean registered = false;
+				lock.writeLock().lock();
+				try {
+					ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+					if (serviceGroup == null) {
+						throw new IllegalArgumentException("No service group selected.");
+					}
+					else {
+						if (updateName == null || "".equals(updateName)) {
+							throw new IllegalArgumentException("Invalid service group name.");
+						}
+						checkDuplicateServiceName(updateName);
+						serviceGroupName = serviceGroup.getServiceGroupName();
+						registered = serviceGroups.get(serviceGroupName) == serviceGroup;
+						if (registered) {
+							if (current != null) {
+								current.writeEditServiceGroup(serviceGroupName, updateName);
+							}
+							serviceGroups.remove(serviceGroupName);
+						}
+						serviceGroup.setServiceGroupName(updateName);
+						serviceGroups.put(updateName, serviceGroup);
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+				if (current != null && !registered) {
+					// A ServiceGroup that was deleted by another session is added back under its new name, Incidents and all
+					writeRequiredCheckpoint(current);
+				}
+			} finally {
+				endChange(current, changeLock.writeLock());
 			}
-			checkDuplicateServiceName(updateName);
-			deleteServiceGroup();
-			addServiceGroup(updateName);
-			
-			
+		} finally {
+			checkpointLock.unlock();
 		}
 	}
 	
 	/**
-	 * Adds ServiceGroup to the ArrayList of ServiceGroups in alphabetical order and sorts the list in alphabetical order
-	 * @param s ServiceGroup to add to the list
+	 * Adds several ServiceGroups to the map of ServiceGroups. None of them are added if any of their names is a duplicate.
+	 * @param added ServiceGroups to add
+	 * @throws IllegalArgumentException if the name of a ServiceGroup is a duplicate of another ServiceGroup
 	 */
-	private void addServiceGroupToListByName(ServiceGroup s) {
-		checkDuplicateServiceName(s.getServiceGroupName());
-		
-		serviceGroups.add(s);
-		
-		for (int i = 0; i < serviceGroups.size(); i++) {
-			for (int j = serviceGroups.size() - 1; j > i; j--) {
-				if (serviceGroups.get(i).getServiceGroupName().compareTo(serviceGroups.get(j).getServiceGroupName()) > 0) {
-					ServiceGroup temp = serviceGroups.get(i);
-					serviceGroups.set(i, serviceGroups.get(j));
-					serviceGroups.set(j, temp);
-				}
+	private void addServiceGroups(ArrayList<ServiceGroup> added) {
+		TreeSet<String> names = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+		for (int i = 0; i < added.size(); i++) {
+			checkDuplicateServiceName(added.get(i).getServiceGroupName());
+			if (!names.add(added.get(i).getServiceGroupName())) {
+				throw new IllegalArgumentException("Invalid service group name.");
 			}
 		}
+		for (int i = 0; i < added.size(); i++) {
+			serviceGroups.put(added.get(i).getServiceGroupName(), added.get(i));
+		}
 	}
 	
 	/**
-	 * Adds a ServiceGroup to the list of ServiceGroups using the addServiceGroupToListByName method to ensure that is added in the correct order. Uses the checkDuplicateServiceName to make sure it is not a duplicate ServiceGroup
+	 * Adds a new ServiceGroup to the map of ServiceGroups and makes it the currentServiceGroup. Uses the checkDuplicateServiceName to make sure it is not a duplicate ServiceGroup
 	 * @param serviceGroupName name of the new ServiceGroup to add
 	 * @throws IllegalArgumentException if the name of the ServiceGroup is empty or null
 	 */
 	public void addServiceGroup(String serviceGroupName) {
-		if (serviceGroupName == null || "".equals(serviceGroupName) ) {
-			throw new IllegalArgumentException("Invalid service group name.");
-		}
-		
-		else {
-			checkDuplicateServiceName(serviceGroupName);
-			ServiceGroup s = new ServiceGroup(serviceGroupName);
-			addServiceGroupToListByName(s);
-			loadServiceGroup(s.getServiceGroupName());
+		addServiceGroup(defaultSession, serviceGroupName);
+	}
+	
+	/**
+	 * Adds a new ServiceGroup to the map of ServiceGroups and makes it the session's current ServiceGroup. Uses the checkDuplicateServiceName to make sure it is not a duplicate ServiceGroup
+	 * @param session session whose current ServiceGroup to set
+	 * @param serviceGroupName name of the new ServiceGroup to add
+	 * @throws IllegalArgumentException if the name of the ServiceGroup is empty or null
+	 */
+	public void addServiceGroup(ServiceWolfSession session, String serviceGroupName) {
+		ServiceWolfJournal current = beginChange(changeLock.writeLock());
+		try {
+			lock.writeLock().lock();
+			try {
+				if (serviceGroupName == null || "".equals(serviceGroupName) ) {
+					throw new IllegalArgumentException("Invalid service group name.");
+				}
+				
+				else {
+					checkDuplicateServiceName(serviceGroupName);
+					if (current != null) {
+						current.writeAddServiceGroup(serviceGroupName);
+					}
+					ServiceGroup s = new ServiceGroup(serviceGroupName);
+					serviceGroups.put(serviceGroupName, s);
+					session.setCurrentServiceGroup(s);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			endChange(current, changeLock.writeLock());
 		}
-		
-
-		
 	}
 	
 	/**
-	 * Checks if the parameter name is already the name of a ServiceGroup in the list of ServiceGroups
+	 * Checks if the parameter name is already the name of a ServiceGroup, ignoring case
 	 * @param name name to check if duplicate
 	 * @throws IllegalArgumentException if the name is a duplicate name of an existing ServiceGroup 
 	 */ 
 	private void checkDuplicateServiceName(String name) {
-		
-		for (int i = 0; i < serviceGroups.size(); i++) {
-			if (serviceGroups.get(i).getServiceGroupName().compareToIgnoreCase(name) == 0) {
-				throw new IllegalArgumentException("Invalid service group name.");
-			}
+		if (serviceGroups.containsKey(name)) {
+			throw new IllegalArgumentException("Invalid service group name.");
 		}
 	}
 	
@@ -315,24 +823,491 @@ public class ServiceWolfManager {
 	 * @throws IllegalArgumentException if the currentServiceGroup is null
 	 */
 	public void deleteServiceGroup() {
+		deleteServiceGroup(defaultSession);
+	}
+	
+	/**
+	 * Deletes the session's current ServiceGroup and sets the session's current ServiceGroup to be the first in the list of ServiceGroups if the list is not empty, 
+	 * and to null if the list is empty. Other sessions whose current ServiceGroup was deleted keep it until they load another ServiceGroup.
+	 * @param session session whose current ServiceGroup to delete
+	 * @throws IllegalArgumentException if the session has no current ServiceGroup
+	 */
+	public void deleteServiceGroup(ServiceWolfSession session) {
+		ServiceWolfJournal current = beginChange(changeLock.writeLock());
+		try {
+			lock.writeLock().lock();
+			try {
+				ServiceGroup serviceGroup = session.getCurrentServiceGroup();
+				if (serviceGroup == null) {
+					throw new IllegalArgumentException("No service group selected.");
+				}
+				
+				else {
+					String serviceGroupName = serviceGroup.getServiceGroupName();
+					if (serviceGroups.get(serviceGroupName) == serviceGroup) {
+						if (current != null) {
+							current.writeDeleteServiceGroup(serviceGroupName);
+						}
+						serviceGroups.remove(serviceGroupName);
+					}
+					
+					if (serviceGroups.size() == 0) {
+						session.setCurrentServiceGroup(null);
+					}
+					else {
+						session.setCurrentServiceGroup(serviceGroups.firstEntry().getValue());
+					}
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			endChange(current, changeLock.writeLock());
+		}
+	}
+	
+	/**
+	 * Opens a journal of the changes to the ServiceGroups. The ServiceGroups saved in the checkpoint file are loaded and the changes in the journal file are 
+	 * replayed on top of them, recovering the ServiceGroups as they were when the journal was last written. The recovered ServiceGroups are then checkpointed and 
+	 * every later change is appended to the journal. Either file may be missing, in which case it is created. A checkpoint file that cannot be read is never 
+	 * treated as empty: opening fails and both files are left as they are.
+	 * @param checkpointFile file the ServiceGroups are saved to when the journal is checkpointed
+	 * @param journalFile file the changes are appended to
+	 * @param checkpointInterval number of journaled changes after which the ServiceGroups are checkpointed
+	 * @throws IllegalArgumentException if a journal is already open, the checkpoint interval is not positive, or either file cannot be read or written, in 
+	 * which case no ServiceGroups are loaded
+	 */
+	public void openJournal(String checkpointFile, String journalFile, int checkpointInterval) {
+		if (checkpointInterval <= 0) {
+			throw new IllegalArgumentException("Invalid checkpoint interval");
+		}
+		checkpointLock.lock();
+		try {
+			changeLock.writeLock().lock();
+			try {
+				if (journal != null) {
+					throw new IllegalArgumentException("Journal is already open");
+				}
+				lock.writeLock().lock();
+				try {
+					if (new File(checkpointFile).exists()) {
+						addServiceGroups(ServiceGroupsReader.readServiceGroupsCheckpoint(checkpointFile));
+					}
+					ServiceWolfJournal.replay(journalFile, new JournalReplayer());
+					if (defaultSession.getCurrentServiceGroup() == null && serviceGroups.size() != 0) {
+						defaultSession.setCurrentServiceGroup(serviceGroups.firstEntry().getValue());
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+				ServiceWolfJournal opened = ServiceWolfJournal.open(journalFile);
+				this.checkpointFile = checkpointFile;
+				this.checkpointInterval = checkpointInterval;
+				try {
+					writeCheckpoint(opened);
+				} catch (IllegalArgumentException e) {
+					opened.close();
+					throw e;
+				}
+				checkpointer = Executors.newSingleThreadExecutor(task -> {
+					Thread thread = new Thread(task, "ServiceWolf checkpoint");
+					thread.setDaemon(true);
+					return thread;
+				});
+				journal = opened;
+			} finally {
+				changeLock.writeLock().unlock();
+			}
+		} finally {
+			checkpointLock.unlock();
+		}
+	}
+	
+	/**
+	 * Saves every ServiceGroup to the checkpoint file and empties the journal of the changes made before the checkpoint. Changes to the ServiceGroups only wait 
+	 * for the checkpoint while the journal is cut, not while the file is written.
+	 * @throws IllegalArgumentException if no journal is open or the ServiceGroups cannot be saved
+	 */
+	public void checkpoint() {
+		checkpointLock.lock();
+		try {
+			ServiceWolfJournal current = null;
+			Checkpoint checkpoint = null;
+			changeLock.writeLock().lock();
+			try {
+				current = journal;
+				if (current == null) {
+					throw new IllegalArgumentException("No journal is open");
+				}
+				checkpoint = beginCheckpoint(current);
+			} finally {
+				changeLock.writeLock().unlock();
+			}
+			finishCheckpoint(current, checkpoint);
+		} finally {
+			checkpointLock.unlock();
+		}
+	}
+	
+	/**
+	 * Closes the journal once any checkpoint in progress has finished. Changes that have been journaled but not checkpointed stay in the journal file and are 
+	 * replayed when the journal is next opened. Closing a journal that failed lets changes be made again, without being journaled.
+	 */
+	public void closeJournal() {
+		ExecutorService checkpoints = checkpointer;
+		if (checkpoints != null) {
+			checkpoints.shutdown();
+			try {
+				checkpoints.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		checkpointLock.lock();
+		try {
+			changeLock.writeLock().lock();
+			try {
+				if (journal != null) {
+					journal.close();
+					journal = null;
+				}
+			} finally {
+				changeLock.writeLock().unlock();
+			}
+		} finally {
+			checkpointLock.unlock();
+		}
+	}
+	
+	/**
+	 * Makes a change to the Incidents of a ServiceGroup. If a journal is open, the change is made and journaled while holding the ServiceGroup, so the changes to 
+	 * each ServiceGroup are journaled in the order they were made while changes to other ServiceGroups carry on, and the ServiceGroup is first copied for a 
+	 * checkpoint that has been cut and has not copied it yet.
+	 * @param serviceGroup ServiceGroup to change
+	 * @param change change to make, given the journal to write its record to, or null if it is not journaled
+	 * @throws IllegalArgumentException if the change cannot be made or the journal failed
+	 */
+	private void changeIncidents(ServiceGroup serviceGroup, IncidentChange change) {
+		ServiceWolfJournal current = beginChange(changeLock.readLock());
+		if (current == null) {
+			change.make(null);
+			return;
+		}
+		try {
+			synchronized (serviceGroup) {
+				Checkpoint checkpoint = pendingCheckpoint;
+				if (checkpoint != null) {
+					checkpoint.capture(serviceGroup);
+				}
+				change.make(isServiceGroup(serviceGroup) ? current : null);
+			}
+		} finally {
+			endChange(current, changeLock.readLock());
+		}
+	}
+	
+	/**
+	 * Starts a change to the ServiceGroups. If a journal is open, the given side of the change lock is held until endChange, so no checkpoint is cut in the 
+	 * middle of the change.
+	 * @param changing read lock of the change lock for a change to Incidents, or its write lock for a change to the ServiceGroups themselves
+	 * @return the open journal, or null if no journal is open
+	 * @throws IllegalArgumentException if the journal failed to write a record and has not been closed since
+	 */
+	private ServiceWolfJournal beginChange(Lock changing) {
+		if (journal == null) {
+			return null;
+		}
+		changing.lock();
+		ServiceWolfJournal current = journal;
+		if (current == null || current.hasFailed()) {
+			changing.unlock();
+			if (current != null) {
+				throw new IllegalArgumentException("Journal failed");
+			}
+		}
+		return current;
+	}
+	
+	/**
+	 * Ends a change started by beginChange, handing a checkpoint to the checkpointer if enough changes have been journaled
+	 * @param current journal returned by beginChange
+	 * @param changing lock given to beginChange
+	 */
+	private void endChange(ServiceWolfJournal current, Lock changing) {
+		if (current != null) {
+			try {
+				if (!current.hasFailed() && current.getRecordCount() >= checkpointInterval && checkpointScheduled.compareAndSet(false, true)) {
+					try {
+						checkpointer.execute(() -> runCheckpoint(current));
+					} catch (RejectedExecutionException e) {
+						// The journal is being closed, and its changes are replayed when it is next opened
+						checkpointScheduled.set(false);
+					}
+				}
+			} finally {
+				changing.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Checkpoints the journal on the checkpointer if it is still open and enough changes have been journaled. A checkpoint that cannot be written leaves the 
+	 * changes in the journal, so it is simply tried again once more changes have been journaled.
+	 * @param current journal to checkpoint
+	 */
+	private void runCheckpoint(ServiceWolfJournal current) {
+		checkpointLock.lock();
+		try {
+			checkpointScheduled.set(false);
+			Checkpoint checkpoint = null;
+			changeLock.writeLock().lock();
+			try {
+				if (journal == current && !current.hasFailed() && current.getRecordCount() >= checkpointInterval) {
+					checkpoint = beginCheckpoint(current);
+				}
+			} finally {
+				changeLock.writeLock().unlock();
+			}
+			if (checkpoint != null) {
+				finishCheckpoint(current, checkpoint);
+			}
+		} catch (IllegalArgumentException e) {
+			// The changes stay in the journal until a later checkpoint is written
+		} finally {
+			checkpointLock.unlock();
+		}
+	}
+	
+	/**
+	 * Cuts the journal for a checkpoint of the ServiceGroups as they are now. Must be called while holding the checkpoint lock and the write lock of the change lock.
+	 * @param current journal to cut
+	 * @return the checkpoint, which copies each ServiceGroup before its next change
+	 */
+	private Checkpoint beginCheckpoint(ServiceWolfJournal current) {
+		long position = current.beginCheckpoint();
+		lock.readLock().lock();
+		try {
+			pendingCheckpoint = new Checkpoint(position, new ArrayList<ServiceGroup>(serviceGroups.values()));
+		} finally {
+			lock.readLock().unlock();
+		}
+		return pendingCheckpoint;
+	}
+	
+	/**
+	 * Copies the ServiceGroups of a checkpoint that have not been copied, saves the copies to the checkpoint file as a snapshot, and empties the journal of the 
+	 * changes made before the cut. Must be called while holding the checkpoint lock but not the change lock.
+	 * @param current journal that was cut
+	 * @param checkpoint checkpoint returned by beginCheckpoint
+	 * @throws IllegalArgumentException if the ServiceGroups cannot be saved or the journal cannot be emptied
+	 */
+	private void finishCheckpoint(ServiceWolfJournal current, Checkpoint checkpoint) {
+		ArrayList<ServiceGroup> copies = null;
+		try {
+			copies = checkpoint.captureAll();
+		} finally {
+			pendingCheckpoint = null;
+		}
+		try {
+			ServiceGroupWriter.writeServiceGroupsSnapshot(checkpointFile, copies);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unable to save file " + checkpointFile);
+		}
+		current.truncateBefore(checkpoint.position);
+	}
+	
+	/**
+	 * Saves every ServiceGroup to the checkpoint file as a snapshot and empties the journal. The snapshot format is used because its length prefixed values 
+	 * read back exactly, whatever the titles, callers and messages hold. Must be called while holding the checkpoint lock and the write lock of the change 
+	 * lock, so no ServiceGroup changes while it is saved.
+	 * @param current journal to empty
+	 * @throws IllegalArgumentException if the ServiceGroups cannot be saved
+	 */
+	private void writeCheckpoint(ServiceWolfJournal current) {
+		ArrayList<ServiceGroup> savedServiceGroups = null;
+		lock.readLock().lock();
+		try {
+			savedServiceGroups = new ArrayList<ServiceGroup>(serviceGroups.values());
+		} finally {
+			lock.readLock().unlock();
+		}
+		try {
+			ServiceGroupWriter.writeServiceGroupsSnapshot(checkpointFile, savedServiceGroups);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unable to save file " + checkpointFile);
+		}
+		current.truncate();
+	}
+	
+	/**
+	 * Checkpoints a change that has no journal record, failing the journal if the checkpoint cannot be written since the change would otherwise be lost. Must 
+	 * be called while holding the checkpoint lock and the write lock of the change lock.
+	 * @param current journal to empty
+	 * @throws IllegalArgumentException if the ServiceGroups cannot be saved
+	 */
+	private void writeRequiredCheckpoint(ServiceWolfJournal current) {
+		try {
+			writeCheckpoint(current);
+		} catch (IllegalArgumentException e) {
+			current.markFailed();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Checks whether a ServiceGroup is still in the map of ServiceGroups. A session keeps a ServiceGroup that was deleted by another session, and changes to 
+	 * that ServiceGroup are not journaled.
+	 * @param serviceGroup ServiceGroup to check
+	 * @return true if the ServiceGroup is in the map of ServiceGroups
+	 */
+	private boolean isServiceGroup(ServiceGroup serviceGroup) {
+		lock.readLock().lock();
+		try {
+			return serviceGroups.get(serviceGroup.getServiceGroupName()) == serviceGroup;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Change to the Incidents of a ServiceGroup, made by changeIncidents
+	 * @author Tyler Strickland
+	 *
+	 */
+	private interface IncidentChange {
+		
+		/**
+		 * Makes the change, writing its record to the journal if one is given
+		 * @param current journal to write the record to, or null if the change is not journaled
+		 */
+		void make(ServiceWolfJournal current);
+	}
+	
+	/**
+	 * Checkpoint that has been cut and is copying its ServiceGroups. Each ServiceGroup is copied while holding it, either by the next change to it or once the 
+	 * checkpoint is written, so every copy holds the ServiceGroup as it was at the cut.
+	 * @author Tyler Strickland
+	 *
+	 */
+	private static class Checkpoint {
+		/** Position in the journal of the first change after the cut */
+		private final long position;
+		/** ServiceGroups at the cut, in alphabetical order */
+		private final ArrayList<ServiceGroup> serviceGroups;
+		/** Copy of each ServiceGroup at the cut, or null for a ServiceGroup that has not been copied */
+		private final IdentityHashMap<ServiceGroup, ServiceGroup> copies;
 		
-		if (currentServiceGroup == null) {
-			throw new IllegalArgumentException("No service group selected.");
+		/**
+		 * Constructs a checkpoint of the given ServiceGroups, none of which have been copied
+		 * @param position position in the journal of the first change after the cut
+		 * @param serviceGroups ServiceGroups at the cut, in alphabetical order
+		 */
+		Checkpoint(long position, ArrayList<ServiceGroup> serviceGroups) {
+			this.position = position;
+			this.serviceGroups = serviceGroups;
+			copies = new IdentityHashMap<ServiceGroup, ServiceGroup>();
+			for (int i = 0; i < serviceGroups.size(); i++) {
+				copies.put(serviceGroups.get(i), null);
+			}
 		}
 		
-		else {
+		/**
+		 * Copies a ServiceGroup of the checkpoint if it has not been copied. Does nothing for a ServiceGroup added after the cut.
+		 * @param serviceGroup ServiceGroup about to change
+		 */
+		void capture(ServiceGroup serviceGroup) {
+			synchronized (serviceGroup) {
+				synchronized (this) {
+					if (!copies.containsKey(serviceGroup) || copies.get(serviceGroup) != null) {
+						return;
+					}
+				}
+				ServiceGroup copy = serviceGroup.copy();
+				synchronized (this) {
+					copies.put(serviceGroup, copy);
+				}
+			}
+		}
+		
+		/**
+		 * Copies every ServiceGroup that has not been copied
+		 * @return copies of the ServiceGroups at the cut, in alphabetical order
+		 */
+		ArrayList<ServiceGroup> captureAll() {
+			ArrayList<ServiceGroup> captured = new ArrayList<ServiceGroup>();
 			for (int i = 0; i < serviceGroups.size(); i++) {
-				if (serviceGroups.get(i).getServiceGroupName().compareToIgnoreCase(currentServiceGroup.getServiceGroupName()) == 0) {
-					serviceGroups.remove(i);
+				capture(serviceGroups.get(i));
+				synchronized (this) {
+					captured.add(copies.get(serviceGroups.get(i)));
 				}
 			}
-			
-			if (serviceGroups.size() == 0) {
-				currentServiceGroup = null;
+			return captured;
+		}
+	}
+	
+	/**
+	 * Applies the changes in a journal to the map of ServiceGroups as the journal is replayed. Used while holding the manager's write lock.
+	 * @author Tyler Strickland
+	 *
+	 */
+	private class JournalReplayer implements ServiceWolfJournal.Replayer {
+
+		@Override
+		public void addIncident(String serviceGroupName, int id, String title, String caller, String message) {
+			getServiceGroup(serviceGroupName).addIncident(new Incident(id, title, caller, message));
+		}
+
+		@Override
+		public void executeCommand(String serviceGroupName, int id, Command command) {
+			getServiceGroup(serviceGroupName).executeCommand(id, command);
+		}
+
+		@Override
+		public void deleteIncident(String serviceGroupName, int id) {
+			getServiceGroup(serviceGroupName).deleteIncidentById(id);
+		}
+
+		@Override
+		public void addServiceGroup(String serviceGroupName) {
+			checkDuplicateServiceName(serviceGroupName);
+			serviceGroups.put(serviceGroupName, new ServiceGroup(serviceGroupName));
+		}
+
+		@Override
+		public void editServiceGroup(String serviceGroupName, String updateName) {
+			ServiceGroup serviceGroup = getServiceGroup(serviceGroupName);
+			checkDuplicateServiceName(updateName);
+			serviceGroups.remove(serviceGroupName);
+			serviceGroup.setServiceGroupName(updateName);
+			serviceGroups.put(updateName, serviceGroup);
+		}
+
+		@Override
+		public void deleteServiceGroup(String serviceGroupName) {
+			ServiceGroup serviceGroup = serviceGroups.remove(serviceGroupName);
+			if (serviceGroup == defaultSession.getCurrentServiceGroup()) {
+				defaultSession.setCurrentServiceGroup(null);
 			}
-			else {
-				currentServiceGroup = serviceGroups.get(0);
+		}
+
+		@Override
+		public void clearServiceGroups() {
+			serviceGroups.clear();
+			defaultSession.setCurrentServiceGroup(null);
+		}
+
+		/**
+		 * Returns the ServiceGroup with the given name
+		 * @param serviceGroupName name of the ServiceGroup
+		 * @return the ServiceGroup
+		 * @throws IllegalArgumentException if there is no ServiceGroup with the name
+		 */
+		private ServiceGroup getServiceGroup(String serviceGroupName) {
+			ServiceGroup serviceGroup = serviceGroups.get(serviceGroupName);
+			if (serviceGroup == null) {
+				throw new IllegalArgumentException("Invalid service group name");
 			}
+			return serviceGroup;
 		}
 	}
 	
@@ -340,7 +1315,9 @@ public class ServiceWolfManager {
 	 * Resets the manager by making it null
 	 */
 	public void resetManager() {
-		manager = null;
+		synchronized (ServiceWolfManager.class) {
+			manager = null;
+		}
 	}
 
 		
@@ -0,0 +1,43 @@
+/**
+ * 
+ */
+package servicewolf.src.manager;
+
+import servicewolf.src.service_group.ServiceGroup;
+
+
+/**
+ * A session of work in ServiceWolf. Each session has its own current ServiceGroup, so several sessions can work on different ServiceGroups of the same 
+ * ServiceWolfManager at the same time without changing each other's current ServiceGroup. Sessions are created by the ServiceWolfManager and passed to its 
+ * methods.
+ * @author Tyler Strickland
+ *
+ */
+public class ServiceWolfSession {
+
+	/** The current ServiceGroup of the session */
+	private volatile ServiceGroup currentServiceGroup;
+	
+	/**
+	 * Constructs a new ServiceWolfSession with no current ServiceGroup
+	 */
+	ServiceWolfSession() {
+		currentServiceGroup = null;
+	}
+	
+	/**
+	 * Returns the current ServiceGroup of the session
+	 * @return the current ServiceGroup, or null if there is none
+	 */
+	ServiceGroup getCurrentServiceGroup() {
+		return currentServiceGroup;
+	}
+	
+	/**
+	 * Sets the current ServiceGroup of the session
+	 * @param serviceGroup ServiceGroup to make current, or null for none
+	 */
+	void setCurrentServiceGroup(ServiceGroup serviceGroup) {
+		currentServiceGroup = serviceGroup;
+	}
+}
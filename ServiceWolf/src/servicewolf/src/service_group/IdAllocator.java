@@ -0,0 +1,54 @@
+/**
+ *
+ */
+package servicewolf.src.service_group;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Allocates Incident ids for a single ServiceGroup. The allocator keeps the largest id that it has handed out or seen, so allocating the next id is a single 
+ * atomic increment and never needs to look at the Incidents of the ServiceGroup. Each ServiceGroup has its own allocator, so ids in one ServiceGroup do not 
+ * depend on the ids in any other.
+ * @author Tyler Strickland
+ *
+ */
+class IdAllocator {
+
+	/** Largest id that has been allocated or seen */
+	private final AtomicInteger highWaterMark;
+
+	/**
+	 * Constructs a new IdAllocator whose first id is 1
+	 */
+	IdAllocator() {
+		highWaterMark = new AtomicInteger();
+	}
+
+	/**
+	 * Allocates the next id, which is one more than the largest id that has been allocated or seen
+	 * @return the allocated id
+	 */
+	int next() {
+		return highWaterMark.incrementAndGet();
+	}
+
+	/**
+	 * Gives back an id that was allocated but not used. The id is only given back if no other id has been allocated or seen since, so ids are never reused.
+	 * @param id id to give back
+	 */
+	void release(int id) {
+		highWaterMark.compareAndSet(id, id - 1);
+	}
+
+	/**
+	 * Records an id that was assigned somewhere else so that it is never allocated
+	 * @param id id to record
+	 */
+	void observe(int id) {
+		int current = highWaterMark.get();
+		while (current < id && !highWaterMark.compareAndSet(current, id)) {
+			current = highWaterMark.get();
+		}
+	}
+}
@@ -0,0 +1,492 @@
+/**
+ *
+ */
+package servicewolf.src.service_group;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import servicewolf.src.incident.Incident;
+import servicewolf.src.incident.IncidentLogArena;
+
+
+/**
+ * Off-heap storage for the Incidents of a ServiceGroup, kept as columns sorted by id. Each column is a direct ByteBuffer holding one fixed width value per
+ * Incident: the id, the state as a byte, the reopen count, dictionary codes of the caller, owner and status details, the arena entry of the title and the
+ * position and size of the Incident's range of log entries. Titles and log messages are packed into a direct IncidentLogArena, and the entries of each log
+ * are kept in a direct buffer of their own, so the heap only holds the dictionary of callers, owners and status details no matter how many Incidents there
+ * are. No Incident object is kept: get builds an Incident from a row when one is needed and set writes a changed Incident back to its row. Ranges of log
+ * entries and log messages are never overwritten, so an Incident that was built from a row can still read its log after the row changes. A log grows in 
+ * place when its range is the last one, and is otherwise copied to the end. The space of copied ranges and of removed rows is counted, and once it outgrows 
+ * the space in use the columns are compacted into new buffers and a new arena, so the space used stays within a constant factor of the live Incidents. Not 
+ * thread safe; the ServiceGroup guards the columns with its lock.
+ * @author Tyler Strickland
+ *
+ */
+class IncidentColumns {
+
+	/** Names of the states in the order of their codes */
+	private static final String[] STATE_NAMES = {Incident.NEW_NAME, Incident.IN_PROGRESS_NAME, Incident.ON_HOLD_NAME, Incident.RESOLVED_NAME,
+			Incident.CANCELED_NAME};
+	/** Column of the ids */
+	private static final int ID = 0;
+	/** Column of the state codes */
+	private static final int STATE = 1;
+	/** Column of the reopen counts */
+	private static final int REOPEN_COUNT = 2;
+	/** Column of the dictionary codes of the callers */
+	private static final int CALLER = 3;
+	/** Column of the dictionary codes of the owners */
+	private static final int OWNER = 4;
+	/** Column of the dictionary codes of the status details */
+	private static final int STATUS_DETAILS = 5;
+	/** Column of the arena entries of the titles */
+	private static final int TITLE = 6;
+	/** Column of the positions of the first log entry of each Incident */
+	private static final int LOG_START = 7;
+	/** Column of the number of log entries of each Incident */
+	private static final int LOG_SIZE = 8;
+	/** Width in bytes of each column's values */
+	private static final int[] WIDTHS = {4, 1, 4, 4, 4, 4, 8, 4, 4};
+	/** Number of rows the columns have room for when they are created */
+	private static final int INITIAL_CAPACITY = 1024;
+	/** Number of unused log entries or Strings below which the columns are never compacted */
+	private static final int MIN_GARBAGE = 1 << 16;
+
+	/** Columns of the Incidents, indexed by the column constants */
+	private final ByteBuffer[] columns;
+	/** Number of rows in use */
+	private int size;
+	/** Number of rows the columns have room for */
+	private int capacity;
+	/** Arena entries of every log message, grouped into a range for each Incident. Replaced with a larger copy when it is full. */
+	private ByteBuffer logEntries;
+	/** Number of entries used in logEntries */
+	private int logEntryCount;
+	/** Number of entries in logEntries that no row's range holds */
+	private int deadEntries;
+	/** Arena holding the titles and log messages */
+	private IncidentLogArena arena;
+	/** Number of titles and log messages in the arena that belong to a row */
+	private long liveStrings;
+	/** Number of titles and log messages in the arena of rows that were removed */
+	private long deadStrings;
+	/** Strings of the callers, owners and status details in the order of their codes */
+	private ArrayList<String> symbols;
+	/** Codes of the Strings in symbols */
+	private HashMap<String, Integer> codes;
+
+	/**
+	 * Constructs new empty IncidentColumns
+	 */
+	IncidentColumns() {
+		columns = new ByteBuffer[WIDTHS.length];
+		capacity = INITIAL_CAPACITY;
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = allocate(capacity * WIDTHS[i]);
+		}
+		logEntries = allocate(capacity * 8);
+		arena = new IncidentLogArena(true);
+		symbols = new ArrayList<String>();
+		codes = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Returns the number of Incidents in the columns
+	 * @return number of Incidents
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of the Incident in a row
+	 * @param row row of the Incident
+	 * @return id of the Incident
+	 */
+	int getId(int row) {
+		return columns[ID].getInt(row * 4);
+	}
+
+	/**
+	 * Returns the state name of the Incident in a row
+	 * @param row row of the Incident
+	 * @return state name of the Incident
+	 */
+	String getState(int row) {
+		return STATE_NAMES[columns[STATE].get(row)];
+	}
+
+	/**
+	 * Returns the title of the Incident in a row
+	 * @param row row of the Incident
+	 * @return title of the Incident
+	 */
+	String getTitle(int row) {
+		return arena.get(columns[TITLE].getLong(row * 8));
+	}
+
+	/**
+	 * Returns the status details of the Incident in a row
+	 * @param row row of the Incident
+	 * @return status details of the Incident
+	 */
+	String getStatusDetails(int row) {
+		return symbols.get(columns[STATUS_DETAILS].getInt(row * 4));
+	}
+
+	/**
+	 * Finds the row of an Incident with a binary search of the ids
+	 * @param id id of the Incident to find
+	 * @return row of the Incident, or -(insertion point) - 1 if there is no Incident with the id
+	 */
+	int indexOf(int id) {
+		ByteBuffer ids = columns[ID];
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleId = ids.getInt(middle * 4);
+			if (middleId < id) {
+				low = middle + 1;
+			}
+			else if (middleId > id) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Builds an Incident from a row. The Incident reads its log from the columns when the log is first needed. Changes to the Incident are only stored by set.
+	 * @param row row of the Incident
+	 * @return the Incident in the row
+	 */
+	Incident get(int row) {
+		int logStart = columns[LOG_START].getInt(row * 4);
+		int logSize = columns[LOG_SIZE].getInt(row * 4);
+		ByteBuffer entries = logEntries;
+		IncidentLogArena messages = arena;
+		return Incident.restore(getId(row), getState(row), getTitle(row), symbols.get(columns[CALLER].getInt(row * 4)), columns[REOPEN_COUNT].getInt(row * 4),
+				symbols.get(columns[OWNER].getInt(row * 4)), getStatusDetails(row), () -> {
+					ArrayList<String> log = new ArrayList<String>(logSize);
+					for (int i = 0; i < logSize; i++) {
+						log.add(messages.get(entries.getLong((logStart + i) * 8)));
+					}
+					return log;
+				});
+	}
+
+	/**
+	 * Inserts an Incident into a row, moving the Incidents from that row on down by one
+	 * @param row row to insert the Incident into, which keeps the ids sorted
+	 * @param incident Incident to insert
+	 */
+	void insert(int row, Incident incident) {
+		if (size == capacity) {
+			capacity *= 2;
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = copy(columns[i], capacity * WIDTHS[i], size * WIDTHS[i]);
+			}
+		}
+		if (row < size) {
+			for (int i = 0; i < columns.length; i++) {
+				move(columns[i], row * WIDTHS[i], (row + 1) * WIDTHS[i], (size - row) * WIDTHS[i]);
+			}
+		}
+		size++;
+		write(row, incident);
+	}
+
+	/**
+	 * Inserts a batch of Incidents in one pass. The rows and the batch are merged by id into new columns, so inserting m Incidents into n rows takes O(n + m) 
+	 * time rather than moving the rows once for each Incident.
+	 * @param sorted Incidents to insert, sorted by id, none of which has the id of a row
+	 */
+	void insertAll(List<Incident> sorted) {
+		if (sorted.size() == 0) {
+			return;
+		}
+		while (capacity < size + sorted.size()) {
+			capacity *= 2;
+		}
+		ByteBuffer[] old = columns.clone();
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = allocate(capacity * WIDTHS[i]);
+		}
+		int oldSize = size;
+		int next = 0;
+		size = 0;
+		for (int j = 0; j < sorted.size(); j++) {
+			int end = next;
+			while (end < oldSize && old[ID].getInt(end * 4) < sorted.get(j).getId()) {
+				end++;
+			}
+			copyRows(old, next, end);
+			next = end;
+			size++;
+			write(size - 1, sorted.get(j));
+		}
+		copyRows(old, next, oldSize);
+	}
+
+	/**
+	 * Writes an Incident that was built from a row back to the row. Commands only change the state, reopen count, owner and status details and add messages
+	 * to the log, so these are all that is written.
+	 * @param row row of the Incident
+	 * @param incident changed Incident
+	 */
+	void set(int row, Incident incident) {
+		synchronized (incident) {
+			setFields(row, incident);
+			if (incident.isIncidentLogLoaded()) {
+				appendLog(row, incident);
+			}
+		}
+	}
+
+	/**
+	 * Removes the Incident in a row, moving the Incidents after it up by one. Its title, log messages and log entries are freed when the columns are next 
+	 * compacted.
+	 * @param row row of the Incident to remove
+	 */
+	void remove(int row) {
+		int logSize = columns[LOG_SIZE].getInt(row * 4);
+		deadEntries += logSize;
+		liveStrings -= 1 + logSize;
+		deadStrings += 1 + logSize;
+		for (int i = 0; i < columns.length; i++) {
+			move(columns[i], (row + 1) * WIDTHS[i], row * WIDTHS[i], (size - row - 1) * WIDTHS[i]);
+		}
+		size--;
+		compactIfWasteful();
+	}
+
+	/**
+	 * Returns the number of bytes the columns, log entries and arena take outside of the heap
+	 * @return number of bytes used
+	 */
+	long getOffHeapSize() {
+		long bytes = (long) logEntries.capacity() + arena.size();
+		for (int i = 0; i < columns.length; i++) {
+			bytes += columns[i].capacity();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Compacts the columns if the space of copied log ranges or of removed rows has grown larger than the space in use
+	 */
+	private void compactIfWasteful() {
+		if ((deadEntries > MIN_GARBAGE && deadEntries > logEntryCount - deadEntries) || (deadStrings > MIN_GARBAGE && deadStrings > liveStrings)) {
+			compact();
+		}
+	}
+
+	/**
+	 * Copies the titles, log messages and log entries of every row into a new arena and a new buffer of log entries, and rebuilds the dictionary from the 
+	 * callers, owners and status details of the rows, dropping everything that no row uses. Incidents built from rows before the compaction keep reading 
+	 * their logs from the old arena and buffer, which are freed once those Incidents are.
+	 */
+	void compact() {
+		IncidentLogArena oldArena = arena;
+		ByteBuffer oldEntries = logEntries;
+		ArrayList<String> oldSymbols = symbols;
+		arena = new IncidentLogArena(true);
+		logEntries = allocate(Math.max(INITIAL_CAPACITY, logEntryCount - deadEntries) * 8);
+		symbols = new ArrayList<String>();
+		codes = new HashMap<String, Integer>();
+		logEntryCount = 0;
+		for (int row = 0; row < size; row++) {
+			columns[TITLE].putLong(row * 8, arena.append(oldArena.get(columns[TITLE].getLong(row * 8))));
+			columns[CALLER].putInt(row * 4, code(oldSymbols.get(columns[CALLER].getInt(row * 4))));
+			columns[OWNER].putInt(row * 4, code(oldSymbols.get(columns[OWNER].getInt(row * 4))));
+			columns[STATUS_DETAILS].putInt(row * 4, code(oldSymbols.get(columns[STATUS_DETAILS].getInt(row * 4))));
+			int logStart = columns[LOG_START].getInt(row * 4);
+			int logSize = columns[LOG_SIZE].getInt(row * 4);
+			for (int i = 0; i < logSize; i++) {
+				logEntries.putLong((logEntryCount + i) * 8, arena.append(oldArena.get(oldEntries.getLong((logStart + i) * 8))));
+			}
+			columns[LOG_START].putInt(row * 4, logEntryCount);
+			logEntryCount += logSize;
+		}
+		deadEntries = 0;
+		deadStrings = 0;
+	}
+
+	/**
+	 * Writes every column of a new row and appends its title and log
+	 * @param row row of the Incident, which has no log entries yet
+	 * @param incident Incident to write
+	 */
+	private void write(int row, Incident incident) {
+		synchronized (incident) {
+			columns[ID].putInt(row * 4, incident.getId());
+			columns[TITLE].putLong(row * 8, arena.append(incident.getTitle()));
+			liveStrings++;
+			columns[CALLER].putInt(row * 4, code(incident.getCaller()));
+			columns[LOG_SIZE].putInt(row * 4, 0);
+			columns[LOG_START].putInt(row * 4, logEntryCount);
+			setFields(row, incident);
+			appendLog(row, incident);
+		}
+	}
+
+	/**
+	 * Appends rows of the old columns replaced by insertAll after the rows in use
+	 * @param old columns the rows are copied from
+	 * @param from first row to copy
+	 * @param to row after the last row to copy
+	 */
+	private void copyRows(ByteBuffer[] old, int from, int to) {
+		for (int i = 0; i < columns.length; i++) {
+			move(old[i], columns[i], from * WIDTHS[i], size * WIDTHS[i], (to - from) * WIDTHS[i]);
+		}
+		size += to - from;
+	}
+
+	/**
+	 * Writes the state, reopen count, owner and status details of an Incident to a row
+	 * @param row row of the Incident
+	 * @param incident Incident to write
+	 */
+	private void setFields(int row, Incident incident) {
+		String state = incident.getState();
+		for (byte i = 0; i < STATE_NAMES.length; i++) {
+			if (STATE_NAMES[i].equals(state)) {
+				columns[STATE].put(row, i);
+			}
+		}
+		columns[REOPEN_COUNT].putInt(row * 4, incident.getReopenCount());
+		columns[OWNER].putInt(row * 4, code(incident.getOwner()));
+		columns[STATUS_DETAILS].putInt(row * 4, code(incident.getStatusDetails()));
+	}
+
+	/**
+	 * Adds the messages of an Incident's log that are not yet in its row. If the row's range of log entries is the last one, the new messages are added after 
+	 * it in place. Otherwise the range is copied to the end of the log entries with the new messages after it and the old range is counted as unused, so a 
+	 * range is never changed once it has been written.
+	 * @param row row of the Incident
+	 * @param incident Incident whose log is written
+	 */
+	private void appendLog(int row, Incident incident) {
+		int logStart = columns[LOG_START].getInt(row * 4);
+		int logSize = columns[LOG_SIZE].getInt(row * 4);
+		int newSize = incident.getIncidentLogSize();
+		if (newSize == logSize) {
+			return;
+		}
+		boolean last = logStart + logSize == logEntryCount;
+		int start = last ? logStart : logEntryCount;
+		if (start + newSize > logEntries.capacity() / 8) {
+			logEntries = copy(logEntries, Math.max(logEntries.capacity() * 2, (start + newSize) * 8), logEntryCount * 8);
+		}
+		if (!last) {
+			move(logEntries, logStart * 8, start * 8, logSize * 8);
+			deadEntries += logSize;
+		}
+		for (int i = logSize; i < newSize; i++) {
+			logEntries.putLong((start + i) * 8, arena.append(incident.getIncidentLogMessage(i)));
+		}
+		liveStrings += newSize - logSize;
+		columns[LOG_START].putInt(row * 4, start);
+		columns[LOG_SIZE].putInt(row * 4, newSize);
+		logEntryCount = start + newSize;
+		compactIfWasteful();
+	}
+
+	/**
+	 * Returns the dictionary code of a String, adding the String to the dictionary if it is not already in it
+	 * @param s String to look up
+	 * @return code of the String
+	 */
+	private int code(String s) {
+		Integer code = codes.get(s);
+		if (code == null) {
+			code = symbols.size();
+			symbols.add(s);
+			codes.put(s, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Allocates a direct buffer in the platform's byte order
+	 * @param bytes size of the buffer
+	 * @return the buffer
+	 */
+	private static ByteBuffer allocate(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Copies the start of a buffer into a new larger buffer
+	 * @param buffer buffer to copy
+	 * @param bytes size of the new buffer
+	 * @param used number of bytes at the start of the buffer to copy
+	 * @return the new buffer
+	 */
+	private static ByteBuffer copy(ByteBuffer buffer, int bytes, int used) {
+		ByteBuffer copy = allocate(bytes);
+		move(buffer, copy, 0, 0, used);
+		return copy;
+	}
+
+	/**
+	 * Moves bytes within a buffer. The ranges may overlap.
+	 * @param buffer buffer to move bytes in
+	 * @param from position of the bytes to move
+	 * @param to position to move the bytes to
+	 * @param length number of bytes to move
+	 */
+	private static void move(ByteBuffer buffer, int from, int to, int length) {
+		move(buffer, buffer, from, to, length);
+	}
+
+	/**
+	 * Moves bytes from one buffer to another, or within a buffer. The ranges may overlap: overlapping bytes are moved eight at a time in place, back to front 
+	 * when moving towards the end and front to back otherwise, so each byte is read before it is overwritten and nothing is allocated.
+	 * @param source buffer to move bytes from
+	 * @param target buffer to move bytes to
+	 * @param from position of the bytes to move
+	 * @param to position to move the bytes to
+	 * @param length number of bytes to move
+	 */
+	private static void move(ByteBuffer source, ByteBuffer target, int from, int to, int length) {
+		if (length == 0 || (source == target && from == to)) {
+			return;
+		}
+		if (source == target && from < to + length && to < from + length) {
+			if (to > from) {
+				int i = length;
+				for (; i >= 8; i -= 8) {
+					target.putLong(to + i - 8, source.getLong(from + i - 8));
+				}
+				for (; i > 0; i--) {
+					target.put(to + i - 1, source.get(from + i - 1));
+				}
+			}
+			else {
+				int i = 0;
+				for (; i + 8 <= length; i += 8) {
+					target.putLong(to + i, source.getLong(from + i));
+				}
+				for (; i < length; i++) {
+					target.put(to + i, source.get(from + i));
+				}
+			}
+			return;
+		}
+		ByteBuffer bytes = source.duplicate();
+		bytes.limit(from + length).position(from);
+		ByteBuffer out = target.duplicate();
+		out.position(to);
+		out.put(bytes);
+	}
+}
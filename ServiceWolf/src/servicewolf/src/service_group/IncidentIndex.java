@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package servicewolf.src.service_group;
+
+import servicewolf.src.incident.Incident;
+
+
+/**
+ * Hash index from Incident ids to Incidents. Ids are kept in a primitive int array using open addressing with linear probing, so lookups, additions and
+ * removals take constant time on average without boxing the ids. Incident ids are always positive, which lets 0 mark an empty slot.
+ * @author Tyler Strickland
+ *
+ */
+class IncidentIndex {
+
+	/** Id stored in slots that do not hold an Incident */
+	private static final int EMPTY = 0;
+	/** Number of slots in a new index */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Ids of the Incidents in each slot */
+	private int[] ids;
+	/** Incidents in each slot */
+	private Incident[] incidents;
+	/** Number of Incidents in the index */
+	private int size;
+
+	/**
+	 * Constructs a new empty IncidentIndex
+	 */
+	IncidentIndex() {
+		ids = new int[INITIAL_CAPACITY];
+		incidents = new Incident[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the Incident with the given id
+	 * @param id id of the Incident to return
+	 * @return the Incident with the id, or null if the index does not have one
+	 */
+	Incident get(int id) {
+		if (id == EMPTY) {
+			return null;
+		}
+		int mask = ids.length - 1;
+		for (int slot = hash(id) & mask; ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (ids[slot] == id) {
+				return incidents[slot];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether the index has an Incident with the given id
+	 * @param id id to check
+	 * @return true if the index has an Incident with the id
+	 */
+	boolean contains(int id) {
+		return get(id) != null;
+	}
+
+	/**
+	 * Adds an Incident to the index, replacing any Incident with the same id
+	 * @param incident Incident to add
+	 */
+	void put(Incident incident) {
+		if ((size + 1) * 4 > ids.length * 3) {
+			resize(ids.length * 2);
+		}
+		int id = incident.getId();
+		int mask = ids.length - 1;
+		int slot = hash(id) & mask;
+		while (ids[slot] != EMPTY && ids[slot] != id) {
+			slot = (slot + 1) & mask;
+		}
+		if (ids[slot] == EMPTY) {
+			size++;
+		}
+		ids[slot] = id;
+		incidents[slot] = incident;
+	}
+
+	/**
+	 * Removes the Incident with the given id from the index
+	 * @param id id of the Incident to remove
+	 * @return the Incident that was removed, or null if the index did not have one
+	 */
+	Incident remove(int id) {
+		if (id == EMPTY) {
+			return null;
+		}
+		int mask = ids.length - 1;
+		int slot = hash(id) & mask;
+		while (ids[slot] != id) {
+			if (ids[slot] == EMPTY) {
+				return null;
+			}
+			slot = (slot + 1) & mask;
+		}
+		Incident removed = incidents[slot];
+		size--;
+
+		// Shift later Incidents in the probe sequence back so that no lookup stops early at the freed slot
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (ids[next] != EMPTY) {
+			int home = hash(ids[next]) & mask;
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				ids[gap] = ids[next];
+				incidents[gap] = incidents[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		ids[gap] = EMPTY;
+		incidents[gap] = null;
+		return removed;
+	}
+
+	/**
+	 * Moves every Incident into a larger array of slots
+	 * @param capacity number of slots to use, which must be a power of two
+	 */
+	private void resize(int capacity) {
+		int[] oldIds = ids;
+		Incident[] oldIncidents = incidents;
+		ids = new int[capacity];
+		incidents = new Incident[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldIds.length; i++) {
+			if (oldIds[i] != EMPTY) {
+				int slot = hash(oldIds[i]) & mask;
+				while (ids[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				ids[slot] = oldIds[i];
+				incidents[slot] = oldIncidents[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of an id so that consecutive ids do not fill consecutive slots
+	 * @param id id to hash
+	 * @return hash of the id
+	 */
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
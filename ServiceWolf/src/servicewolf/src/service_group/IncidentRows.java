@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package servicewolf.src.service_group;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Cached display rows of the Incidents of a ServiceGroup, in id order. Each row is the id, state name, title and status details of an Incident. The rows are
+ * built once and then patched as Incidents are added, deleted or changed, so only the rows that changed are formatted again. Every change gives the rows a
+ * new version taken from a counter shared by all ServiceGroups, so a version is never seen for two different sets of rows and a caller can tell that nothing
+ * changed by comparing versions. The rows are handed out as an unmodifiable list of unmodifiable rows, which is shared until the next change and cannot be 
+ * written through.
+ * @author Tyler Strickland
+ *
+ */
+class IncidentRows {
+
+	/** Counter the versions of every ServiceGroup's rows are taken from */
+	private static final AtomicLong VERSIONS = new AtomicLong();
+
+	/** Rows of the Incidents, or null until they are built */
+	private ArrayList<List<String>> rows;
+	/** Unmodifiable list of the rows handed out since the last change, or null if it has not been created */
+	private List<List<String>> view;
+	/** Version of the rows */
+	private long version;
+
+	/**
+	 * Constructs new IncidentRows that are not built yet
+	 */
+	IncidentRows() {
+		version = VERSIONS.incrementAndGet();
+	}
+
+	/**
+	 * Returns the version of the rows, which changes every time the rows change
+	 * @return version of the rows
+	 */
+	synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the rows as an unmodifiable list if they are built
+	 * @return the rows, or null if they need to be built first
+	 */
+	synchronized List<List<String>> toList() {
+		if (rows == null) {
+			return null;
+		}
+		if (view == null) {
+			view = Collections.unmodifiableList(new ArrayList<List<String>>(rows));
+		}
+		return view;
+	}
+
+	/**
+	 * Stores rows that were built from the Incidents, unless the rows changed while they were being built, in which case they are built again the next time 
+	 * they are needed
+	 * @param built rows built from the Incidents
+	 * @param builtView the built rows as an unmodifiable list, which is handed out until the next change
+	 * @param builtVersion version of the rows when building started
+	 */
+	synchronized void build(ArrayList<List<String>> built, List<List<String>> builtView, long builtVersion) {
+		if (version == builtVersion) {
+			rows = built;
+			view = builtView;
+		}
+	}
+
+	/**
+	 * Inserts the row of an Incident that was added
+	 * @param position position of the Incident in id order
+	 * @param row row of the Incident
+	 */
+	synchronized void insert(int position, List<String> row) {
+		if (rows != null) {
+			rows.add(position, row);
+		}
+		changed();
+	}
+
+	/**
+	 * Replaces the row of an Incident that changed
+	 * @param position position of the Incident in id order
+	 * @param row new row of the Incident
+	 */
+	synchronized void set(int position, List<String> row) {
+		if (rows != null) {
+			rows.set(position, row);
+		}
+		changed();
+	}
+
+	/**
+	 * Removes the row of an Incident that was deleted
+	 * @param position position of the Incident in id order
+	 */
+	synchronized void remove(int position) {
+		if (rows != null) {
+			rows.remove(position);
+		}
+		changed();
+	}
+
+	/**
+	 * Drops the rows so that they are built again, used when many Incidents change at once
+	 */
+	synchronized void invalidate() {
+		rows = null;
+		changed();
+	}
+
+	/**
+	 * Gives the rows a new version and drops the list handed out for the old version
+	 */
+	private void changed() {
+		version = VERSIONS.incrementAndGet();
+		view = null;
+	}
+}
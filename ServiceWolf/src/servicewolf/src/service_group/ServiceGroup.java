@@ -5,15 +5,22 @@ package servicewolf.src.service_group;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import servicewolf.src.command.Command;
 import servicewolf.src.incident.Incident;
+import servicewolf.src.incident.IncidentLogArena;
 
 
 
 /**
  * This class represents a ServiceGroup in ServiceWolf. It is responsible for constructing ServiceGroups, returning their names, adding incidents to ServiceGroups, 
- * returning those incidents, and executing commands. 
+ * returning those incidents, and executing commands. A ServiceGroup is safe to use from several threads: the list and index of incidents are guarded by a 
+ * read/write lock owned by the ServiceGroup, so readers only wait for writers of the same ServiceGroup, and each Incident guards its own fields.
  * @author Tyler Strickland
  *
  */
@@ -21,35 +28,116 @@ public class ServiceGroup {
 	
 	/** ArrayList of incidents that a ServiceGroup will have */
 	private ArrayList<Incident> incidents;
+	/** Index of the incidents by id, kept in sync with the ArrayList of incidents */
+	private IncidentIndex incidentIndex;
+	/** Allocator of the ids of new incidents in the ServiceGroup */
+	private IdAllocator idAllocator;
 	/** Name of the ServiceGroup */
-	private String serviceGroupName;
+	private volatile String serviceGroupName;
+	/** Whether the name, the list of incidents or an incident changed by executeCommand has changed since the ServiceGroup was last saved */
+	private volatile boolean dirty;
+	/** Lock guarding the incidents, the index of incidents and the incident counter */
+	private final ReentrantReadWriteLock lock;
+	/** Source the incidents are loaded from when they are first needed, or null once they have been loaded */
+	private volatile ServiceGroupSource source;
+	/** Arena the log messages of the incidents are packed into, or null if each incident keeps its own log */
+	private IncidentLogArena logArena;
+	/** Off-heap columns holding the incidents instead of the list and index of incidents, or null if the incidents are kept as Incident objects */
+	private IncidentColumns columns;
+	/** Cached display rows of the incidents, patched as incidents are added, deleted or changed */
+	private final IncidentRows rows;
 	
 	/** 
 	 * Constructs a new ServiceGroup and creates a new ArrayList of incidents for that ServiceGroup
 	 * @param serviceGroupName name of the ServiceGroup
 	 */
 	public ServiceGroup(String serviceGroupName) {
+		lock = new ReentrantReadWriteLock();
 		setServiceGroupName(serviceGroupName);
 		incidents = new ArrayList<Incident>();
+		incidentIndex = new IncidentIndex();
+		idAllocator = new IdAllocator();
+		rows = new IncidentRows();
 		
 	}
 	
 	/**
-	 * Sets the incident counter for the ServiceGroup
+	 * Constructs a new ServiceGroup whose incidents are loaded from the given source when they are first needed. Until then the ServiceGroup holds only its 
+	 * name, and it is not dirty since it matches the place it is loaded from.
+	 * @param serviceGroupName name of the ServiceGroup
+	 * @param source source of the ServiceGroup's incidents
+	 * @throws IllegalArgumentException if the service group name is empty or null, or the source is null
 	 */
-	public void setIncidentCounter() {
-		if (incidents.size() == 0) {
-			Incident.setCounter(1);
+	public ServiceGroup(String serviceGroupName, ServiceGroupSource source) {
+		this(serviceGroupName);
+		if (source == null) {
+			throw new IllegalArgumentException("Invalid service group.");
 		}
-		else {
-			int max = 0;
-			for (int i = 0; i < incidents.size(); i++) {
-				if (incidents.get(i).getId() > max) {
-					max = incidents.get(i).getId();
+		this.source = source;
+		dirty = false;
+	}
+	
+	/**
+	 * Loads the incidents of the ServiceGroup from its source if they have not been loaded yet. Incidents that are loaded are not dirty, since they match the 
+	 * place they were loaded from. Every method that uses the incidents loads them first, so this only needs to be called to load them ahead of time.
+	 * @throws IllegalArgumentException if the incidents cannot be loaded, in which case they are loaded again the next time they are needed
+	 */
+	public void loadIncidents() {
+		if (source == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			ServiceGroupSource current = source;
+			if (current != null) {
+				ArrayList<Incident> loaded = current.loadIncidents();
+				boolean wasDirty = dirty;
+				source = null;
+				try {
+					addIncidents(loaded);
+				} catch (IllegalArgumentException e) {
+					source = current;
+					throw e;
 				}
+				for (int i = 0; i < loaded.size(); i++) {
+					loaded.get(i).markClean();
+				}
+				dirty = wasDirty;
 			}
-			Incident.setCounter(max + 1);
-			
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns whether the incidents of the ServiceGroup have been loaded. A ServiceGroup created without a source is always loaded.
+	 * @return true if the incidents have been loaded
+	 */
+	public boolean isLoaded() {
+		return source == null;
+	}
+	
+	/**
+	 * Sets the shared Incident counter to one more than the largest Incident id in the ServiceGroup. The Incidents are sorted by id, so the largest id is the id 
+	 * of the last Incident. Only Incidents created without an id use the shared counter; addNewIncident uses the ServiceGroup's own id allocator instead. 
+	 * The counter stays global because the Incident(title, caller, message) constructor has no ServiceGroup to ask for an id, and callers of that constructor 
+	 * rely on this method to make its next id follow the ServiceGroup's Incidents. Nothing in ServiceWolf calls it any more.
+	 */
+	public void setIncidentCounter() {
+		loadIncidents();
+		lock.readLock().lock();
+		try {
+			if (columns != null) {
+				Incident.setCounter(columns.size() == 0 ? 1 : columns.getId(columns.size() - 1) + 1);
+			}
+			else if (incidents.size() == 0) {
+				Incident.setCounter(1);
+			}
+			else {
+				Incident.setCounter(incidents.get(incidents.size() - 1).getId() + 1);
+			}
+		} finally {
+			lock.readLock().unlock();
 		}
 	}
 	
@@ -63,6 +151,7 @@ public class ServiceGroup {
 			throw new IllegalArgumentException("Invalid service group name.");
 		}
 		this.serviceGroupName = serviceGroupName;
+		dirty = true;
 	}
 	
 	/**
@@ -74,65 +163,371 @@ public class ServiceGroup {
 	}
 	
 	/**
-	 * Adds an Incident to the ServiceGroups ArrayList of incidents. 
+	 * Adds an Incident to the ServiceGroups ArrayList of incidents. The Incident is inserted at its position in id order, which is found with a binary search, 
+	 * or appended directly when its id is larger than every other id in the ServiceGroup. The shared Incident counter is raised past the id.
 	 * @param incident Incident to add to the ServiceGroup
 	 * @throws IllegalArgumentException if the Incident id matches the id of an Incident that is already a part of the ServiceGroup
 	 */
 	public void addIncident(Incident incident) {
-		for (int i = 0; i < incidents.size(); i++) {
-			if (incident.getId() == incidents.get(i).getId()) {
+		loadIncidents();
+		lock.writeLock().lock();
+		try {
+			if (columns != null) {
+				int row = columns.indexOf(incident.getId());
+				if (row >= 0) {
+					throw new IllegalArgumentException("Incident cannot be created.");
+				}
+				columns.insert(-(row + 1), incident);
+				rows.insert(-(row + 1), createRow(incident));
+				idAllocator.observe(incident.getId());
+				Incident.raiseCounter(incident.getId());
+				dirty = true;
+				return;
+			}
+			if (incidentIndex.contains(incident.getId())) {
 				throw new IllegalArgumentException("Incident cannot be created.");
 			}
+			if (incidents.size() == 0 || incidents.get(incidents.size() - 1).getId() < incident.getId()) {
+				incidents.add(incident);
+				rows.insert(incidents.size() - 1, createRow(incident));
+			}
+			else {
+				int position = -(indexOf(incident.getId()) + 1);
+				incidents.add(position, incident);
+				rows.insert(position, createRow(incident));
+			}
+			incidentIndex.put(incident);
+			idAllocator.observe(incident.getId());
+			Incident.raiseCounter(incident.getId());
+			if (logArena != null) {
+				incident.moveIncidentLogTo(logArena);
+			}
+			dirty = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Creates a new Incident with the next id of the ServiceGroup and adds it to the ServiceGroup. The id comes from the ServiceGroup's id allocator in constant 
+	 * time and is larger than every id that has been in the ServiceGroup.
+	 * @param title title of the new Incident
+	 * @param caller caller of the new Incident
+	 * @param message first message of the new Incident's log
+	 * @return the new Incident
+	 * @throws IllegalArgumentException if the Incident cannot be created
+	 */
+	public Incident addNewIncident(String title, String caller, String message) {
+		Incident incident = createNewIncident(title, caller, message);
+		addIncident(incident);
+		return incident;
+	}
+	
+	/**
+	 * Creates a new Incident with the next id of the ServiceGroup without adding it, so that the Incident can be recorded before it is added with addIncident. 
+	 * The id is allocated even if the Incident is never added, and is not handed out again.
+	 * @param title title of the new Incident
+	 * @param caller caller of the new Incident
+	 * @param message first message of the new Incident's log
+	 * @return the new Incident
+	 * @throws IllegalArgumentException if the Incident cannot be created
+	 */
+	public Incident createNewIncident(String title, String caller, String message) {
+		loadIncidents();
+		int id = idAllocator.next();
+		try {
+			return new Incident(id, title, caller, message);
+		} catch (IllegalArgumentException e) {
+			idAllocator.release(id);
+			throw e;
 		}
-		incidents.add(incident);
-		setIncidentCounter();
+	}
+	
+	/**
+	 * Adds a batch of Incidents to the ServiceGroups ArrayList of incidents. The batch is checked for duplicate ids once, sorted once and merged into the 
+	 * ArrayList, so adding n Incidents takes O(n log n) time. No Incident is added if any of them is a duplicate. The shared Incident counter is raised past 
+	 * the largest id.
+	 * @param added Incidents to add to the ServiceGroup
+	 * @throws IllegalArgumentException if two of the Incidents have the same id or an Incident id matches the id of an Incident that is already a part of the ServiceGroup
+	 */
+	public void addIncidents(List<Incident> added) {
+		loadIncidents();
+		lock.writeLock().lock();
+		try {
+			ArrayList<Incident> sorted = new ArrayList<Incident>(added);
+			sorted.sort(Comparator.comparingInt(Incident::getId));
+			for (int i = 0; i < sorted.size(); i++) {
+				if ((i > 0 && sorted.get(i - 1).getId() == sorted.get(i).getId()) || contains(sorted.get(i).getId())) {
+					throw new IllegalArgumentException("Incident cannot be created.");
+				}
+			}
 		
-		for (int i = 0; i < incidents.size(); i++) {
-			for (int j = incidents.size() - 1; j > i; j--) {
-				if (incidents.get(i).getId() > incidents.get(j).getId()) {
-					Incident temp = incidents.get(i);
-					incidents.set(i, incidents.get(j));
-					incidents.set(j, temp);
+			if (columns != null) {
+				columns.insertAll(sorted);
+			}
+			else {
+				if (incidents.size() == 0 || sorted.size() == 0 || incidents.get(incidents.size() - 1).getId() < sorted.get(0).getId()) {
+					incidents.addAll(sorted);
+				}
+				else {
+					ArrayList<Incident> merged = new ArrayList<Incident>(incidents.size() + sorted.size());
+					int i = 0;
+					int j = 0;
+					while (i < incidents.size() || j < sorted.size()) {
+						if (j == sorted.size() || (i < incidents.size() && incidents.get(i).getId() < sorted.get(j).getId())) {
+							merged.add(incidents.get(i++));
+						}
+						else {
+							merged.add(sorted.get(j++));
+						}
+					}
+					incidents = merged;
+				}
+				for (int i = 0; i < sorted.size(); i++) {
+					incidentIndex.put(sorted.get(i));
+					if (logArena != null) {
+						sorted.get(i).moveIncidentLogTo(logArena);
+					}
+				}
+			}
+			if (sorted.size() > 0) {
+				idAllocator.observe(sorted.get(sorted.size() - 1).getId());
+				Incident.raiseCounter(sorted.get(sorted.size() - 1).getId());
+				rows.invalidate();
+				dirty = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Packs the log messages of every incident in the ServiceGroup into an arena shared by the ServiceGroup, where they take far less memory than as separate 
+	 * Strings. Incidents added to the ServiceGroup afterwards have their logs packed into the arena as well. Packing a ServiceGroup again does nothing.
+	 * @param direct whether the arena is allocated outside of the heap
+	 */
+	public void packIncidentLogs(boolean direct) {
+		lock.writeLock().lock();
+		try {
+			if (logArena == null) {
+				logArena = new IncidentLogArena(direct);
+				for (int i = 0; i < incidents.size(); i++) {
+					incidents.get(i).moveIncidentLogTo(logArena);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Moves the incidents of the ServiceGroup into off-heap columns, where each incident takes a few dozen bytes outside of the heap instead of an Incident 
+	 * object, so heap use and garbage collection no longer grow with the number of incidents. Once the incidents are off the heap, the Incidents returned by 
+	 * getIncidents and getIncidentById are built from the columns on each call and changing them does not change the ServiceGroup, so commands must be run 
+	 * with executeCommand. Moving a ServiceGroup again does nothing.
+	 */
+	public void storeIncidentsOffHeap() {
+		loadIncidents();
+		lock.writeLock().lock();
+		try {
+			if (columns == null) {
+				columns = new IncidentColumns();
+				for (int i = 0; i < incidents.size(); i++) {
+					columns.insert(i, incidents.get(i));
 				}
+				incidents = new ArrayList<Incident>();
+				incidentIndex = new IncidentIndex();
 			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns whether the incidents of the ServiceGroup are stored in off-heap columns
+	 * @return true if the incidents are off the heap
+	 */
+	public boolean isStoredOffHeap() {
+		lock.readLock().lock();
+		try {
+			return columns != null;
+		} finally {
+			lock.readLock().unlock();
 		}
+	}
 	
+	/**
+	 * Returns the number of bytes the incidents take outside of the heap once they are stored off the heap. Space freed by deleted incidents and by logs that 
+	 * outgrew their place is reclaimed as the incidents change, so this stays proportional to the incidents in the ServiceGroup.
+	 * @return number of bytes used outside of the heap, or 0 if the incidents are on the heap
+	 */
+	public long getOffHeapSize() {
+		lock.readLock().lock();
+		try {
+			return columns == null ? 0 : columns.getOffHeapSize();
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 	
 	/**
-	 * Returns the ArrayList of Incidents
+	 * Returns a copy of the ArrayList of Incidents, sorted by id. Changes to the copy do not change the ServiceGroup.
 	 * @return the ServiceGroup's incidents as an ArrayList
 	 */
 	public ArrayList<Incident> getIncidents() {
-		return incidents;
+		loadIncidents();
+		lock.readLock().lock();
+		try {
+			if (columns != null) {
+				ArrayList<Incident> copy = new ArrayList<Incident>(columns.size());
+				for (int i = 0; i < columns.size(); i++) {
+					copy.add(columns.get(i));
+				}
+				return copy;
+			}
+			return new ArrayList<Incident>(incidents);
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 	
 	/**
-	 * Goes through the ServiceGroups ArrayList of Incidents and returns the Incident with the desired id
+	 * Returns a copy of the ServiceGroup holding copies of its Incidents as they are now, which later changes to the ServiceGroup do not affect. The copy keeps 
+	 * its Incidents on the heap, whichever way the ServiceGroup stores them.
+	 * @return copy of the ServiceGroup
+	 */
+	public ServiceGroup copy() {
+		ArrayList<Incident> current = getIncidents();
+		ArrayList<Incident> copies = new ArrayList<Incident>(current.size());
+		for (int i = 0; i < current.size(); i++) {
+			copies.add(current.get(i).copy());
+		}
+		ServiceGroup copy = new ServiceGroup(serviceGroupName);
+		copy.addIncidents(copies);
+		return copy;
+	}
+	
+	/**
+	 * Returns the number of Incidents in the ServiceGroup
+	 * @return number of Incidents
+	 */
+	public int getIncidentCount() {
+		loadIncidents();
+		lock.readLock().lock();
+		try {
+			return columns != null ? columns.size() : incidents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the id, state name, title and status details of every Incident in the ServiceGroup as a 2d array, sorted by id. The array is a new copy of the 
+	 * rows returned by getIncidentRows, so the caller may modify it.
+	 * @return Incidents of the ServiceGroup as a 2d array with one row per Incident
+	 */
+	public String[][] getIncidentsAsArray() {
+		List<List<String>> incidentRows = getIncidentRows();
+		String[][] incidentsArray = new String[incidentRows.size()][];
+		for (int i = 0; i < incidentsArray.length; i++) {
+			incidentsArray[i] = incidentRows.get(i).toArray(new String[incidentRows.get(i).size()]);
+		}
+		return incidentsArray;
+	}
+	
+	/**
+	 * Returns the id, state name, title and status details of every Incident in the ServiceGroup, sorted by id. Used for display in the ServiceWolf program. 
+	 * The rows are cached and patched as Incidents are added, deleted or changed through the ServiceGroup, so calling this again only formats the rows that 
+	 * changed. The list and its rows are shared with other callers until the next change, so they are unmodifiable.
+	 * @return unmodifiable list of the rows of the Incidents, one row per Incident
+	 */
+	public List<List<String>> getIncidentRows() {
+		loadIncidents();
+		lock.readLock().lock();
+		try {
+			List<List<String>> incidentRows = rows.toList();
+			if (incidentRows == null) {
+				long version = rows.getVersion();
+				int size = columns != null ? columns.size() : incidents.size();
+				ArrayList<List<String>> built = new ArrayList<List<String>>(size);
+				for (int i = 0; i < size; i++) {
+					built.add(columns != null ? createRow(i) : createRow(incidents.get(i)));
+				}
+				incidentRows = Collections.unmodifiableList(new ArrayList<List<String>>(built));
+				rows.build(built, incidentRows, version);
+			}
+			return incidentRows;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the version of the rows returned by getIncidentRows. The version changes every time an Incident is added, deleted or changed through the 
+	 * ServiceGroup and is never the same for two ServiceGroups, so a caller holding the rows of a version does not need to get them again while the version 
+	 * stays the same.
+	 * @return version of the rows of the Incidents
+	 */
+	public long getIncidentsVersion() {
+		loadIncidents();
+		return rows.getVersion();
+	}
+	
+	/**
+	 * Returns the Incident with the desired id using the index of Incidents by id
 	 * @param id id of the Incident to return
 	 * @return the Incident of the given id, or null if the ServiceGroup does not have the Incident of the given id
 	 */
 	public Incident getIncidentById(int id) {
-		
-		for (int i = 0; i < incidents.size(); i++) {
-			if (incidents.get(i).getId() == id) {
-				return incidents.get(i);
+		loadIncidents();
+		lock.readLock().lock();
+		try {
+			if (columns != null) {
+				int row = columns.indexOf(id);
+				return row < 0 ? null : columns.get(row);
 			}
+			return incidentIndex.get(id);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return null;
 	}
 	
 	/**
-	 * Executes a command on an Incident in the ArrayList of Incidents
+	 * Executes a command on an Incident in the ArrayList of Incidents. Commands on different Incidents of the ServiceGroup can run at the same time, unless the 
+	 * incidents are stored off the heap, where each command writes its Incident back to the columns one at a time.
 	 * @param id id of the Incident to perform the Command on
 	 * @param command command to execute on the Incident
 	 */
 	public void executeCommand(int id, Command command) {
-		
-		for (int i = 0; i < incidents.size(); i++) {
-			if (incidents.get(i).getId() == id) {
-				incidents.get(i).update(command);
+		loadIncidents();
+		lock.readLock().lock();
+		try {
+			if (columns == null) {
+				Incident incident = incidentIndex.get(id);
+				if (incident != null) {
+					synchronized (incident) {
+						incident.update(command);
+						rows.set(indexOf(id), createRow(incident));
+					}
+					dirty = true;
+				}
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		lock.writeLock().lock();
+		try {
+			int row = columns.indexOf(id);
+			if (row >= 0) {
+				Incident incident = columns.get(row);
+				incident.update(command);
+				columns.set(row, incident);
+				rows.set(row, createRow(incident));
+				dirty = true;
 			}
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 	
@@ -141,12 +536,125 @@ public class ServiceGroup {
 	 * @param id id of the ServiceGroup to delete
 	 */
 	public void deleteIncidentById(int id) {
-		for (int i = 0; i < incidents.size(); i++) {
-			if (incidents.get(i).getId() == id) {
-				incidents.remove(i);
+		loadIncidents();
+		lock.writeLock().lock();
+		try {
+			if (columns != null) {
+				int row = columns.indexOf(id);
+				if (row >= 0) {
+					columns.remove(row);
+					rows.remove(row);
+					dirty = true;
+				}
+			}
+			else if (incidentIndex.remove(id) != null) {
+				int position = indexOf(id);
+				incidents.remove(position);
+				rows.remove(position);
+				dirty = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns whether the ServiceGroup has changed since it was last marked clean. The ServiceGroup has changed if it was renamed, an Incident was added or 
+	 * deleted, or executeCommand changed one of its Incidents. A new ServiceGroup is dirty until it has been saved. Only the ServiceGroup's own flag is read, 
+	 * so checking takes constant time however many Incidents there are; an Incident changed directly rather than through executeCommand is not noticed.
+	 * @return true if the ServiceGroup has changed
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+	
+	/**
+	 * Marks the ServiceGroup and its Incidents as saved. Must be called before the ServiceGroup is written, so that a change made while it is being written 
+	 * leaves it dirty.
+	 */
+	public void markClean() {
+		lock.readLock().lock();
+		try {
+			dirty = false;
+			for (int i = 0; i < incidents.size(); i++) {
+				incidents.get(i).markClean();
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Marks the ServiceGroup as changed, so that it is saved again. Used when writing the ServiceGroup fails after it was marked clean.
+	 */
+	public void markDirty() {
+		dirty = true;
+	}
+	
+	/**
+	 * Creates the display row of an Incident
+	 * @param incident Incident to create the row of
+	 * @return id, state name, title and status details of the Incident
+	 */
+	private static List<String> createRow(Incident incident) {
+		synchronized (incident) {
+			return createRow(Integer.toString(incident.getId()), incident.getState(), incident.getTitle(), incident.getStatusDetails());
+		}
+	}
+	
+	/**
+	 * Creates the display row of an Incident in the off-heap columns
+	 * @param row row of the Incident in the columns
+	 * @return id, state name, title and status details of the Incident
+	 */
+	private List<String> createRow(int row) {
+		return createRow(Integer.toString(columns.getId(row)), columns.getState(row), columns.getTitle(row), columns.getStatusDetails(row));
+	}
+	
+	/**
+	 * Creates an unmodifiable display row
+	 * @param id id of the Incident
+	 * @param state state name of the Incident
+	 * @param title title of the Incident
+	 * @param statusDetails status details of the Incident
+	 * @return the row
+	 */
+	private static List<String> createRow(String id, String state, String title, String statusDetails) {
+		return Collections.unmodifiableList(Arrays.asList(id, state, title, statusDetails));
+	}
+	
+	/**
+	 * Returns whether the ServiceGroup has an Incident with the given id
+	 * @param id id of the Incident to look for
+	 * @return true if the ServiceGroup has the Incident
+	 */
+	private boolean contains(int id) {
+		return columns != null ? columns.indexOf(id) >= 0 : incidentIndex.contains(id);
+	}
+	
+	/**
+	 * Finds the position of an Incident in the ArrayList of Incidents, which is sorted by id
+	 * @param id id of the Incident to find
+	 * @return position of the Incident, or -(insertion point) - 1 if the ServiceGroup does not have the Incident
+	 */
+	private int indexOf(int id) {
+		int low = 0;
+		int high = incidents.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleId = incidents.get(middle).getId();
+			if (middleId < id) {
+				low = middle + 1;
+			}
+			else if (middleId > id) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
 			}
 		}
+		return -(low + 1);
 	}
 	
 	
-}
\ No newline at end of file
+}
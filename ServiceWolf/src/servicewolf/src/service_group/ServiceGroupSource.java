@@ -0,0 +1,25 @@
+/**
+ * 
+ */
+package servicewolf.src.service_group;
+
+import java.util.ArrayList;
+
+import servicewolf.src.incident.Incident;
+
+
+/**
+ * Source of the Incidents of a ServiceGroup that have not been loaded yet. A ServiceGroup created with a ServiceGroupSource holds only its name until its 
+ * Incidents are first needed, so ServiceGroups that are never opened are never read.
+ * @author Tyler Strickland
+ *
+ */
+public interface ServiceGroupSource {
+
+	/**
+	 * Loads the Incidents of the ServiceGroup
+	 * @return Incidents of the ServiceGroup
+	 * @throws IllegalArgumentException if the Incidents cannot be loaded or an Incident is invalid
+	 */
+	ArrayList<Incident> loadIncidents();
+}
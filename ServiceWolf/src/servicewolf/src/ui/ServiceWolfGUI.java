@@ -10,6 +10,7 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -533,8 +534,12 @@ public class ServiceWolfGUI extends JFrame implements ActionListener {
 			private static final long serialVersionUID = 1L;
 			/** Column names for the table */
 			private String [] columnNames = {"ID", "State", "Title", "Status Details"};
-			/** Data stored in the table */
+			/** Rows shared by the ServiceGroup, or null if there is no ServiceGroup */
+			private List<List<String>> rows;
+			/** Data stored in the table once a value has been set, or null while the table shows the shared rows */
 			private Object [][] data;
+			/** Version of the Incidents the rows were read from */
+			private long version;
 			
 			/**
 			 * Constructs the IncidentTableModel by requesting the latest information
@@ -557,9 +562,9 @@ public class ServiceWolfGUI extends JFrame implements ActionListener {
 			 * @return the number of rows in the table.
 			 */
 			public int getRowCount() {
-				if (data == null) 
+				if (rows == null) 
 					return 0;
-				return data.length;
+				return rows.size();
 			}
 			
 			/**
@@ -578,28 +583,43 @@ public class ServiceWolfGUI extends JFrame implements ActionListener {
 			 * @return the data at the given location.
 			 */
 			public Object getValueAt(int row, int col) {
-				if (data == null)
+				if (data != null)
+					return data[row][col];
+				if (rows == null)
 					return null;
-				return data[row][col];
+				return rows.get(row).get(col);
 			}
 			
 			/**
-			 * Sets the given value to the given {row, col} location.
+			 * Sets the given value to the given {row, col} location. The rows from
+			 * ServiceWolf are shared and unmodifiable, so they are copied first.
 			 * @param value Object to modify in the data.
 			 * @param row the row index
 			 * @param col the column index
 			 */
 			public void setValueAt(Object value, int row, int col) {
+				if (data == null) {
+					data = new Object[rows.size()][];
+					for (int i = 0; i < data.length; i++) {
+						data[i] = rows.get(i).toArray();
+					}
+				}
 				data[row][col] = value;
 				fireTableCellUpdated(row, col);
 			}
 			
 			/**
-			 * Updates the given model with Incident information from ServiceWolf.
+			 * Updates the given model with Incident information from ServiceWolf. The
+			 * data is only read again if the Incidents changed since it was last read.
 			 */
 			private void updateData() {
 				ServiceWolfManager m = ServiceWolfManager.getInstance();
-				data = m.getIncidentsAsArray();
+				long current = m.getIncidentsVersion();
+				if (rows == null || current != version) {
+					rows = m.getIncidentRows();
+					data = null;
+					version = current;
+				}
 			}
 		}
 	}	
@@ -70,6 +70,27 @@ public class CommandTest {
 			assertNull(c);
 		}
 		
+		c = null;
+		try {
+			c = new Command(CommandValue.CANCEL, "Workaround", "Github down");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid command information", e.getMessage());
+			assertNull(c);
+		}
+		
+		c = null;
+		try {
+			c = new Command(CommandValue.HOLD, "Awaiting Godot", "Github down");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid command information", e.getMessage());
+			assertNull(c);
+		}
+		
+		c = new Command(CommandValue.RESOLVE, "Rebooted the server", "Github down");
+		assertEquals("Rebooted the server", c.getCommandInformation());
+		
 	}
 	
 	/**
@@ -3,6 +3,8 @@ package servicewolf.test.incident;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 
 import org.junit.Test;
@@ -10,6 +12,8 @@ import org.junit.Test;
 import servicewolf.src.command.Command;
 import servicewolf.src.command.Command.CommandValue;
 import servicewolf.src.incident.Incident;
+import servicewolf.src.incident.StatusDetails;
+import servicewolf.src.incident.SymbolTable;
 
 
 /**
@@ -405,6 +409,28 @@ public class IncidentTest {
 		assertEquals(expected, i.toString());
 	}
 	
+	/**
+	 * Tests writing an Incident to an Appendable
+	 */
+	@Test
+	public void testWriteTo() {
+		incidentLog = new ArrayList<String>();
+		incidentLog.add("Help");
+		incidentLog.add("Still down");
+		Incident i = new Incident(1, STATE, TITLE, CALLER, 0, OWNER, STATUS_DETAILS, incidentLog);
+		
+		StringWriter out = new StringWriter();
+		try {
+			i.writeTo(out);
+			i.writeTo(out);
+		} catch (IOException e) {
+			fail("Cannot write Incident");
+		}
+		
+		assertEquals(i.toString() + i.toString(), out.toString());
+		assertEquals("* 1,New,Github down,tstrick2,0,Unowned,No Status\n- Help\n- Still down\n", i.toString());
+	}
+	
 	/**
 	 * Tests executing invalid and valid commands on Incidents
 	 */
@@ -526,6 +552,39 @@ public class IncidentTest {
 		assertEquals(Incident.IN_PROGRESS_NAME, i14.getState());
 	}
 	
+	/**
+	 * Tests that callers, owners and status details are shared between Incidents
+	 */
+	@Test
+	public void testSymbolSharing() {
+		incidentLog = new ArrayList<String>();
+		incidentLog.add("Help");
+		Incident i1 = new Incident(1, Incident.ON_HOLD_NAME, TITLE, new String("caller"), 0, new String("owner"), new String(Incident.HOLD_AWAITING_VENDOR), incidentLog);
+		Incident i2 = new Incident(2, Incident.CANCELED_NAME, TITLE, new String("caller"), 0, new String(Incident.UNOWNED), new String(Incident.CANCELLATION_DUPLICATE), incidentLog);
+		assertSame(i1.getCaller(), i2.getCaller());
+		assertSame(Incident.HOLD_AWAITING_VENDOR, i1.getStatusDetails());
+		assertSame(Incident.UNOWNED, i2.getOwner());
+		assertSame(SymbolTable.intern(new String("owner")), i1.getOwner());
+		
+		i1.update(new Command(CommandValue.INVESTIGATE, null, "Back"));
+		assertSame(Incident.NO_STATUS, i1.getStatusDetails());
+		assertThrows(IllegalArgumentException.class, () -> i1.setState(Incident.RESOLVED_NAME));
+	}
 	
-
+	/**
+	 * Tests looking up status details by their text
+	 */
+	@Test
+	public void testStatusDetails() {
+		StatusDetails[] values = StatusDetails.values();
+		for (int i = 0; i < values.length; i++) {
+			assertSame(values[i], StatusDetails.fromText(new String(values[i].getText())));
+		}
+		assertSame(StatusDetails.CALLER_CANCELED, StatusDetails.fromText(Incident.CANCELLATION_CALLER_CANCELLED));
+		assertNull(StatusDetails.fromText("Resolution Workaround"));
+		assertNull(StatusDetails.fromText(null));
+		assertTrue(StatusDetails.HOLD_REASONS.contains(StatusDetails.AWAITING_CHANGE));
+		assertFalse(StatusDetails.RESOLUTION_CODES.contains(StatusDetails.DUPLICATE));
+		assertEquals(4, StatusDetails.CANCELLATION_CODES.size());
+	}
 }
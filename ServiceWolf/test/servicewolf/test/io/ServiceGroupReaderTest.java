@@ -3,10 +3,17 @@ package servicewolf.test.io;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import org.junit.Test;
 
+import servicewolf.src.command.Command;
+import servicewolf.src.command.Command.CommandValue;
+import servicewolf.src.incident.Incident;
+import servicewolf.src.io.ServiceGroupIndex;
+import servicewolf.src.io.ServiceGroupWriter;
 import servicewolf.src.io.ServiceGroupsReader;
 import servicewolf.src.service_group.ServiceGroup;
 
@@ -36,5 +43,277 @@ public class ServiceGroupReaderTest {
 		
 
 	}
-
+	
+	/**
+	 * Tests that Incidents and their log messages are read into the correct ServiceGroups
+	 */
+	@Test
+	public void testReadServiceGroupFileIncidents() {
+		ArrayList<ServiceGroup> serviceGroups = ServiceGroupsReader.readServiceGroupsFile("test-files/incidents1.txt");
+		assertEquals(3, serviceGroups.size());
+		assertEquals("CSC IT", serviceGroups.get(0).getServiceGroupName());
+		assertEquals("ITECS", serviceGroups.get(1).getServiceGroupName());
+		assertEquals("OIT", serviceGroups.get(2).getServiceGroupName());
+		
+		assertEquals(4, serviceGroups.get(0).getIncidents().size());
+		Incident incident = serviceGroups.get(0).getIncidentById(4);
+		assertEquals(Incident.RESOLVED_NAME, incident.getState());
+		assertEquals("Set up Jenkins VMs", incident.getTitle());
+		assertEquals("sesmith5", incident.getCaller());
+		assertEquals(1, incident.getReopenCount());
+		assertEquals("cgurley", incident.getOwner());
+		assertEquals(Incident.RESOLUTION_PERMANENTLY_SOLVED, incident.getStatusDetails());
+		assertTrue(incident.getIncidentLogMessages().startsWith("- Please set up Jenkins VMs for Spring 2021 semester.\n- Assigned to C. Gurley\n"));
+		
+		assertEquals(1, serviceGroups.get(1).getIncidents().size());
+		assertEquals(Incident.ON_HOLD_NAME, serviceGroups.get(1).getIncidentById(7).getState());
+		
+		serviceGroups = ServiceGroupsReader.readServiceGroupsFile("test-files/invalid_incidents.txt");
+		assertEquals(0, serviceGroups.size());
+		
+		try {
+			ServiceGroupsReader.readServiceGroupsFile("test-files/does_not_exist.txt");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Cannot load file test-files/does_not_exist.txt", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Tests that memory mapped reading creates the same ServiceGroups as streamed reading
+	 */
+	@Test
+	public void testReadMappedServiceGroupFiles() {
+		ArrayList<ServiceGroup> expected = ServiceGroupsReader.readServiceGroupsFile("test-files/incidents1.txt");
+		ArrayList<ServiceGroup> actual = ServiceGroupsReader.readMappedServiceGroupsFile("test-files/incidents1.txt");
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getServiceGroupName(), actual.get(i).getServiceGroupName());
+			assertEquals(expected.get(i).getIncidents().size(), actual.get(i).getIncidents().size());
+			for (int j = 0; j < expected.get(i).getIncidents().size(); j++) {
+				assertEquals(expected.get(i).getIncidents().get(j).toString(), actual.get(i).getIncidents().get(j).toString());
+			}
+		}
+		
+		assertEquals(0, ServiceGroupsReader.readMappedServiceGroupsFile("test-files/incidents4.txt").size());
+		assertEquals(0, ServiceGroupsReader.readMappedServiceGroupsFile("test-files/incidents5.txt").size());
+		assertEquals(0, ServiceGroupsReader.readMappedServiceGroupsFile("test-files/invalid_incidents.txt").size());
+		
+		try {
+			ServiceGroupsReader.readMappedServiceGroupsFile("test-files/does_not_exist.txt");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Cannot load file test-files/does_not_exist.txt", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Tests that parallel reading creates the same ServiceGroups as streamed reading
+	 */
+	@Test
+	public void testReadServiceGroupFilesWithLazyLogs() {
+		for (int n = 1; n <= 27; n++) {
+			String file = "test-files/incidents" + n + ".txt";
+			ArrayList<ServiceGroup> expected = ServiceGroupsReader.readServiceGroupsFile(file);
+			ArrayList<ServiceGroup> actual = ServiceGroupsReader.readServiceGroupsFileWithLazyLogs(file);
+			assertEquals(file, expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getServiceGroupName(), actual.get(i).getServiceGroupName());
+				assertEquals(expected.get(i).getIncidents().size(), actual.get(i).getIncidents().size());
+				for (int j = 0; j < expected.get(i).getIncidents().size(); j++) {
+					Incident incident = actual.get(i).getIncidents().get(j);
+					assertFalse(incident.isIncidentLogLoaded());
+					assertEquals(expected.get(i).getIncidents().get(j).toString(), incident.toString());
+					assertEquals(expected.get(i).getIncidents().get(j).getIncidentLogMessages(), incident.getIncidentLogMessages());
+					assertFalse(incident.isIncidentLogLoaded());
+				}
+			}
+		}
+		assertEquals(0, ServiceGroupsReader.readServiceGroupsFileWithLazyLogs("test-files/invalid_incidents.txt").size());
+		
+		Incident incident = ServiceGroupsReader.readServiceGroupsFileWithLazyLogs("test-files/incidents1.txt").get(0).getIncidents().get(1);
+		assertFalse(incident.isIncidentLogLoaded());
+		incident.update(new Command(CommandValue.ASSIGN, "sesmith5", "Assigned to S. Smith"));
+		assertTrue(incident.isIncidentLogLoaded());
+		assertEquals("- When I go to wolfware.ncsu.edu, I get a 500 error\n- Assigned to S. Smith\n", incident.getIncidentLogMessages());
+		
+		try {
+			ServiceGroupsReader.readServiceGroupsFileWithLazyLogs("test-files/does_not_exist.txt");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Cannot load file test-files/does_not_exist.txt", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testReadIndexedServiceGroupFiles() throws IOException {
+		File file = File.createTempFile("indexed", ".txt");
+		File index = new File(ServiceGroupIndex.getIndexFile(file.getPath()));
+		try {
+			String[] files = {"test-files/incidents1.txt", "test-files/incidents2.txt", "test-files/incidents3.txt"};
+			for (int f = 0; f < files.length; f++) {
+				ArrayList<ServiceGroup> expected = ServiceGroupsReader.readServiceGroupsFile(files[f]);
+				ServiceGroupWriter.writeServiceGroupsToFileWithIndex(file.getPath(), expected);
+				assertTrue(index.exists());
+				ArrayList<ServiceGroup> actual = ServiceGroupsReader.readIndexedServiceGroupsFile(file.getPath());
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.get(i).getServiceGroupName(), actual.get(i).getServiceGroupName());
+					assertFalse(actual.get(i).isLoaded());
+					assertFalse(actual.get(i).isDirty());
+					ArrayList<Incident> expectedIncidents = expected.get(i).getIncidents();
+					for (int j = 0; j < expectedIncidents.size(); j++) {
+						Incident incident = ServiceGroupsReader.readIncident(file.getPath(), expected.get(i).getServiceGroupName(), expectedIncidents.get(j).getId());
+						assertEquals(expectedIncidents.get(j).toString(), incident.toString());
+					}
+					assertFalse(actual.get(i).isLoaded());
+					assertEquals(expectedIncidents.size(), actual.get(i).getIncidents().size());
+					assertTrue(actual.get(i).isLoaded());
+					assertFalse(actual.get(i).isDirty());
+					for (int j = 0; j < expectedIncidents.size(); j++) {
+						assertEquals(expectedIncidents.get(j).toString(), actual.get(i).getIncidents().get(j).toString());
+					}
+				}
+			}
+			assertNull(ServiceGroupsReader.readIncident(file.getPath(), "missing", 1));
+			assertNull(ServiceGroupsReader.readIncident(file.getPath(), ServiceGroupsReader.readServiceGroupsFile(files[2]).get(0).getServiceGroupName(), -1));
+			
+			ArrayList<ServiceGroup> unloaded = ServiceGroupsReader.readIndexedServiceGroupsFile(file.getPath());
+			ArrayList<ServiceGroup> expected = ServiceGroupsReader.readServiceGroupsFile(files[0]);
+			ServiceGroupWriter.writeServiceGroupsToFile(file.getPath(), expected);
+			assertThrows(IllegalArgumentException.class, () -> unloaded.get(0).getIncidents());
+			ArrayList<ServiceGroup> actual = ServiceGroupsReader.readIndexedServiceGroupsFile(file.getPath());
+			assertEquals(expected.size(), actual.size());
+			assertTrue(actual.get(0).isLoaded());
+			assertEquals(expected.get(0).getIncidents().get(0).toString(), 
+					ServiceGroupsReader.readIncident(file.getPath(), expected.get(0).getServiceGroupName(), expected.get(0).getIncidents().get(0).getId()).toString());
+		} finally {
+			file.delete();
+			index.delete();
+		}
+	}
+	
+	@Test
+	public void testReadServiceGroupFilesInParallel() {
+		String[] files = {"test-files/incidents1.txt", "test-files/incidents2.txt", "test-files/incidents3.txt"};
+		for (int f = 0; f < files.length; f++) {
+			ArrayList<ServiceGroup> expected = ServiceGroupsReader.readServiceGroupsFile(files[f]);
+			ArrayList<ServiceGroup> actual = ServiceGroupsReader.readServiceGroupsFileInParallel(files[f]);
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getServiceGroupName(), actual.get(i).getServiceGroupName());
+				assertEquals(expected.get(i).getIncidents().size(), actual.get(i).getIncidents().size());
+				for (int j = 0; j < expected.get(i).getIncidents().size(); j++) {
+					assertEquals(expected.get(i).getIncidents().get(j).toString(), actual.get(i).getIncidents().get(j).toString());
+				}
+			}
+		}
+		
+		assertEquals(0, ServiceGroupsReader.readServiceGroupsFileInParallel("test-files/incidents4.txt").size());
+		assertEquals(0, ServiceGroupsReader.readServiceGroupsFileInParallel("test-files/invalid_incidents.txt").size());
+	}
+	
+	/**
+	 * Tests that ServiceGroups written as a binary snapshot are read back the same, including values the text format cannot hold
+	 * @throws IOException if the temporary file cannot be created
+	 */
+	@Test
+	public void testReadServiceGroupsSnapshot() throws IOException {
+		File snapshot = File.createTempFile("snapshot", ".bin");
+		try {
+			String[] files = {"test-files/incidents1.txt", "test-files/incidents2.txt", "test-files/incidents3.txt"};
+			for (int f = 0; f < files.length; f++) {
+				ArrayList<ServiceGroup> expected = ServiceGroupsReader.readServiceGroupsFile(files[f]);
+				ServiceGroupWriter.writeServiceGroupsSnapshot(snapshot.getPath(), expected);
+				ArrayList<ServiceGroup> actual = ServiceGroupsReader.readServiceGroupsSnapshot(snapshot.getPath());
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.get(i).getServiceGroupName(), actual.get(i).getServiceGroupName());
+					assertEquals(expected.get(i).getIncidents().size(), actual.get(i).getIncidents().size());
+					for (int j = 0; j < expected.get(i).getIncidents().size(); j++) {
+						assertEquals(expected.get(i).getIncidents().get(j).toString(), actual.get(i).getIncidents().get(j).toString());
+					}
+				}
+			}
+			
+			ArrayList<ServiceGroup> serviceGroups = new ArrayList<ServiceGroup>();
+			ServiceGroup s = new ServiceGroup("CSC IT");
+			ArrayList<String> log = new ArrayList<String>();
+			log.add("- starts with a dash\n* and has a second line");
+			log.add("# not a service group");
+			s.addIncident(new Incident(300, Incident.NEW_NAME, "Title, with a comma", "caller", 0, Incident.UNOWNED, Incident.NO_STATUS, log));
+			s.addIncident(new Incident(7, Incident.NEW_NAME, "Title", "caller", 0, Incident.UNOWNED, Incident.NO_STATUS, log));
+			serviceGroups.add(s);
+			ServiceGroupWriter.writeServiceGroupsSnapshot(snapshot.getPath(), serviceGroups);
+			ArrayList<ServiceGroup> actual = ServiceGroupsReader.readServiceGroupsSnapshot(snapshot.getPath());
+			assertEquals(1, actual.size());
+			Incident incident = actual.get(0).getIncidentById(300);
+			assertEquals("Title, with a comma", incident.getTitle());
+			assertEquals(2, incident.getIncidentLogSize());
+			assertEquals("- starts with a dash\n* and has a second line", incident.getIncidentLogMessage(0));
+			assertEquals("# not a service group", incident.getIncidentLogMessage(1));
+			assertEquals(7, actual.get(0).getIncidents().get(0).getId());
+		} finally {
+			snapshot.delete();
+		}
+		
+		assertThrows(IllegalArgumentException.class, () -> ServiceGroupsReader.readServiceGroupsSnapshot("test-files/incidents1.txt"));
+		assertThrows(IllegalArgumentException.class, () -> ServiceGroupsReader.readServiceGroupsSnapshot("test-files/missing.bin"));
+	}
+	
+	/**
+	 * Tests that block compressed files are read the same as the files they were written from, in order and in parallel
+	 * @throws IOException if the temporary file cannot be created
+	 */
+	@Test
+	public void testReadCompressedServiceGroupFiles() throws IOException {
+		File compressed = File.createTempFile("compressed", ".txt");
+		try {
+			String[] files = {"test-files/incidents1.txt", "test-files/incidents2.txt", "test-files/incidents3.txt"};
+			for (int f = 0; f < files.length; f++) {
+				ArrayList<ServiceGroup> expected = ServiceGroupsReader.readServiceGroupsFile(files[f]);
+				ServiceGroupWriter.writeServiceGroupsToFile(compressed.getPath(), expected, true);
+				assertCompressedFileMatches(expected, ServiceGroupsReader.readServiceGroupsFile(compressed.getPath()));
+				assertCompressedFileMatches(expected, ServiceGroupsReader.readMappedServiceGroupsFile(compressed.getPath()));
+				assertCompressedFileMatches(expected, ServiceGroupsReader.readServiceGroupsFileInParallel(compressed.getPath()));
+				
+				ServiceGroupWriter.writeServiceGroupsSnapshot(compressed.getPath(), expected, true);
+				assertCompressedFileMatches(expected, ServiceGroupsReader.readServiceGroupsSnapshot(compressed.getPath()));
+			}
+			
+			ServiceGroupWriter.writeServiceGroupsToFile(compressed.getPath(), new ArrayList<ServiceGroup>(), true);
+			assertEquals(0, ServiceGroupsReader.readServiceGroupsFile(compressed.getPath()).size());
+			assertEquals(0, ServiceGroupsReader.readServiceGroupsFileInParallel(compressed.getPath()).size());
+			
+			ArrayList<ServiceGroup> large = new ArrayList<ServiceGroup>();
+			for (int g = 0; g < 40; g++) {
+				ServiceGroup serviceGroup = new ServiceGroup("Group " + g);
+				for (int i = 0; i < 2000; i++) {
+					serviceGroup.addNewIncident("Title " + i, "caller" + (i % 7), "Message " + i + " of group " + g);
+				}
+				large.add(serviceGroup);
+			}
+			ServiceGroupWriter.writeServiceGroupsToFile(compressed.getPath(), large, true);
+			assertCompressedFileMatches(large, ServiceGroupsReader.readServiceGroupsFile(compressed.getPath()));
+			assertCompressedFileMatches(large, ServiceGroupsReader.readServiceGroupsFileInParallel(compressed.getPath()));
+		} finally {
+			compressed.delete();
+		}
+	}
+	
+	/**
+	 * Checks that ServiceGroups read from a compressed file match the ServiceGroups that were written to it
+	 * @param expected ServiceGroups that were written
+	 * @param actual ServiceGroups that were read
+	 */
+	private void assertCompressedFileMatches(ArrayList<ServiceGroup> expected, ArrayList<ServiceGroup> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getServiceGroupName(), actual.get(i).getServiceGroupName());
+			assertEquals(expected.get(i).getIncidents().size(), actual.get(i).getIncidents().size());
+			for (int j = 0; j < expected.get(i).getIncidents().size(); j++) {
+				assertEquals(expected.get(i).getIncidents().get(j).toString(), actual.get(i).getIncidents().get(j).toString());
+			}
+		}
+	}
 }
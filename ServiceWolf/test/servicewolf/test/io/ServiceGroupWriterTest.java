@@ -3,11 +3,19 @@ package servicewolf.test.io;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.Set;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import servicewolf.src.incident.Incident;
@@ -68,6 +76,39 @@ public class ServiceGroupWriterTest {
 	
 	}
 	
+	/**
+	 * Tests that a file that cannot be written is reported and leaves no partly written file behind
+	 */
+	@Test
+	public void testWriteServiceGroupsToInvalidFile() {
+		ArrayList<ServiceGroup> serviceGroups = new ArrayList<ServiceGroup>();
+		serviceGroups.add(new ServiceGroup("CSC IT"));
+		
+		Exception e = assertThrows(IllegalArgumentException.class, () -> ServiceGroupWriter.writeServiceGroupsToFile("test-files/missing/actual.txt", serviceGroups));
+		assertEquals("Unable to write to file test-files/missing/actual.txt", e.getMessage());
+		assertFalse(new File("test-files/missing").exists());
+	}
+	
+	/**
+	 * Tests that writing over a file keeps the permissions the file had
+	 */
+	@Test
+	public void testWriteServiceGroupsKeepsPermissions() throws IOException {
+		Path file = Paths.get("test-files/actual_permissions.txt");
+		Assume.assumeTrue(file.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		ArrayList<ServiceGroup> serviceGroups = new ArrayList<ServiceGroup>();
+		serviceGroups.add(new ServiceGroup("CSC IT"));
+		try {
+			ServiceGroupWriter.writeServiceGroupsToFile(file.toString(), serviceGroups);
+			Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+			Files.setPosixFilePermissions(file, permissions);
+			ServiceGroupWriter.writeServiceGroupsToFile(file.toString(), serviceGroups);
+			assertEquals(permissions, Files.getPosixFilePermissions(file));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+	
 	/**
 	 * Helper method to compare two files for the same contents
 	 * @param expFile expected output
@@ -2,10 +2,18 @@ package servicewolf.test.manager;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -13,7 +21,10 @@ import org.junit.Test;
 import servicewolf.src.command.Command;
 import servicewolf.src.command.Command.CommandValue;
 import servicewolf.src.incident.Incident;
+import servicewolf.src.io.ServiceGroupIndex;
+import servicewolf.src.io.ServiceGroupSegments;
 import servicewolf.src.manager.ServiceWolfManager;
+import servicewolf.src.manager.ServiceWolfSession;
 import servicewolf.src.service_group.ServiceGroup;
 
 
@@ -94,6 +105,31 @@ public class ServiceWolfManagerTest {
 		assertEquals(3, manager.getServiceGroupList().length);
 	}
 	
+	/**
+	 * Test loading ServiceGroups and their Incidents from a file in parallel
+	 */
+	@Test
+	public void testLoadFromFileInParallel() {
+		manager.addServiceGroup("Pack IT");
+		manager.loadFromFileInParallel(testFile);
+		String[] serviceGroupList = manager.getServiceGroupList();
+		assertEquals(4, serviceGroupList.length);
+		assertEquals("CSC IT", serviceGroupList[0]);
+		assertEquals("ITECS", serviceGroupList[1]);
+		assertEquals("OIT", serviceGroupList[2]);
+		assertEquals("Pack IT", serviceGroupList[3]);
+		assertEquals("CSC IT", manager.getServiceGroupName());
+		assertEquals(4, manager.getIncidentsAsArray().length);
+		
+		try {
+			manager.loadFromFileInParallel(testFile);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Unable to read file " + testFile, e.getMessage());
+			assertEquals(4, manager.getServiceGroupList().length);
+		}
+	}
+	
 	/**
 	 * Tests loading a ServiceGroup and making it the currentServiceGroup
 	 */
@@ -328,6 +364,34 @@ public class ServiceWolfManagerTest {
 		}
 	}
 
+	/**
+	 * Tests that editing the name of the current ServiceGroup keeps its Incidents and its place in alphabetical order
+	 */
+	@Test
+	public void testEditServiceGroupKeepsIncidents() {
+		manager.loadFromFile(testFile);
+		manager.loadServiceGroup("csc it");
+		assertEquals("CSC IT", manager.getServiceGroupName());
+		
+		manager.editServiceGroup("Wolf IT");
+		assertEquals("Wolf IT", manager.getServiceGroupName());
+		assertEquals(4, manager.getIncidentsAsArray().length);
+		
+		String[] serviceGroupList = manager.getServiceGroupList();
+		assertEquals(3, serviceGroupList.length);
+		assertEquals("ITECS", serviceGroupList[0]);
+		assertEquals("OIT", serviceGroupList[1]);
+		assertEquals("Wolf IT", serviceGroupList[2]);
+		
+		try {
+			manager.editServiceGroup("itecs");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid service group name.", e.getMessage());
+			assertEquals("Wolf IT", manager.getServiceGroupName());
+		}
+	}
+	
 	/**
 	 * Tests adding a new ServiceGroup to the list of ServiceGroups
 	 */
@@ -400,6 +464,407 @@ public class ServiceWolfManagerTest {
 		
 	}
 	
+	/**
+	 * Tests that sessions keep their own current ServiceGroup
+	 */
+	@Test
+	public void testSessions() {
+		ServiceWolfSession first = manager.createSession();
+		ServiceWolfSession second = manager.createSession();
+		assertNull(manager.getServiceGroupName(first));
+		assertNull(manager.getIncidentsAsArray(first));
+		assertEquals(0, manager.getIncidentsVersion(first));
+		
+		manager.addServiceGroup(first, "CSC IT");
+		manager.addServiceGroup(second, "OIT");
+		assertEquals("CSC IT", manager.getServiceGroupName(first));
+		assertEquals("OIT", manager.getServiceGroupName(second));
+		assertNull(manager.getServiceGroupName());
+		
+		manager.addIncidentToServiceGroup(first, "Title", "Caller", "Message");
+		manager.addIncidentToServiceGroup(second, "Other Title", "Other Caller", "Other Message");
+		manager.addIncidentToServiceGroup(second, "Third Title", "Third Caller", "Third Message");
+		assertEquals(1, manager.getIncidentsAsArray(first).length);
+		assertEquals(2, manager.getIncidentsAsArray(second).length);
+		
+		int id = manager.getIncidentById(first, 1).getId();
+		manager.executeCommand(first, id, new Command(CommandValue.ASSIGN, "ownerId", "Message"));
+		assertEquals(Incident.IN_PROGRESS_NAME, manager.getIncidentById(first, id).getState());
+		assertEquals(Incident.NEW_NAME, manager.getIncidentById(second, 1).getState());
+		
+		long version = manager.getIncidentsVersion(second);
+		manager.loadServiceGroup(second, "CSC IT");
+		assertEquals("CSC IT", manager.getServiceGroupName(second));
+		assertNotEquals(version, manager.getIncidentsVersion(second));
+		assertEquals(manager.getIncidentsVersion(first), manager.getIncidentsVersion(second));
+		manager.deleteIncidentById(second, id);
+		assertEquals(0, manager.getIncidentsAsArray(first).length);
+		
+		manager.loadServiceGroup("OIT");
+		manager.deleteServiceGroup();
+		assertEquals("CSC IT", manager.getServiceGroupName());
+		assertEquals("CSC IT", manager.getServiceGroupName(first));
+		assertThrows(IllegalArgumentException.class, () -> manager.loadServiceGroup(first, "OIT"));
+	}
+	
+	/**
+	 * Tests that changes appended to a journal are recovered when the journal is opened again
+	 * @throws IOException if the temporary files cannot be created
+	 */
+	@Test
+	public void testJournal() throws IOException {
+		File checkpoint = File.createTempFile("checkpoint", ".txt");
+		File journal = File.createTempFile("journal", ".bin");
+		checkpoint.delete();
+		journal.delete();
+		try {
+			manager.openJournal(checkpoint.getPath(), journal.getPath(), 100);
+			assertThrows(IllegalArgumentException.class, () -> manager.openJournal(checkpoint.getPath(), journal.getPath(), 100));
+			manager.addServiceGroup("CSC IT");
+			manager.addIncidentToServiceGroup("Title", "Caller", "Message");
+			manager.addIncidentToServiceGroup("Other Title", "Other Caller", "Other Message");
+			manager.executeCommand(1, new Command(CommandValue.ASSIGN, "ownerId", "Assigned"));
+			manager.executeCommand(1, new Command(CommandValue.HOLD, Incident.HOLD_AWAITING_CALLER, "Waiting"));
+			manager.addServiceGroup("OIT");
+			manager.addIncidentToServiceGroup("Third Title", "Third Caller", "Third Message");
+			manager.deleteIncidentById(1);
+			manager.addServiceGroup("Pack IT");
+			manager.deleteServiceGroup();
+			manager.loadServiceGroup("CSC IT");
+			manager.editServiceGroup("ITECS");
+			manager.closeJournal();
+			assertTrue(journal.length() > 0);
+			
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.openJournal(checkpoint.getPath(), journal.getPath(), 100);
+			assertEquals(0, journal.length());
+			String[] list = manager.getServiceGroupList();
+			assertEquals(2, list.length);
+			assertEquals("ITECS", list[0]);
+			assertEquals("OIT", list[1]);
+			manager.loadServiceGroup("ITECS");
+			assertEquals(2, manager.getIncidentsAsArray().length);
+			Incident incident = manager.getIncidentById(1);
+			assertEquals(Incident.ON_HOLD_NAME, incident.getState());
+			assertEquals("ownerId", incident.getOwner());
+			assertEquals(Incident.HOLD_AWAITING_CALLER, incident.getStatusDetails());
+			assertEquals("- Message\n- Assigned\n- Waiting\n", incident.getIncidentLogMessages());
+			manager.loadServiceGroup("OIT");
+			assertEquals(0, manager.getIncidentsAsArray().length);
+			
+			manager.addIncidentToServiceGroup("Fourth Title", "Fourth Caller", "Fourth Message");
+			manager.checkpoint();
+			assertEquals(0, journal.length());
+			manager.closeJournal();
+			
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.loadFromSnapshot(checkpoint.getPath());
+			manager.loadServiceGroup("OIT");
+			assertEquals(1, manager.getIncidentsAsArray().length);
+		} finally {
+			manager.closeJournal();
+			manager.resetManager();
+			checkpoint.delete();
+			journal.delete();
+		}
+	}
+	
+	/**
+	 * Tests that a checkpoint holds any title, and that a checkpoint that cannot be read makes opening the journal fail without changing either file
+	 * @throws IOException if the temporary files cannot be created
+	 */
+	@Test
+	public void testJournalCheckpointRecovery() throws IOException {
+		File checkpoint = File.createTempFile("checkpoint", ".bin");
+		File journal = File.createTempFile("journal", ".bin");
+		checkpoint.delete();
+		journal.delete();
+		try {
+			manager.openJournal(checkpoint.getPath(), journal.getPath(), 100);
+			manager.addServiceGroup("CSC IT");
+			manager.addIncidentToServiceGroup("Printer, 3rd floor", "Caller", "Out of toner, again");
+			manager.checkpoint();
+			manager.addIncidentToServiceGroup("Second", "Caller", "Message");
+			manager.closeJournal();
+			
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.openJournal(checkpoint.getPath(), journal.getPath(), 100);
+			manager.closeJournal();
+			assertEquals(2, manager.getIncidentsAsArray().length);
+			assertEquals("Printer, 3rd floor", manager.getIncidentById(1).getTitle());
+			assertEquals("- Out of toner, again\n", manager.getIncidentById(1).getIncidentLogMessages());
+			
+			Files.write(checkpoint.toPath(), Arrays.copyOf(Files.readAllBytes(checkpoint.toPath()), 10));
+			try (FileOutputStream out = new FileOutputStream(journal, true)) {
+				out.write(new byte[] {0, 0, 0, 40, 1, 0});
+			}
+			long checkpointLength = checkpoint.length();
+			long journalLength = journal.length();
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			final ServiceWolfManager reopened = manager;
+			assertThrows(IllegalArgumentException.class, () -> reopened.openJournal(checkpoint.getPath(), journal.getPath(), 100));
+			assertEquals(0, manager.getServiceGroupList().length);
+			assertEquals(checkpointLength, checkpoint.length());
+			assertEquals(journalLength, journal.length());
+		} finally {
+			manager.closeJournal();
+			manager.resetManager();
+			checkpoint.delete();
+			journal.delete();
+		}
+	}
+	
+	/**
+	 * Tests that once a change cannot be journaled, every later change is refused until the journal is closed
+	 * @throws IOException if the temporary files cannot be created
+	 */
+	@Test
+	public void testJournalFailsClosed() throws IOException {
+		File checkpoint = File.createTempFile("checkpoint", ".bin");
+		File journal = File.createTempFile("journal", ".bin");
+		checkpoint.delete();
+		journal.delete();
+		File blocker = new File(checkpoint, "file");
+		try {
+			manager.openJournal(checkpoint.getPath(), journal.getPath(), 100);
+			manager.addServiceGroup("Pack IT");
+			checkpoint.delete();
+			checkpoint.mkdir();
+			blocker.createNewFile();
+			assertThrows(IllegalArgumentException.class, () -> manager.loadFromFile("test-files/incidents1.txt"));
+			Exception e = assertThrows(IllegalArgumentException.class, () -> manager.addServiceGroup("Other"));
+			assertEquals("Journal failed", e.getMessage());
+			assertThrows(IllegalArgumentException.class, () -> manager.addIncidentToServiceGroup("Title", "Caller", "Message"));
+			assertFalse(Arrays.asList(manager.getServiceGroupList()).contains("Other"));
+			
+			manager.closeJournal();
+			manager.addServiceGroup("Other");
+			assertTrue(Arrays.asList(manager.getServiceGroupList()).contains("Other"));
+		} finally {
+			manager.closeJournal();
+			manager.resetManager();
+			blocker.delete();
+			checkpoint.delete();
+			journal.delete();
+		}
+	}
+	
+	/**
+	 * Tests that the ServiceGroups are checkpointed once enough changes have been journaled, and that a partly written change is dropped
+	 * @throws IOException if the temporary files cannot be created
+	 */
+	@Test
+	public void testJournalCheckpointInterval() throws IOException {
+		File checkpoint = File.createTempFile("checkpoint", ".txt");
+		File journal = File.createTempFile("journal", ".bin");
+		checkpoint.delete();
+		journal.delete();
+		try {
+			assertThrows(IllegalArgumentException.class, () -> manager.openJournal(checkpoint.getPath(), journal.getPath(), 0));
+			manager.openJournal(checkpoint.getPath(), journal.getPath(), 3);
+			manager.addServiceGroup("CSC IT");
+			manager.addIncidentToServiceGroup("Title", "Caller", "Message");
+			assertTrue(journal.length() > 0);
+			manager.addIncidentToServiceGroup("Other Title", "Other Caller", "Other Message");
+			// The checkpoint runs in the background, and closing the journal waits for it
+			manager.closeJournal();
+			assertEquals(0, journal.length());
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.openJournal(checkpoint.getPath(), journal.getPath(), 3);
+			manager.addIncidentToServiceGroup("Third Title", "Third Caller", "Third Message");
+			manager.closeJournal();
+			
+			try (FileOutputStream out = new FileOutputStream(journal, true)) {
+				out.write(new byte[] {0, 0, 0, 40, 1, 0});
+			}
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.openJournal(checkpoint.getPath(), journal.getPath(), 3);
+			assertEquals("CSC IT", manager.getServiceGroupName());
+			assertEquals(3, manager.getIncidentsAsArray().length);
+		} finally {
+			manager.closeJournal();
+			manager.resetManager();
+			checkpoint.delete();
+			journal.delete();
+		}
+	}
+	
+	/**
+	 * Tests that a snapshot reads back an Incident resolved with free text status details, both from a snapshot file and from a directory of segments
+	 * @throws IOException if the temporary files cannot be created
+	 */
+	@Test
+	public void testSaveToSnapshotWithFreeTextDetails() throws IOException {
+		File snapshot = File.createTempFile("snapshot", ".bin");
+		Path directory = Files.createTempDirectory("segments");
+		try {
+			manager.addServiceGroup("CSC IT");
+			manager.addIncidentToServiceGroup("Server down", "Caller", "Message");
+			manager.executeCommand(1, new Command(CommandValue.ASSIGN, "ownerId", "Assigned"));
+			manager.executeCommand(1, new Command(CommandValue.RESOLVE, "Rebooted the server", "Resolved"));
+			manager.saveToSnapshot(snapshot.getPath());
+			manager.saveToDirectory(directory.toString());
+			
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.loadFromSnapshot(snapshot.getPath());
+			Incident incident = manager.getIncidentById(1);
+			assertEquals(Incident.RESOLVED_NAME, incident.getState());
+			assertEquals("Rebooted the server", incident.getStatusDetails());
+			assertEquals("- Message\n- Assigned\n- Resolved\n", incident.getIncidentLogMessages());
+			
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.loadFromDirectory(directory.toString());
+			assertEquals("Rebooted the server", manager.getIncidentById(1).getStatusDetails());
+		} finally {
+			manager.resetManager();
+			snapshot.delete();
+			try (Stream<Path> files = Files.list(directory)) {
+				files.forEach(file -> file.toFile().delete());
+			}
+			Files.delete(directory);
+		}
+	}
+	
+	/**
+	 * Tests saving only the changed ServiceGroups to a directory of segments and loading them back
+	 * @throws IOException if the temporary directory cannot be used
+	 */
+	@Test
+	public void testSaveToDirectory() throws IOException {
+		Path directory = Files.createTempDirectory("segments");
+		try {
+			manager.addServiceGroup("OIT");
+			manager.addIncidentToServiceGroup("Title", "Caller", "Message");
+			manager.addServiceGroup("CSC IT");
+			manager.addIncidentToServiceGroup("Printer, 3rd floor", "Other Caller", "Other Message");
+			manager.saveToDirectory(directory.toString());
+			List<String> first = Files.readAllLines(directory.resolve(ServiceGroupSegments.MANIFEST));
+			assertEquals(2, first.size());
+			
+			manager.saveToDirectory(directory.toString());
+			assertEquals(first, Files.readAllLines(directory.resolve(ServiceGroupSegments.MANIFEST)));
+			
+			manager.executeCommand(1, new Command(CommandValue.ASSIGN, "ownerId", "Assigned"));
+			manager.saveToDirectory(directory.toString());
+			List<String> second = Files.readAllLines(directory.resolve(ServiceGroupSegments.MANIFEST));
+			assertNotEquals(first.get(0), second.get(0));
+			assertEquals(first.get(1), second.get(1));
+			assertFalse(Files.exists(directory.resolve(first.get(0))));
+			
+			manager.loadServiceGroup("OIT");
+			manager.deleteServiceGroup();
+			manager.saveToDirectory(directory.toString());
+			List<String> third = Files.readAllLines(directory.resolve(ServiceGroupSegments.MANIFEST));
+			assertEquals(1, third.size());
+			assertEquals(second.get(0), third.get(0));
+			try (Stream<Path> files = Files.list(directory)) {
+				assertEquals(2, files.count());
+			}
+			
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.loadFromDirectory(directory.toString());
+			assertEquals("CSC IT", manager.getServiceGroupName());
+			assertEquals("ownerId", manager.getIncidentById(1).getOwner());
+			assertEquals("Printer, 3rd floor", manager.getIncidentById(1).getTitle());
+			manager.saveToDirectory(directory.toString());
+			assertEquals(third, Files.readAllLines(directory.resolve(ServiceGroupSegments.MANIFEST)));
+			
+			assertThrows(IllegalArgumentException.class, () -> manager.loadFromDirectory(directory.resolve("missing").toString()));
+		} finally {
+			manager.resetManager();
+			try (Stream<Path> files = Files.list(directory)) {
+				files.forEach(file -> file.toFile().delete());
+			}
+			Files.delete(directory);
+		}
+	}
+	
+	/**
+	 * Tests that a save to a directory that fails part way through writes every changed ServiceGroup again on the next save
+	 * @throws IOException if the temporary directory cannot be used
+	 */
+	@Test
+	public void testSaveToDirectoryAfterFailure() throws IOException {
+		Path directory = Files.createTempDirectory("segments");
+		Path blocker = directory.resolve(ServiceGroupSegments.getSegmentName(3));
+		try {
+			manager.addServiceGroup("CSC IT");
+			manager.addIncidentToServiceGroup("Title", "Caller", "Message");
+			manager.addServiceGroup("OIT");
+			manager.addIncidentToServiceGroup("Other Title", "Other Caller", "Other Message");
+			manager.saveToDirectory(directory.toString());
+			
+			manager.loadServiceGroup("CSC IT");
+			manager.addIncidentToServiceGroup("Second Title", "Caller", "Message");
+			manager.loadServiceGroup("OIT");
+			manager.addIncidentToServiceGroup("Second Title", "Caller", "Message");
+			Files.createDirectory(blocker);
+			Files.createFile(blocker.resolve("file"));
+			assertThrows(IllegalArgumentException.class, () -> manager.saveToDirectory(directory.toString()));
+			Files.delete(blocker.resolve("file"));
+			Files.delete(blocker);
+			manager.saveToDirectory(directory.toString());
+			
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.loadFromDirectory(directory.toString());
+			manager.loadServiceGroup("CSC IT");
+			assertEquals(2, manager.getIncidentsAsArray().length);
+			manager.loadServiceGroup("OIT");
+			assertEquals(2, manager.getIncidentsAsArray().length);
+		} finally {
+			manager.resetManager();
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+			}
+		}
+	}
+	
+	/**
+	 * Tests saving ServiceGroups with an index and loading them one ServiceGroup at a time
+	 * @throws IOException if the temporary file cannot be created
+	 */
+	@Test
+	public void testSaveToFileWithIndex() throws IOException {
+		File file = File.createTempFile("indexed", ".txt");
+		File index = new File(ServiceGroupIndex.getIndexFile(file.getPath()));
+		try {
+			manager.loadFromFile("test-files/incidents1.txt");
+			String[] names = manager.getServiceGroupList();
+			String[][][] expected = new String[names.length][][];
+			for (int i = 0; i < names.length; i++) {
+				manager.loadServiceGroup(names[i]);
+				expected[i] = manager.getIncidentsAsArray();
+			}
+			manager.saveToFileWithIndex(file.getPath());
+			assertTrue(index.exists());
+			
+			manager.resetManager();
+			manager = ServiceWolfManager.getInstance();
+			manager.loadFromIndexedFile(file.getPath());
+			assertArrayEquals(names, manager.getServiceGroupList());
+			for (int i = names.length - 1; i >= 0; i--) {
+				manager.loadServiceGroup(names[i]);
+				assertArrayEquals(expected[i], manager.getIncidentsAsArray());
+			}
+			
+			assertThrows(IllegalArgumentException.class, () -> manager.saveToFileWithIndex(new File(file, "missing.txt").getPath()));
+		} finally {
+			manager.resetManager();
+			file.delete();
+			index.delete();
+		}
+	}
+	
 	/**
 	 * Helper method to compare two files for the same contents
 	 * @param expFile expected output
@@ -4,6 +4,8 @@ package servicewolf.test.service_group;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -52,6 +54,24 @@ public class ServiceGroupTest {
 		assertEquals(2, i2.getId());
 	}
 
+	/**
+	 * Tests that adding Incidents raises the incident counter past their ids, so an Incident created without an id does not reuse one
+	 */
+	@Test
+	public void testAddIncidentRaisesCounter() {
+		Incident.setCounter(1);
+		ArrayList<String> incidentLog = new ArrayList<String>();
+		incidentLog.add("message");
+		ServiceGroup s = new ServiceGroup("Pack IT");
+		s.addIncident(new Incident(1, Incident.NEW_NAME, "Forgot password", "jctetter", 0, "Unowned", "No Status", incidentLog));
+		assertEquals(2, new Incident("title", "caller", "message").getId());
+
+		ArrayList<Incident> added = new ArrayList<Incident>();
+		added.add(new Incident(2, Incident.NEW_NAME, "Printer jam", "cgurley", 0, "Unowned", "No Status", incidentLog));
+		s.addIncidents(added);
+		assertEquals(3, new Incident("title", "caller", "message").getId());
+	}
+
 	/**
 	 * Tests setting the ServiceGroup name
 	 */
@@ -241,5 +261,439 @@ public class ServiceGroupTest {
 		s.deleteIncidentById(3);
 		assertEquals(0, s.getIncidents().size());
 	}
+	
+	/**
+	 * Tests getting, updating and deleting Incidents by id in a ServiceGroup with many Incidents
+	 */
+	@Test
+	public void testIncidentsByIdManyIncidents() {
+		ArrayList<String> incidentLog = new ArrayList<String>();
+		incidentLog.add("message");
+		ServiceGroup s = new ServiceGroup("Pack IT");
+		for (int id = 1; id <= 1000; id++) {
+			s.addIncident(new Incident(id * 7, "New", "title" + id, "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		}
+		assertEquals(1000, s.getIncidents().size());
+		assertNull(s.getIncidentById(8));
+		
+		for (int id = 2; id <= 1000; id += 2) {
+			s.deleteIncidentById(id * 7);
+		}
+		s.deleteIncidentById(8);
+		assertEquals(500, s.getIncidents().size());
+		
+		for (int id = 1; id <= 1000; id++) {
+			if (id % 2 == 0) {
+				assertNull(s.getIncidentById(id * 7));
+			}
+			else {
+				assertEquals("title" + id, s.getIncidentById(id * 7).getTitle());
+			}
+		}
+		for (int i = 0; i < s.getIncidents().size(); i++) {
+			assertEquals((2 * i + 1) * 7, s.getIncidents().get(i).getId());
+		}
+		
+		s.executeCommand(7 * 999, new Command(CommandValue.ASSIGN, "cgurley", "message"));
+		assertEquals(Incident.IN_PROGRESS_NAME, s.getIncidentById(7 * 999).getState());
+	}
+	
+	/**
+	 * Tests that Incidents added out of order are kept sorted by id and that the incident counter follows the largest id
+	 */
+	@Test
+	public void testAddIncidentOutOfOrder() {
+		ArrayList<String> incidentLog = new ArrayList<String>();
+		incidentLog.add("message");
+		ServiceGroup s = new ServiceGroup("Pack IT");
+		int[] ids = {50, 3, 99, 1, 42, 77, 12, 100, 2, 64};
+		for (int i = 0; i < ids.length; i++) {
+			s.addIncident(new Incident(ids[i], "New", "title", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		}
+		int[] sorted = {1, 2, 3, 12, 42, 50, 64, 77, 99, 100};
+		for (int i = 0; i < sorted.length; i++) {
+			assertEquals(sorted[i], s.getIncidents().get(i).getId());
+		}
+		
+		s.deleteIncidentById(100);
+		s.setIncidentCounter();
+		assertEquals(100, new Incident("title", "caller", "message").getId());
+	}
+	
+	/**
+	 * Tests adding a batch of Incidents to a ServiceGroup
+	 */
+	@Test
+	public void testAddIncidents() {
+		ArrayList<String> incidentLog = new ArrayList<String>();
+		incidentLog.add("message");
+		ServiceGroup s = new ServiceGroup("Pack IT");
+		s.addIncident(new Incident(5, "New", "title5", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		
+		ArrayList<Incident> batch = new ArrayList<Incident>();
+		batch.add(new Incident(9, "New", "title9", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		batch.add(new Incident(2, "New", "title2", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		batch.add(new Incident(7, "New", "title7", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		s.addIncidents(batch);
+		assertEquals(4, s.getIncidents().size());
+		assertEquals(2, s.getIncidents().get(0).getId());
+		assertEquals(5, s.getIncidents().get(1).getId());
+		assertEquals(7, s.getIncidents().get(2).getId());
+		assertEquals(9, s.getIncidents().get(3).getId());
+		assertEquals("title7", s.getIncidentById(7).getTitle());
+		assertEquals(10, s.addNewIncident("title", "caller", "message").getId());
+		s.deleteIncidentById(10);
+		
+		//Test a batch with an id already in the ServiceGroup
+		ArrayList<Incident> duplicate = new ArrayList<Incident>();
+		duplicate.add(new Incident(11, "New", "title11", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		duplicate.add(new Incident(5, "New", "title5", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		try {
+			s.addIncidents(duplicate);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Incident cannot be created.", e.getMessage());
+			assertEquals(4, s.getIncidents().size());
+			assertNull(s.getIncidentById(11));
+		}
+		
+		//Test a batch with the same id twice
+		duplicate = new ArrayList<Incident>();
+		duplicate.add(new Incident(12, "New", "title12", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		duplicate.add(new Incident(12, "New", "title12", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		try {
+			s.addIncidents(duplicate);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(4, s.getIncidents().size());
+		}
+	}
+	
+	/**
+	 * Tests creating new Incidents with ids allocated by the ServiceGroup
+	 */
+	@Test
+	public void testAddNewIncident() {
+		ArrayList<String> incidentLog = new ArrayList<String>();
+		incidentLog.add("message");
+		ServiceGroup s1 = new ServiceGroup("Pack IT");
+		ServiceGroup s2 = new ServiceGroup("OIT");
+		
+		assertEquals(1, s1.addNewIncident("title1", "caller", "message").getId());
+		assertEquals(2, s1.addNewIncident("title2", "caller", "message").getId());
+		assertEquals(1, s2.addNewIncident("title1", "caller", "message").getId());
+		
+		s2.addIncident(new Incident(40, "New", "title40", "caller", 0, "Unowned", Incident.NO_STATUS, incidentLog));
+		assertEquals(41, s2.addNewIncident("title41", "caller", "message").getId());
+		assertEquals(3, s1.addNewIncident("title3", "caller", "message").getId());
+		
+		//Test that an invalid Incident does not use up an id
+		try {
+			s1.addNewIncident(null, "caller", "message");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(3, s1.getIncidents().size());
+		}
+		assertEquals(4, s1.addNewIncident("title4", "caller", "message").getId());
+		
+		//Test that the id of a deleted Incident is not reused
+		s1.deleteIncidentById(4);
+		assertEquals(5, s1.addNewIncident("title5", "caller", "message").getId());
+		assertEquals("title5", s1.getIncidentById(5).getTitle());
+	}
+	
+	/**
+	 * Tests adding Incidents and executing commands on them from several threads at once
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	@Test
+	public void testConcurrentIncidents() throws InterruptedException {
+		final ServiceGroup s = new ServiceGroup("Pack IT");
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 500; i++) {
+						Incident incident = s.addNewIncident("title", "caller", "message");
+						s.executeCommand(incident.getId(), new Command(CommandValue.ASSIGN, "owner", "assigned"));
+						s.getIncidentsAsArray();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+		}
+		
+		ArrayList<Incident> incidents = s.getIncidents();
+		assertEquals(2000, incidents.size());
+		for (int i = 0; i < incidents.size(); i++) {
+			assertEquals(i + 1, incidents.get(i).getId());
+			assertEquals(Incident.IN_PROGRESS_NAME, incidents.get(i).getState());
+		}
+	}
+
+	/**
+	 * Tests that a copy of a ServiceGroup keeps its Incidents as they were when it was copied
+	 */
+	@Test
+	public void testCopy() {
+		ServiceGroup s = new ServiceGroup("Pack IT");
+		s.addNewIncident("Forgot password", "jctetter", "message");
+		s.addNewIncident("Printer jam", "cgurley", "message");
+		ServiceGroup copy = s.copy();
+
+		s.executeCommand(1, new Command(CommandValue.ASSIGN, "cgurley", "Assigned"));
+		s.deleteIncidentById(2);
+		assertEquals("Pack IT", copy.getServiceGroupName());
+		assertEquals(2, copy.getIncidentCount());
+		assertEquals(Incident.NEW_NAME, copy.getIncidentById(1).getState());
+		assertEquals(1, copy.getIncidentById(1).getIncidentLogSize());
+		assertEquals(Incident.IN_PROGRESS_NAME, s.getIncidentById(1).getState());
+	}
+
+	/**
+	 * Tests tracking whether a ServiceGroup and its Incidents changed since they were saved
+	 */
+	@Test
+	public void testIsDirty() {
+		ServiceGroup s = new ServiceGroup("CSC IT");
+		assertTrue(s.isDirty());
+		s.markClean();
+		assertFalse(s.isDirty());
+		
+		Incident incident = s.addNewIncident("Title", "Caller", "Message");
+		assertTrue(s.isDirty());
+		assertTrue(incident.isDirty());
+		s.markClean();
+		assertFalse(s.isDirty());
+		assertFalse(incident.isDirty());
+		
+		s.executeCommand(incident.getId(), new Command(CommandValue.ASSIGN, "owner", "Assigned"));
+		assertTrue(incident.isDirty());
+		assertTrue(s.isDirty());
+		s.markClean();
+		
+		s.deleteIncidentById(incident.getId() + 1);
+		assertFalse(s.isDirty());
+		s.deleteIncidentById(incident.getId());
+		assertTrue(s.isDirty());
+		s.markClean();
+		
+		s.setServiceGroupName("OIT");
+		assertTrue(s.isDirty());
+		s.markClean();
+		s.markDirty();
+		assertTrue(s.isDirty());
+		
+		Incident other = s.addNewIncident("Title", "Caller", "Message");
+		s.markClean();
+		s.executeCommand(other.getId(), new Command(CommandValue.ASSIGN, "owner", "Assigned"));
+		s.storeIncidentsOffHeap();
+		assertTrue(s.isDirty());
+	}
+	
+	/**
+	 * Tests packing the logs of the Incidents into an arena
+	 */
+	@Test
+	public void testPackIncidentLogs() {
+		boolean[] direct = {false, true};
+		for (int d = 0; d < direct.length; d++) {
+			ServiceGroup s = new ServiceGroup("CSC IT");
+			ArrayList<String> log = new ArrayList<String>();
+			log.add("Line one\nLine two");
+			log.add("Caf\u00e9 \u2713");
+			s.addIncident(new Incident(1, Incident.NEW_NAME, "Title", "caller", 0, Incident.UNOWNED, Incident.NO_STATUS, log));
+			s.addIncident(new Incident(2, "Title 2", "caller", "Only message"));
+			String expected1 = s.getIncidentById(1).toString();
+			String expected2 = s.getIncidentById(2).toString();
+			
+			s.packIncidentLogs(direct[d]);
+			assertEquals(expected1, s.getIncidentById(1).toString());
+			assertEquals(expected2, s.getIncidentById(2).toString());
+			assertEquals(2, s.getIncidentById(1).getIncidentLogSize());
+			assertEquals("Caf\u00e9 \u2713", s.getIncidentById(1).getIncidentLogMessage(1));
+			
+			s.executeCommand(1, new Command(CommandValue.ASSIGN, "owner", "Assigned"));
+			assertEquals("- Line one\nLine two\n- Caf\u00e9 \u2713\n- Assigned\n", s.getIncidentById(1).getIncidentLogMessages());
+			s.addIncident(new Incident(3, "Title 3", "caller", "Added later"));
+			assertEquals("- Added later\n", s.getIncidentById(3).getIncidentLogMessages());
+			assertThrows(IndexOutOfBoundsException.class, () -> s.getIncidentById(3).getIncidentLogMessage(1));
+		}
+	}
+	
+	/**
+	 * Tests storing the incidents of a ServiceGroup in off-heap columns
+	 */
+	@Test
+	public void testStoreIncidentsOffHeap() {
+		ServiceGroup s = new ServiceGroup("CSC IT");
+		ArrayList<String> log = new ArrayList<String>();
+		log.add("Line one\nLine two");
+		log.add("Caf\u00e9 \u2713");
+		s.addIncident(new Incident(5, Incident.ON_HOLD_NAME, "Title", "caller", 1, "owner", Incident.HOLD_AWAITING_VENDOR, log));
+		s.addIncident(new Incident(2, "Title 2", "caller", "Only message"));
+		String expected5 = s.getIncidentById(5).toString();
+		String[][] expectedArray = s.getIncidentsAsArray();
+		s.markClean();
+		
+		s.storeIncidentsOffHeap();
+		assertTrue(s.isStoredOffHeap());
+		assertFalse(s.isDirty());
+		assertEquals(2, s.getIncidentCount());
+		assertEquals(expected5, s.getIncidentById(5).toString());
+		assertArrayEquals(expectedArray, s.getIncidentsAsArray());
+		assertNull(s.getIncidentById(3));
+		
+		s.addIncident(new Incident(3, "Title 3", "other caller", "Added later"));
+		s.addIncident(new Incident(1, "Title 1", "caller", "Added first"));
+		assertThrows(IllegalArgumentException.class, () -> s.addIncident(new Incident(3, "Title 3", "caller", "Duplicate")));
+		assertTrue(s.isDirty());
+		assertEquals(4, s.getIncidentCount());
+		assertEquals("1", s.getIncidentsAsArray()[0][0]);
+		assertEquals("3", s.getIncidentsAsArray()[2][0]);
+		assertEquals("other caller", s.getIncidentById(3).getCaller());
+		assertEquals("- Added first\n", s.getIncidentById(1).getIncidentLogMessages());
+		
+		Incident before = s.getIncidentById(5);
+		s.executeCommand(5, new Command(CommandValue.INVESTIGATE, null, "Back from vendor"));
+		assertEquals(Incident.IN_PROGRESS_NAME, s.getIncidentById(5).getState());
+		assertEquals(Incident.NO_STATUS, s.getIncidentById(5).getStatusDetails());
+		assertEquals("- Line one\nLine two\n- Caf\u00e9 \u2713\n- Back from vendor\n", s.getIncidentById(5).getIncidentLogMessages());
+		assertEquals(2, before.getIncidentLogSize());
+		assertThrows(UnsupportedOperationException.class, () -> s.executeCommand(5, new Command(CommandValue.REOPEN, null, "No")));
+		assertEquals(3, s.getIncidentById(5).getIncidentLogSize());
+		
+		s.deleteIncidentById(2);
+		assertNull(s.getIncidentById(2));
+		assertEquals(3, s.getIncidents().size());
+		assertEquals(5, s.getIncidents().get(2).getId());
+		for (int i = 6; i < 3000; i++) {
+			s.addNewIncident("Title " + i, "caller", "Message " + i);
+		}
+		assertEquals(2997, s.getIncidentCount());
+		assertEquals("Message 2999", s.getIncidentById(2999).getIncidentLogMessage(0));
+		assertEquals(Incident.IN_PROGRESS_NAME, s.getIncidentById(5).getState());
+		
+		//Test that any state a command can reach is read back, as it is on the heap
+		s.executeCommand(5, new Command(CommandValue.RESOLVE, "Replaced toner", "Resolved"));
+		assertEquals(Incident.RESOLVED_NAME, s.getIncidentById(5).getState());
+		assertEquals("Replaced toner", s.getIncidentById(5).getStatusDetails());
+		assertEquals(2997, s.getIncidents().size());
 
+		//Test merging a batch that falls between and after the rows and outgrows the columns
+		ArrayList<Incident> batch = new ArrayList<Incident>();
+		for (int i = 6199; i >= 5000; i--) {
+			batch.add(new Incident(i, "Title " + i, "caller", "Batch " + i));
+		}
+		batch.add(new Incident(4, "Title 4", "caller", "Batch 4"));
+		batch.add(new Incident(2, "Title 2", "caller", "Batch 2"));
+		s.addIncidents(batch);
+		ArrayList<Incident> merged = s.getIncidents();
+		assertEquals(4199, merged.size());
+		for (int i = 1; i < merged.size(); i++) {
+			assertTrue(merged.get(i - 1).getId() < merged.get(i).getId());
+		}
+		assertEquals("Batch 2", s.getIncidentById(2).getIncidentLogMessage(0));
+		assertEquals("Batch 4", s.getIncidentById(4).getIncidentLogMessage(0));
+		assertEquals("Replaced toner", s.getIncidentById(5).getStatusDetails());
+		assertEquals("Message 2999", s.getIncidentById(2999).getIncidentLogMessage(0));
+		assertEquals("Title 6199", s.getIncidentById(6199).getTitle());
+	}
+	
+	/**
+	 * Tests that the space of logs that outgrow their place and of deleted incidents is reclaimed in off-heap columns
+	 */
+	@Test
+	public void testOffHeapSpaceIsReclaimed() {
+		ServiceGroup s = new ServiceGroup("CSC IT");
+		s.storeIncidentsOffHeap();
+		s.addNewIncident("Title 1", "caller", "message");
+		s.addNewIncident("Title 2", "caller", "message");
+		s.executeCommand(1, new Command(CommandValue.ASSIGN, "owner", "assigned"));
+		s.executeCommand(2, new Command(CommandValue.ASSIGN, "owner", "assigned"));
+		for (int i = 0; i < 1500; i++) {
+			for (int id = 1; id <= 2; id++) {
+				s.executeCommand(id, new Command(CommandValue.HOLD, Incident.HOLD_AWAITING_CALLER, "hold " + i));
+				s.executeCommand(id, new Command(CommandValue.INVESTIGATE, null, "investigate " + i));
+			}
+		}
+		assertEquals(3002, s.getIncidentById(1).getIncidentLogSize());
+		assertEquals("investigate 1499", s.getIncidentById(2).getIncidentLogMessage(3001));
+		assertTrue(s.getOffHeapSize() < (4 << 20));
+		
+		for (int i = 3; i <= 40000; i++) {
+			s.addNewIncident("Title " + i, "caller " + i, "message " + i);
+		}
+		long full = s.getOffHeapSize();
+		for (int i = 40000; i >= 3; i--) {
+			s.deleteIncidentById(i);
+		}
+		assertTrue(s.getOffHeapSize() < full);
+		assertEquals(2, s.getIncidentCount());
+		assertEquals("hold 0", s.getIncidentById(1).getIncidentLogMessage(2));
+		assertEquals(Incident.IN_PROGRESS_NAME, s.getIncidentsAsArray()[1][1]);
+	}
+	
+	/**
+	 * Tests that the rows of the Incidents are cached and patched, and that their version changes with every change
+	 */
+	@Test
+	public void testIncidentsVersion() {
+		ServiceGroup s = new ServiceGroup("CSC IT");
+		ServiceGroup other = new ServiceGroup("Other");
+		assertNotEquals(s.getIncidentsVersion(), other.getIncidentsVersion());
+		s.addIncident(new Incident(1, "Title 1", "caller", "message"));
+		s.addIncident(new Incident(3, "Title 3", "caller", "message"));
+		
+		long version = s.getIncidentsVersion();
+		List<List<String>> rows = s.getIncidentRows();
+		assertSame(rows, s.getIncidentRows());
+		assertThrows(UnsupportedOperationException.class, () -> s.getIncidentRows().remove(0));
+		assertThrows(UnsupportedOperationException.class, () -> s.getIncidentRows().get(0).set(1, "Changed"));
+		String[][] array = s.getIncidentsAsArray();
+		assertNotSame(array, s.getIncidentsAsArray());
+		array[0][1] = "Changed";
+		assertEquals(Incident.NEW_NAME, s.getIncidentRows().get(0).get(1));
+		assertEquals(version, s.getIncidentsVersion());
+		s.setServiceGroupName("Renamed");
+		assertEquals(version, s.getIncidentsVersion());
+		
+		s.addIncident(new Incident(2, "Title 2", "caller", "message"));
+		assertNotEquals(version, s.getIncidentsVersion());
+		rows = s.getIncidentRows();
+		assertEquals(Arrays.asList("2", Incident.NEW_NAME, "Title 2", Incident.NO_STATUS), rows.get(1));
+		
+		version = s.getIncidentsVersion();
+		s.executeCommand(3, new Command(CommandValue.ASSIGN, "owner", "assigned"));
+		assertNotEquals(version, s.getIncidentsVersion());
+		assertArrayEquals(new String[] {"3", Incident.IN_PROGRESS_NAME, "Title 3", Incident.NO_STATUS}, s.getIncidentsAsArray()[2]);
+		assertSame(rows.get(0), s.getIncidentRows().get(0));
+		
+		version = s.getIncidentsVersion();
+		assertThrows(UnsupportedOperationException.class, () -> s.executeCommand(1, new Command(CommandValue.REOPEN, null, "message")));
+		s.executeCommand(4, new Command(CommandValue.ASSIGN, "owner", "assigned"));
+		s.deleteIncidentById(4);
+		assertEquals(version, s.getIncidentsVersion());
+		
+		s.deleteIncidentById(2);
+		assertNotEquals(version, s.getIncidentsVersion());
+		assertEquals(2, s.getIncidentsAsArray().length);
+		assertEquals("3", s.getIncidentsAsArray()[1][0]);
+		
+		ArrayList<Incident> added = new ArrayList<Incident>();
+		added.add(new Incident(2, "Title 2", "caller", "message"));
+		added.add(new Incident(5, "Title 5", "caller", "message"));
+		s.addIncidents(added);
+		assertEquals(4, s.getIncidentsAsArray().length);
+		assertEquals("2", s.getIncidentsAsArray()[1][0]);
+		
+		s.storeIncidentsOffHeap();
+		version = s.getIncidentsVersion();
+		s.executeCommand(5, new Command(CommandValue.ASSIGN, "owner", "assigned"));
+		assertNotEquals(version, s.getIncidentsVersion());
+		assertArrayEquals(new String[] {"5", Incident.IN_PROGRESS_NAME, "Title 5", Incident.NO_STATUS}, s.getIncidentsAsArray()[3]);
+	}
 }